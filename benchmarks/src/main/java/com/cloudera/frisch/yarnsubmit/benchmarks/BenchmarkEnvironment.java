@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.benchmarks;
+
+import com.cloudera.frisch.yarnsubmit.config.Parameters;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Local environment of benchmarks: a temporary directory with empty Hadoop site files and a parameters file pointing to them,
+ * so that services of yarn-submit run against the local file system, without any cluster
+ */
+class BenchmarkEnvironment {
+
+    // File system of services, and the one they get tokens from, is the local one
+    private static final String LOCAL_CORE_SITE = "<configuration>" +
+            "<property><name>fs.defaultFS</name><value>file:///</value></property>" +
+            "<property><name>" + HdfsClientConfigKeys.DFS_NAMESERVICES + "</name><value>file:///</value></property>" +
+            "</configuration>";
+
+    private final Path directory;
+    private final Path parametersFile;
+
+    BenchmarkEnvironment() throws IOException {
+        // Services log each file and command they handle, which would be measured too
+        Logger.getRootLogger().setLevel(Level.WARN);
+        directory = Files.createTempDirectory("yarn-submit-benchmarks");
+        List<String> parameters = new ArrayList<>();
+        for (String site : Arrays.asList("core", "hdfs", "yarn")) {
+            Path siteFile = Files.write(directory.resolve(site + "-site.xml"), (site.equals("core") ? LOCAL_CORE_SITE : "<configuration/>")
+                    .getBytes(StandardCharsets.UTF_8));
+            parameters.add(site + ".site=" + siteFile);
+        }
+        parameters.add("hadoop.home=" + directory);
+        parameters.add("hadoop.username=" + System.getProperty("user.name"));
+        parameters.add("app.container.memory=1024");
+        parameters.add("app.container.vcores=1");
+        parametersFile = Files.write(directory.resolve("parameters.properties"), parameters, StandardCharsets.UTF_8);
+        Parameters.initParameters(parametersFile.toString());
+    }
+
+    String getParametersFile() {
+        return parametersFile.toString();
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return configuration of Hadoop whose file system is the local one
+     */
+    Configuration getLocalConfiguration() {
+        Configuration conf = new Configuration(false);
+        conf.set(HdfsClientConfigKeys.DFS_NAMESERVICES, "file:///");
+        conf.set("fs.defaultFS", "file:///");
+        return conf;
+    }
+
+    /**
+     * Write a command file of sleep commands
+     * @return path of the file
+     */
+    Path writeCommandFile(String name, int commands) throws IOException {
+        Path commandFile = directory.resolve(name);
+        try (Stream<String> lines = Stream.iterate(0, i -> i + 1).limit(commands).map(i -> "sleep 0." + (i % 10))) {
+            Files.write(commandFile, (Iterable<String>) lines::iterator, StandardCharsets.UTF_8);
+        }
+        return commandFile;
+    }
+
+    void delete() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
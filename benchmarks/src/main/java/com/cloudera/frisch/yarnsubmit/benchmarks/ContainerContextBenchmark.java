@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.benchmarks;
+
+import com.cloudera.frisch.yarnsubmit.services.YarnApplicationService;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of the launch context of a container with its files, stated one by one on the file system (a local one here)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContainerContextBenchmark {
+
+    @Param({"5", "50"})
+    int files;
+
+    private BenchmarkEnvironment environment;
+    private YarnApplicationService yarnApplicationService;
+    private FileSystem fileSystem;
+    private final List<String> requiredFiles = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        environment = new BenchmarkEnvironment();
+        yarnApplicationService = new YarnApplicationService();
+        fileSystem = FileSystem.getLocal(environment.getLocalConfiguration());
+        for (int i = 0; i < files; i++) {
+            requiredFiles.add(Files.write(environment.getDirectory().resolve("file-" + i + ".jar"),
+                    ("content of file " + i).getBytes(StandardCharsets.UTF_8)).toUri().toString());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        environment.delete();
+    }
+
+    @Benchmark
+    public ContainerLaunchContext createContainerContext() {
+        return yarnApplicationService.createContainerContext(requiredFiles, "sleep 1", fileSystem);
+    }
+}
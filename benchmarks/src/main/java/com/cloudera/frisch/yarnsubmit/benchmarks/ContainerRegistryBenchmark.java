@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.benchmarks;
+
+import com.cloudera.frisch.yarnsubmit.object.ContainerRegistry;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of commands of the AM: loading commands, running all of them through their states, and looking up running ones,
+ * as done on each allocation and completion of a container
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ContainerRegistryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Commands {
+        @Param({"1000", "100000", "1000000"})
+        int tasks;
+
+        BenchmarkEnvironment environment;
+        List<String> lines;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            environment = new BenchmarkEnvironment();
+            lines = new ArrayList<>(tasks);
+            for (int i = 0; i < tasks; i++) {
+                lines.add("sleep 0." + (i % 10));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            environment.delete();
+        }
+    }
+
+    /**
+     * A registry with all commands loaded, none launched yet: rebuilt before each run through all commands
+     */
+    @State(Scope.Thread)
+    public static class LoadedRegistry {
+        ContainerRegistry registry;
+
+        @Setup(Level.Invocation)
+        public void setup(Commands commands) {
+            registry = new ContainerRegistry(commands.lines.iterator(), commands.tasks);
+        }
+    }
+
+    /**
+     * A registry with all commands running, each one in its own container
+     */
+    @State(Scope.Thread)
+    public static class RunningRegistry {
+        ContainerRegistry registry;
+        int tasks;
+
+        @Setup(Level.Trial)
+        public void setup(Commands commands) {
+            tasks = commands.tasks;
+            registry = new ContainerRegistry(commands.lines.iterator(), commands.tasks);
+            YarnContainer container;
+            long containerId = 1;
+            while ((container = registry.pollContainerToRun()) != null) {
+                registry.setContainersRunning(Collections.singletonList(container), containerId++);
+            }
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ContainerRegistry loadCommands(Commands commands) {
+        return new ContainerRegistry(commands.lines.iterator(), commands.tasks);
+    }
+
+    /**
+     * Each command is taken to run, set running in a container, then removed from running ones and finished
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int runAllCommands(LoadedRegistry loadedRegistry) {
+        ContainerRegistry registry = loadedRegistry.registry;
+        YarnContainer container;
+        long containerId = 1;
+        while ((container = registry.pollContainerToRun()) != null) {
+            registry.setContainersRunning(Collections.singletonList(container), containerId);
+            for (YarnContainer finished : registry.removeRunningContainer(containerId)) {
+                registry.setContainerFinished(finished, true);
+            }
+            containerId++;
+        }
+        return registry.getNumberOfCompletedContainers();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public List<YarnContainer> findRunningCommand(RunningRegistry runningRegistry) {
+        return runningRegistry.registry.findContainersUsingContainerId(ThreadLocalRandom.current().nextLong(1, runningRegistry.tasks + 1));
+    }
+
+    /**
+     * Listing running commands is done at each loop of the AM, to find stragglers
+     */
+    @Benchmark
+    public void listRunningCommands(RunningRegistry runningRegistry, Blackhole blackhole) {
+        blackhole.consume(runningRegistry.registry.getRunningContainers());
+    }
+}
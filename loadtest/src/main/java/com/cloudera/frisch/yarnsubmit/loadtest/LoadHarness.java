@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.loadtest;
+
+import com.cloudera.frisch.yarnsubmit.Main;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hadoop.yarn.api.records.YarnApplicationState;
+import org.apache.hadoop.yarn.client.api.YarnClient;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.apache.hadoop.yarn.exceptions.YarnException;
+import org.apache.hadoop.yarn.server.MiniYARNCluster;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of yarn-submit without a cluster: starts in-process HDFS and YARN clusters, generates a file of synthetic commands
+ * (sleeping some ms, a share of them failing), and submits it through Main, the AM being launched by a NM as on a real cluster.
+ * While it runs, the AM is polled for its heap and asks outstanding, and once it ends its metrics are read back from HDFS:
+ * all are written as JSON to the output file
+ *
+ * Options are given as --key=value, and any parameter of yarn-submit as --param.key=value (e.g. --param.app.bundle.size=10)
+ */
+public class LoadHarness {
+
+    private LoadHarness() { throw new IllegalStateException("LoadHarness class not instantiable"); }
+
+    private static final Logger logger = Logger.getLogger(LoadHarness.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String PARAM_PREFIX = "param.";
+    private static final String HDFS_WORK_DIRECTORY = "/yarn-submit-loadtest/";
+    private static final long POLL_INTERVAL_MS = 1000L;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int commands = Integer.parseInt(options.getOrDefault("commands", "10000"));
+        int sleepMs = Integer.parseInt(options.getOrDefault("sleep-ms", "100"));
+        double failureRate = Double.parseDouble(options.getOrDefault("failure-rate", "0"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        int nodeManagers = Integer.parseInt(options.getOrDefault("node-managers", "2"));
+        int nodeManagerMemory = Integer.parseInt(options.getOrDefault("nm-memory", "8192"));
+        int nodeManagerVcores = Integer.parseInt(options.getOrDefault("nm-vcores", "16"));
+        String output = options.getOrDefault("output", "loadtest-result.json");
+
+        File directory = Files.createTempDirectory("yarn-submit-loadtest").toFile();
+        logger.info("Start HDFS and YARN clusters with " + nodeManagers + " NMs, in: " + directory);
+        Configuration conf = new YarnConfiguration();
+        conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, new File(directory, "dfs").getAbsolutePath());
+        conf.setInt(YarnConfiguration.RM_SCHEDULER_MINIMUM_ALLOCATION_MB, 64);
+        conf.setInt(YarnConfiguration.NM_PMEM_MB, nodeManagerMemory);
+        conf.setInt(YarnConfiguration.NM_VCORES, nodeManagerVcores);
+        conf.setBoolean(YarnConfiguration.NM_PMEM_CHECK_ENABLED, false);
+        conf.setBoolean(YarnConfiguration.NM_VMEM_CHECK_ENABLED, false);
+        // Containers only sleep, so they are not constrained by the real memory of the box
+        conf.setFloat("yarn.scheduler.capacity.maximum-am-resource-percent", 0.5f);
+
+        MiniDFSCluster dfsCluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+        dfsCluster.waitClusterUp();
+        conf.set(FileSystem.FS_DEFAULT_NAME_KEY, dfsCluster.getURI().toString());
+        // HdfsService connects to the file system named by dfs.nameservices
+        conf.set(HdfsClientConfigKeys.DFS_NAMESERVICES, dfsCluster.getURI().toString());
+
+        MiniYARNCluster yarnCluster = new MiniYARNCluster("yarn-submit-loadtest", nodeManagers, 1, 1);
+        yarnCluster.init(conf);
+        yarnCluster.start();
+        if (!yarnCluster.waitForNodeManagersToConnect(60000L)) {
+            logger.error("NMs did not connect to RM");
+            System.exit(1);
+        }
+
+        // Client and AM (launched on the same box) read configuration of clusters from site files, as on a real cluster
+        File siteFile = new File(directory, "cluster-site.xml");
+        try (OutputStream out = Files.newOutputStream(siteFile.toPath())) {
+            yarnCluster.getConfig().writeXml(out);
+        }
+        File commandFile = writeCommandFile(new File(directory, "commands"), commands, sleepMs, failureRate, seed);
+        File parametersFile = writeParametersFile(new File(directory, "parameters.properties"), siteFile, commandFile, options);
+
+        YarnClient yarnClient = YarnClient.createYarnClient();
+        yarnClient.init(yarnCluster.getConfig());
+        yarnClient.start();
+        AmSampler amSampler = new AmSampler(yarnClient);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleWithFixedDelay(amSampler::sample, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        logger.info("Submit " + commands + " commands sleeping " + sleepMs + "ms, " + failureRate * 100 + "% of them failing");
+        long submittedAt = System.currentTimeMillis();
+        Main.main(new String[]{"-c", parametersFile.getAbsolutePath()});
+        long makespan = System.currentTimeMillis() - submittedAt;
+        sampler.shutdown();
+        sampler.awaitTermination(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("options", options);
+        result.put("commands", commands);
+        result.put("makespanMs", makespan);
+        result.put("commandsPerSecond", commands * 1000d / makespan);
+        List<ApplicationReport> reports = yarnClient.getApplications();
+        if (!reports.isEmpty()) {
+            ApplicationReport report = reports.get(0);
+            long runtime = report.getFinishTime() - report.getStartTime();
+            result.put("applicationId", report.getApplicationId().toString());
+            result.put("finalStatus", report.getFinalApplicationStatus().toString());
+            result.put("applicationRuntimeMs", runtime);
+            JsonNode amMetrics = readAmMetrics(dfsCluster.getFileSystem());
+            if (amMetrics != null) {
+                result.put("containersPerSecond", amMetrics.path("containers").path("started").asLong() * 1000d / Math.max(1L, runtime));
+                result.put("amMetrics", amMetrics);
+            }
+        }
+        result.put("amHeapPeakMb", amSampler.heapPeakMb);
+        result.put("outstandingAsksPeak", amSampler.outstandingAsksPeak);
+        result.put("amSamples", amSampler.samples);
+
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(output), result);
+        logger.info("Load test finished in " + makespan + "ms, results written to: " + output);
+
+        yarnClient.stop();
+        yarnCluster.stop();
+        dfsCluster.shutdown();
+        System.exit(0);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int equal = arg.indexOf('=');
+            if (!arg.startsWith("--") || equal == -1) {
+                throw new IllegalArgumentException("Options must be given as --key=value, got: " + arg);
+            }
+            options.put(arg.substring(2, equal), arg.substring(equal + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Commands sleep the given time, and a share of them (chosen randomly but reproducibly) fail afterwards
+     */
+    private static File writeCommandFile(File commandFile, int commands, int sleepMs, double failureRate, long seed) throws IOException {
+        Random random = new Random(seed);
+        String sleep = "sleep " + sleepMs / 1000d;
+        List<String> lines = new ArrayList<>(commands);
+        for (int i = 0; i < commands; i++) {
+            lines.add(random.nextDouble() < failureRate ? sleep + " && false" : sleep);
+        }
+        Files.write(commandFile.toPath(), lines, StandardCharsets.UTF_8);
+        return commandFile;
+    }
+
+    /**
+     * Parameters of yarn-submit for the clusters started, with small containers, and parameters given with --param. on top
+     */
+    private static File writeParametersFile(File parametersFile, File siteFile, File commandFile, Map<String, String> options) throws IOException {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("jar.path", commandFile.getAbsolutePath());
+        parameters.put("app.name", "yarn-submit-loadtest");
+        parameters.put("hdfs.work.directory", HDFS_WORK_DIRECTORY);
+        parameters.put("hdfs.cache.enabled", "true");
+        parameters.put("hdfs.cache.directory", "/yarn-submit-loadtest-cache/");
+        parameters.put("kerberos", "false");
+        parameters.put("yarn.site", siteFile.getAbsolutePath());
+        parameters.put("hdfs.site", siteFile.getAbsolutePath());
+        parameters.put("core.site", siteFile.getAbsolutePath());
+        parameters.put("hadoop.username", System.getProperty("user.name"));
+        parameters.put("hadoop.home", parametersFile.getParent());
+        parameters.put("java.home", System.getProperty("java.home") + "/bin/java");
+        parameters.put("app.am.memory", "1024");
+        parameters.put("app.container.memory", "64");
+        parameters.put("app.am.max-attempts", "1");
+        // AM is sampled directly, not through RM web proxy
+        parameters.put("app.am.http-proxy-only", "false");
+        parameters.put("app.check-status-interval", "500");
+        options.forEach((key, value) -> {
+            if (key.startsWith(PARAM_PREFIX)) {
+                parameters.put(key.substring(PARAM_PREFIX.length()), value);
+            }
+        });
+        List<String> lines = new ArrayList<>();
+        parameters.forEach((key, value) -> lines.add(key + "=" + value));
+        Files.write(parametersFile.toPath(), lines, StandardCharsets.UTF_8);
+        return parametersFile;
+    }
+
+    private static JsonNode readAmMetrics(FileSystem fileSystem) {
+        Path metricsFile = new Path(HDFS_WORK_DIRECTORY + "metrics/attempt-1.json");
+        try (InputStream in = fileSystem.open(metricsFile)) {
+            return objectMapper.readTree(in);
+        } catch (IOException e) {
+            logger.warn("Could not read metrics of the AM from: " + metricsFile + " due to error: ", e);
+            return null;
+        }
+    }
+
+    /**
+     * Polls state served by the AM of the running application, keeping its peaks
+     */
+    private static class AmSampler {
+        private final YarnClient yarnClient;
+        private final List<Map<String, Object>> samples = new ArrayList<>();
+        private long heapPeakMb = 0;
+        private long outstandingAsksPeak = 0;
+
+        AmSampler(YarnClient yarnClient) {
+            this.yarnClient = yarnClient;
+        }
+
+        synchronized void sample() {
+            try {
+                for (ApplicationReport report : yarnClient.getApplications()) {
+                    if (report.getYarnApplicationState() != YarnApplicationState.RUNNING || !report.getOriginalTrackingUrl().startsWith("http")) {
+                        continue;
+                    }
+                    JsonNode status = objectMapper.readTree(new URL(report.getOriginalTrackingUrl() + "status"));
+                    long heapUsedMb = status.path("jvm").path("heapUsedMb").asLong();
+                    long outstandingAsks = status.path("allocation").path("outstandingAsks").asLong();
+                    heapPeakMb = Math.max(heapPeakMb, heapUsedMb);
+                    outstandingAsksPeak = Math.max(outstandingAsksPeak, outstandingAsks);
+                    Map<String, Object> sample = new LinkedHashMap<>();
+                    sample.put("timestamp", System.currentTimeMillis());
+                    sample.put("heapUsedMb", heapUsedMb);
+                    sample.put("outstandingAsks", outstandingAsks);
+                    sample.put("running", status.path("commands").path("running").asLong());
+                    sample.put("completed", status.path("commands").path("completed").asLong());
+                    samples.add(sample);
+                }
+            } catch (YarnException | IOException e) {
+                logger.debug("Could not sample state of the AM due to error: ", e);
+            }
+        }
+    }
+}
@@ -19,23 +19,67 @@ package com.cloudera.frisch.yarnsubmit;
 
 
 import com.cloudera.frisch.yarnsubmit.config.CommandLineArgumentsParser;
+import com.cloudera.frisch.yarnsubmit.config.JobParameters;
 import com.cloudera.frisch.yarnsubmit.config.Parameters;
+import com.cloudera.frisch.yarnsubmit.master.TaskResults;
+import com.cloudera.frisch.yarnsubmit.object.StartupLatencies;
 import com.cloudera.frisch.yarnsubmit.services.HdfsService;
 import com.cloudera.frisch.yarnsubmit.services.KerberosService;
+import com.cloudera.frisch.yarnsubmit.services.StagingCacheService;
 import com.cloudera.frisch.yarnsubmit.services.YarnApplicationService;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hadoop.yarn.api.records.ApplicationSubmissionContext;
 import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
+import org.apache.hadoop.yarn.api.records.FinalApplicationStatus;
+import org.apache.hadoop.yarn.api.records.YarnApplicationState;
+import org.apache.hadoop.yarn.client.api.YarnClientApplication;
+import org.apache.hadoop.yarn.exceptions.YarnException;
 import org.apache.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 public class Main {
 
     private static final Logger logger = Logger.getLogger(Main.class);
 
+    // Name of the parameters file read by the AM
+    private static final String AM_PARAMETERS_FILE = "parameters.properties";
+
+    // Time applications followed by this client take to be accepted and to get their AM running
+    private static final StartupLatencies startupLatencies = new StartupLatencies();
+
+    // Commands of applications followed by this client already reported as failed
+    private static final Map<ApplicationId, Set<Integer>> failedCommandsReported = new HashMap<>();
+    // Applications ended whose results files were read for failed commands not reported while they ran
+    private static final Set<ApplicationId> resultsRead = new HashSet<>();
+    // HDFS work directory of each application submitted by this client (applications of a batch are submitted concurrently)
+    private static final Map<ApplicationId, String> workDirectories = new ConcurrentHashMap<>();
+
+    // Time in ms after which an application of a batch that RM does not know is not followed anymore
+    private static final long MISSING_APPLICATION_TIMEOUT = 600000L;
+
     public static void main(String[] args) {
 
         logger.info("Start up Yarn-Submit program");
@@ -53,64 +97,264 @@ public class Main {
 
 
         HdfsService hdfsService = new HdfsService(yarnApplicationService.getConf());
-        logger.info("Clean HDFS directory");
-        hdfsService.cleanDirectory(Parameters.HDFS_WORK_DIRECTORY);
-        List<String> listOfRequiredLocalFiles = new ArrayList<>();
-        listOfRequiredLocalFiles.add(Parameters.KEYTAB);
-        listOfRequiredLocalFiles.add(Parameters.JAR_PATH);
-        listOfRequiredLocalFiles.add(arguments.get(CommandLineArgumentsParser.Arguments.CONFIG_FILE));
-        listOfRequiredLocalFiles.add(Utils.getJarFilePath());
-        if (!Parameters.APP_FILES.isEmpty() && !Parameters.APP_FILES.get(0).isEmpty()) {
-            listOfRequiredLocalFiles.addAll(Parameters.APP_FILES);
-        }
-        logger.info("Copy all required files to HDFS directory: " + Parameters.HDFS_WORK_DIRECTORY);
-        for (String file : listOfRequiredLocalFiles) {
-            hdfsService.copyFileToHDFS(file, Parameters.HDFS_WORK_DIRECTORY + Utils.getFileNameFromPath(file), yarnApplicationService.getConf());
-        }
-        // Transform list of local files to a list of hdfs files
-        List<String> listOfRequiredHdfsFiles = Utils.changePrefixOfFilesPath(listOfRequiredLocalFiles, Parameters.HDFS_WORK_DIRECTORY);
 
         logger.info("Create YARN client");
         yarnApplicationService.createYarnClient();
 
+        // An application already submitted (by a detached client) is only followed
+        String applicationToReattach = arguments.get(CommandLineArgumentsParser.Arguments.REATTACH);
+        if (applicationToReattach != null) {
+            try {
+                yarnApplicationService.setApplicationId(ApplicationId.fromString(applicationToReattach));
+            } catch (IllegalArgumentException e) {
+                logger.error("Invalid application id to reattach to: " + applicationToReattach, e);
+                System.exit(1);
+            }
+            logger.info("Reattach to application: " + applicationToReattach);
+            followApplication(yarnApplicationService, hdfsService, false);
+            logger.info("Finish Yarn-Submit program");
+            return;
+        }
+
+        // Several applications listed in a manifest share this client: its configuration, Kerberos login, YARN client and HDFS
+        String manifestFile = arguments.get(CommandLineArgumentsParser.Arguments.MANIFEST);
+        if (manifestFile != null) {
+            submitApplications(yarnApplicationService, hdfsService, manifestFile, arguments.get(CommandLineArgumentsParser.Arguments.CONFIG_FILE));
+            logger.info("Finish Yarn-Submit program");
+            return;
+        }
+
+        JobParameters job = JobParameters.fromParameters(arguments.get(CommandLineArgumentsParser.Arguments.CONFIG_FILE));
+        try {
+            yarnApplicationService.setApplicationId(submitApplication(yarnApplicationService, hdfsService, job, null, null));
+        } catch (IOException e) {
+            logger.error("Could not copy required files to HDFS, application will not be submitted, due to error: ", e);
+            System.exit(3);
+        } catch (YarnException e) {
+            logger.error("Cannot submit application due to failure", e);
+            System.exit(2);
+        }
+
+        // Get application status and writes it back when it changes, until it ends (or until it is accepted if detached)
+        followApplication(yarnApplicationService, hdfsService, Boolean.TRUE.equals(Parameters.APP_DETACH));
+
+
+        logger.info("Finish Yarn-Submit program");
+
+    }
+
+    /**
+     * Create and submit an application: files specific to it are copied to its work directory,
+     * other files are staged to the cache (or copied to its work directory if cache is disabled or staging failed), unless they were already staged
+     *
+     * @param yarnApplicationService
+     * @param hdfsService
+     * @param job parameters of the application
+     * @param stagedFiles HDFS paths of files already staged, by local path, or null to stage files of this application,
+     *                    or empty to copy them to its work directory
+     * @param tag of the application, or null
+     * @return id of the application submitted
+     * @throws IOException if files could not be copied to HDFS
+     * @throws YarnException if application could not be created or submitted
+     */
+    private static ApplicationId submitApplication(YarnApplicationService yarnApplicationService, HdfsService hdfsService, JobParameters job,
+                                                   Map<String, String> stagedFiles, String tag) throws IOException, YarnException {
         logger.info("Create YARN application");
-        yarnApplicationService.createApplication();
+        YarnClientApplication application = yarnApplicationService.newApplication();
+        ApplicationId applicationId = application.getNewApplicationResponse().getApplicationId();
+        String workDirectory = job.getHdfsWorkDirectory();
+        workDirectories.put(applicationId, workDirectory);
+
+        logger.info("Clean HDFS directory");
+        hdfsService.cleanDirectory(workDirectory);
+        // Files specific to this submission are always copied to its work directory, its parameters file under the name expected by the AM
+        List<String> listOfSubmissionLocalFiles = new ArrayList<>();
+        if (Boolean.TRUE.equals(Parameters.KERBEROS)) {
+            listOfSubmissionLocalFiles.add(Parameters.KEYTAB);
+        }
+        // Other files usually do not change between submissions, hence they are staged to the cache if it is enabled
+        List<String> listOfStagedLocalFiles = getFilesToStage(job);
+
+        logger.info("Copy all submission files to HDFS directory: " + workDirectory);
+        hdfsService.copyFilesToHDFS(listOfSubmissionLocalFiles, workDirectory, Parameters.HDFS_UPLOAD_THREADS, Parameters.HDFS_UPLOAD_BUFFER_SIZE);
+        hdfsService.copyFileToHDFS(job.getConfigFile(), workDirectory + AM_PARAMETERS_FILE, Parameters.HDFS_UPLOAD_BUFFER_SIZE);
+        // Transform list of local files to a list of hdfs files
+        List<String> listOfRequiredHdfsFiles = new ArrayList<>(Utils.changePrefixOfFilesPath(listOfSubmissionLocalFiles, workDirectory));
+        listOfRequiredHdfsFiles.add(workDirectory + AM_PARAMETERS_FILE);
 
+        Map<String, String> filesInCache = stagedFiles == null && Boolean.TRUE.equals(Parameters.HDFS_CACHE_ENABLED) ?
+                stageFilesToCache(yarnApplicationService, hdfsService, listOfStagedLocalFiles, applicationId) : stagedFiles;
+        if (filesInCache != null && !filesInCache.isEmpty()) {
+            listOfStagedLocalFiles.forEach(file -> listOfRequiredHdfsFiles.add(filesInCache.get(file)));
+        } else {
+            logger.info("Copy all other required files to HDFS directory: " + workDirectory);
+            hdfsService.copyFilesToHDFS(listOfStagedLocalFiles, workDirectory, Parameters.HDFS_UPLOAD_THREADS, Parameters.HDFS_UPLOAD_BUFFER_SIZE);
+            listOfRequiredHdfsFiles.addAll(Utils.changePrefixOfFilesPath(listOfStagedLocalFiles, workDirectory));
+        }
+
+        // AM gets all required files and passes them to containers, their HDFS paths are given to it as argument
         logger.info("Set up container context");
         ContainerLaunchContext containerLaunchContext = yarnApplicationService.createContainerContext(listOfRequiredHdfsFiles,
-                Parameters.JAVA_HOME + " -cp yarn-submit.jar com.cloudera.frisch.yarnsubmit.master.JavaMaster ",
+                job.getJavaHome() + " -cp yarn-submit.jar com.cloudera.frisch.yarnsubmit.master.JavaMaster " +
+                        String.join(",", listOfRequiredHdfsFiles),
                 hdfsService.getFileSystem());
 
         logger.info("Create Submit application context");
-        yarnApplicationService.createSubmitContextOfApplication(Parameters.APP_QUEUE, Parameters.APP_PRIORITY,
-                Parameters.APP_AM_MEMORY, Parameters.APP_AM_VCORES, Parameters.APP_NAME, containerLaunchContext);
+        ApplicationSubmissionContext submissionContext = YarnApplicationService.createSubmitContextOfApplication(application, job.getQueue(),
+                job.getPriority(), job.getAmMemory(), job.getAmVcores(), job.getAppName(), job.getAmMaxAttempts(), containerLaunchContext);
+        if (tag != null) {
+            submissionContext.setApplicationTags(Collections.singleton(tag));
+        }
 
-        logger.info("Submit application");
-        yarnApplicationService.submitApplication();
+        logger.info("Submit application: " + applicationId);
+        yarnApplicationService.submitApplication(submissionContext);
+        startupLatencies.applicationSubmitted(applicationId);
+        return applicationId;
+    }
 
-        // Get application status and writes it back every X seconds
-        printReportWhileApplicationIsNotFinished(yarnApplicationService);
+    /**
+     * Stage files to the cache, looking them up in YARN shared cache first if enabled and if they are used by one application
+     *
+     * @param yarnApplicationService
+     * @param hdfsService
+     * @param localFiles to stage
+     * @param applicationId using these files, or null if they are used by several applications
+     * @return HDFS paths of files staged, by local path, or an empty map if they could not be staged
+     */
+    private static Map<String, String> stageFilesToCache(YarnApplicationService yarnApplicationService, HdfsService hdfsService,
+                                                         List<String> localFiles, ApplicationId applicationId) {
+        StagingCacheService stagingCacheService = new StagingCacheService(hdfsService, Parameters.HDFS_CACHE_DIRECTORY,
+                Boolean.TRUE.equals(Parameters.HDFS_CACHE_PUBLIC));
+        logger.info("Stage " + localFiles.size() + " files to HDFS cache directory: " + stagingCacheService.getCacheDirectory());
+        if (applicationId != null && Boolean.TRUE.equals(Parameters.HDFS_CACHE_SHARED_CACHE)) {
+            stagingCacheService.createSharedCacheClient(yarnApplicationService.getConf());
+        }
+        try {
+            List<String> stagedHdfsFiles = stagingCacheService.stageFiles(localFiles, applicationId,
+                    Parameters.HDFS_UPLOAD_THREADS, Parameters.HDFS_UPLOAD_BUFFER_SIZE);
+            Map<String, String> stagedFiles = new HashMap<>();
+            for (int i = 0; i < localFiles.size(); i++) {
+                stagedFiles.put(localFiles.get(i), stagedHdfsFiles.get(i));
+            }
+            return stagedFiles;
+        } catch (IOException e) {
+            logger.warn("Could not stage files to HDFS cache, they will be copied to work directory of applications instead, due to error: ", e);
+            return Collections.emptyMap();
+        } finally {
+            stagingCacheService.close();
+        }
+    }
 
+    /**
+     * Local files of an application that do not change between submissions: its jar (or file of commands), jar of yarn-submit and its files
+     */
+    private static List<String> getFilesToStage(JobParameters job) {
+        List<String> listOfStagedLocalFiles = new ArrayList<>();
+        listOfStagedLocalFiles.add(job.getJarPath());
+        listOfStagedLocalFiles.add(Utils.getJarFilePath());
+        listOfStagedLocalFiles.addAll(job.getAppFiles());
+        return listOfStagedLocalFiles;
+    }
 
-        logger.info("Finish Yarn-Submit program");
+    /**
+     * Submit all applications listed in a manifest: files they share are staged once to the cache (if it is enabled),
+     * applications are submitted concurrently, and all followed with one call to RM at each check
+     *
+     * @param yarnApplicationService
+     * @param hdfsService
+     * @param manifestFile listing parameters files of applications
+     * @param clientConfigFile parameters file of the client
+     */
+    private static void submitApplications(YarnApplicationService yarnApplicationService, HdfsService hdfsService,
+                                           String manifestFile, String clientConfigFile) {
+        List<JobParameters> jobs = Collections.emptyList();
+        try {
+            jobs = JobParameters.readManifest(manifestFile, clientConfigFile);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Cannot read manifest of applications: " + manifestFile + " due to error: ", e);
+            System.exit(1);
+        }
+        logger.info(jobs.size() + " applications to submit from manifest: " + manifestFile);
+
+        Map<String, String> stagedFiles = null;
+        if (Boolean.TRUE.equals(Parameters.HDFS_CACHE_ENABLED)) {
+            List<String> filesToStage = jobs.stream().flatMap(job -> getFilesToStage(job).stream()).distinct().collect(Collectors.toList());
+            // Shared cache needs an application using the files, so it is not looked up for files of several applications
+            stagedFiles = stageFilesToCache(yarnApplicationService, hdfsService, filesToStage, null);
+        }
+
+        // Applications of this batch are tagged, to get all their reports at once
+        String tag = "yarn-submit-batch-" + UUID.randomUUID();
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(Parameters.APP_BATCH_PARALLELISM, jobs.size())));
+        Map<JobParameters, Future<ApplicationId>> submissions = new LinkedHashMap<>();
+        Map<String, String> filesStaged = stagedFiles;
+        jobs.forEach(job -> submissions.put(job, executorService.submit(() ->
+                submitApplication(yarnApplicationService, hdfsService, job, filesStaged, tag))));
+        executorService.shutdown();
+
+        Set<ApplicationId> applicationIds = new LinkedHashSet<>();
+        for (Map.Entry<JobParameters, Future<ApplicationId>> submission : submissions.entrySet()) {
+            try {
+                applicationIds.add(submission.getValue().get());
+            } catch (ExecutionException e) {
+                logger.error("Application of: " + submission.getKey().getConfigFile() + " could not be submitted due to error: ", e.getCause());
+            } catch (InterruptedException e) {
+                logger.error("Interrupted while submitting applications", e);
+                executorService.shutdownNow();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        logger.info(applicationIds.size() + " applications submitted, out of " + jobs.size());
 
+        followApplications(yarnApplicationService, hdfsService, applicationIds, tag, Boolean.TRUE.equals(Parameters.APP_DETACH));
     }
 
-    private static void printReportWhileApplicationIsNotFinished(YarnApplicationService yarnApplicationService) {
+    /**
+     * Follow state of the application until it ends, asking RM for it as rarely as possible:
+     * often around transitions of state, and less and less often while its state does not change
+     *
+     * @param yarnApplicationService
+     * @param hdfsService to read results of the application once it ended
+     * @param detach to stop following the application once it is accepted or running, leaving it run on its own
+     */
+    private static void followApplication(YarnApplicationService yarnApplicationService, HdfsService hdfsService, boolean detach) {
+        long checkInterval = Parameters.APP_CHECK_STATUS_INTERVAL;
+        YarnApplicationState previousState = null;
+        float previousProgress = -1f;
         boolean isFinished = false;
         while (!isFinished) {
             try {
                 ApplicationReport applicationReport = yarnApplicationService.getApplicationReport();
                 if (applicationReport != null) {
-                    logger.info(yarnApplicationService.getAppProgress(applicationReport));
+                    startupLatencies.applicationReported(applicationReport);
+                    YarnApplicationState state = applicationReport.getYarnApplicationState();
+                    if (state != previousState || applicationReport.getProgress() != previousProgress) {
+                        logger.info(yarnApplicationService.getAppProgress(applicationReport));
+                    }
+                    boolean commandsFailed = reportFailedCommands(yarnApplicationService, hdfsService, Collections.singletonList(applicationReport));
 
                     if (Boolean.TRUE.equals(yarnApplicationService.applicatonEnded(applicationReport))) {
                         logger.info("Application is finished with status : " + applicationReport.getYarnApplicationState());
                         logger.info("To get logs of the application, please run: yarn logs -applicationId " + applicationReport.getApplicationId());
-                        isFinished = true;
+                        logger.info("Result of each command is in HDFS files: " + Parameters.HDFS_WORK_DIRECTORY + "results/attempt-*.jsonl");
+                        logStartupLatencies();
+                        return;
+                    }
+                    if (detach && (state == YarnApplicationState.ACCEPTED || state == YarnApplicationState.RUNNING)) {
+                        logStartupLatencies();
+                        detachFromApplications(Collections.singletonList(applicationReport.getApplicationId()));
+                        return;
                     }
+
+                    // A transition is expected when the application starts or is almost done
+                    // Failures of commands often come in bursts
+                    checkInterval = getNextCheckInterval(checkInterval,
+                            state != previousState || isStarting(state) || applicationReport.getProgress() >= 0.95f || commandsFailed);
+                    previousState = state;
+                    previousProgress = applicationReport.getProgress();
                 }
-                Thread.sleep(Parameters.APP_CHECK_STATUS_INTERVAL);
+                Thread.sleep(checkInterval);
             } catch (InterruptedException e) {
                 logger.error("Cannot get app status from Yarn", e);
                 Thread.currentThread().interrupt();
@@ -120,5 +364,212 @@ public class Main {
         }
     }
 
+    /**
+     * Follow state of all applications of a batch until they all end, getting their reports with one call to RM at each check:
+     * often around transitions of state of any of them, and less and less often while none changes
+     *
+     * @param yarnApplicationService
+     * @param hdfsService to read results of applications once they ended
+     * @param applicationIds applications of the batch
+     * @param tag of applications of the batch
+     * @param detach to stop following applications once they are all accepted or running, leaving them run on their own
+     *               (an application missing from reports by tag is asked for on its own, and no more followed if RM does not know it for too long)
+     */
+    private static void followApplications(YarnApplicationService yarnApplicationService, HdfsService hdfsService,
+                                           Set<ApplicationId> applicationIds, String tag, boolean detach) {
+        long checkInterval = Parameters.APP_CHECK_STATUS_INTERVAL;
+        Map<ApplicationId, ApplicationReport> applicationReports = new HashMap<>();
+        Map<ApplicationId, Long> missingSince = new HashMap<>();
+        while (!applicationIds.isEmpty()) {
+            List<ApplicationReport> reports = yarnApplicationService.getApplicationReportsWithTag(tag);
+            if (reports != null) {
+                reports = addReportsOfMissingApplications(yarnApplicationService, applicationIds, reports, missingSince);
+                applicationReports.keySet().retainAll(applicationIds);
+                if (applicationIds.isEmpty()) {
+                    logger.error("No application left to follow");
+                    return;
+                }
+            }
+            boolean stateChanged = false;
+            List<ApplicationReport> followedReports = new ArrayList<>();
+            for (ApplicationReport report : reports != null ? reports : Collections.<ApplicationReport>emptyList()) {
+                if (!applicationIds.contains(report.getApplicationId())) {
+                    continue;
+                }
+                followedReports.add(report);
+                startupLatencies.applicationReported(report);
+                ApplicationReport previousReport = applicationReports.put(report.getApplicationId(), report);
+                if (previousReport == null || previousReport.getYarnApplicationState() != report.getYarnApplicationState()) {
+                    logger.info(yarnApplicationService.getAppProgress(report));
+                    stateChanged = true;
+                }
+            }
+            stateChanged |= reportFailedCommands(yarnApplicationService, hdfsService, followedReports);
+
+            if (applicationReports.size() == applicationIds.size()) {
+                if (applicationReports.values().stream().allMatch(report -> yarnApplicationService.applicatonEnded(report))) {
+                    logApplicationsEnded(applicationReports.values());
+                    logStartupLatencies();
+                    return;
+                }
+                if (detach && applicationReports.values().stream().noneMatch(report -> isStarting(report.getYarnApplicationState()))) {
+                    logStartupLatencies();
+                    detachFromApplications(applicationIds);
+                    return;
+                }
+            }
+
+            checkInterval = getNextCheckInterval(checkInterval, stateChanged ||
+                    applicationReports.values().stream().anyMatch(report -> isStarting(report.getYarnApplicationState())));
+            try {
+                Thread.sleep(checkInterval);
+            } catch (InterruptedException e) {
+                logger.error("Cannot get status of applications from Yarn", e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applications missing from reports by tag (tags may not be indexed yet, or lost by RM) are asked for one by one,
+     * and applications RM does not know for too long are no more followed
+     *
+     * @param yarnApplicationService
+     * @param applicationIds applications followed, from which applications not followed anymore are removed
+     * @param reports got by tag
+     * @param missingSince time since when each application is missing from reports
+     * @return reports got by tag, and reports of applications missing from them
+     */
+    private static List<ApplicationReport> addReportsOfMissingApplications(YarnApplicationService yarnApplicationService, Set<ApplicationId> applicationIds,
+                                                                           List<ApplicationReport> reports, Map<ApplicationId, Long> missingSince) {
+        Set<ApplicationId> applicationsReported = reports.stream().map(ApplicationReport::getApplicationId).collect(Collectors.toSet());
+        List<ApplicationReport> allReports = new ArrayList<>(reports);
+        for (Iterator<ApplicationId> it = applicationIds.iterator(); it.hasNext(); ) {
+            ApplicationId applicationId = it.next();
+            if (applicationsReported.contains(applicationId)) {
+                missingSince.remove(applicationId);
+                continue;
+            }
+            ApplicationReport report = yarnApplicationService.getApplicationReport(applicationId);
+            if (report != null) {
+                allReports.add(report);
+                missingSince.remove(applicationId);
+                continue;
+            }
+            long missingFor = System.currentTimeMillis() - missingSince.computeIfAbsent(applicationId, id -> System.currentTimeMillis());
+            if (missingFor >= MISSING_APPLICATION_TIMEOUT) {
+                logger.error("Application: " + applicationId + " is not known by Yarn since " + missingFor + "ms, it is not followed anymore");
+                missingSince.remove(applicationId);
+                it.remove();
+            }
+        }
+        return allReports;
+    }
+
+    private static void logApplicationsEnded(Collection<ApplicationReport> applicationReports) {
+        List<ApplicationReport> unsuccessful = applicationReports.stream()
+                .filter(report -> report.getFinalApplicationStatus() != FinalApplicationStatus.SUCCEEDED)
+                .collect(Collectors.toList());
+        logger.info("All " + applicationReports.size() + " applications are finished, " + unsuccessful.size() + " of them did not succeed");
+        unsuccessful.forEach(report -> logger.warn("Application: " + report.getApplicationId() + " (" + report.getName() +
+                ") finished with status: " + report.getYarnApplicationState() + " / " + report.getFinalApplicationStatus()));
+        logger.info("To get logs of an application, please run: yarn logs -applicationId <applicationId>");
+    }
+
+    /**
+     * Report commands of applications which failed for good since last check, with their exit code and last lines of output,
+     * so that failures are known without waiting for aggregation of logs: as served by their AM while they run (within a time budget),
+     * then from their results files once they ended, for failures not reported yet (last ones, or all of them if their AM could not be reached)
+     *
+     * @return true if new failed commands were reported
+     */
+    private static boolean reportFailedCommands(YarnApplicationService yarnApplicationService, HdfsService hdfsService,
+                                                Collection<ApplicationReport> applicationReports) {
+        boolean newFailures = false;
+        for (ApplicationReport applicationReport : applicationReports) {
+            ApplicationId applicationId = applicationReport.getApplicationId();
+            if (Boolean.TRUE.equals(yarnApplicationService.applicatonEnded(applicationReport)) && resultsRead.add(applicationId)) {
+                newFailures |= logFailedCommands(applicationId, readFailedCommandsFromResults(hdfsService, applicationId));
+            }
+        }
+        for (Map.Entry<ApplicationId, List<Map<String, Object>>> failedCommands :
+                yarnApplicationService.getFailedCommands(applicationReports).entrySet()) {
+            newFailures |= logFailedCommands(failedCommands.getKey(), failedCommands.getValue());
+        }
+        return newFailures;
+    }
+
+    private static List<Map<String, Object>> readFailedCommandsFromResults(HdfsService hdfsService, ApplicationId applicationId) {
+        String resultsDirectory = workDirectories.getOrDefault(applicationId, Parameters.HDFS_WORK_DIRECTORY) + "results/";
+        try {
+            return TaskResults.readFailedCommands(hdfsService, resultsDirectory);
+        } catch (IOException e) {
+            logger.warn("Could not read results of application: " + applicationId + " from: " + resultsDirectory +
+                    ", its failed commands not reported yet will only be known from its logs, due to error: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return true if some of the failed commands were not reported yet
+     */
+    private static boolean logFailedCommands(ApplicationId applicationId, List<Map<String, Object>> failedCommands) {
+        Set<Integer> reported = failedCommandsReported.computeIfAbsent(applicationId, id -> new HashSet<>());
+        boolean newFailures = false;
+        for (Map<String, Object> failedCommand : failedCommands) {
+            if (!reported.add(((Number) failedCommand.get("index")).intValue())) {
+                continue;
+            }
+            newFailures = true;
+            if (failedCommand.get("skipped") != null) {
+                logger.warn("Command " + failedCommand.get("index") + " of application: " + applicationId + " was not run (" +
+                        failedCommand.get("skipped") + "): " + failedCommand.get("command"));
+                continue;
+            }
+            Object output = failedCommand.get("output");
+            logger.warn("Command " + failedCommand.get("index") + " of application: " + applicationId +
+                    " failed with exit code " + failedCommand.get("exitCode") + " after " + failedCommand.get("tries") + " tries: " +
+                    failedCommand.get("command") + (output != null ? ", last lines of its output:\n" + output : ""));
+        }
+        return newFailures;
+    }
+
+    private static void logStartupLatencies() {
+        logger.info("Startup latencies of applications in ms: " + startupLatencies.toMap());
+    }
+
+    /**
+     * Time to wait before next check of applications: shortest one when a transition of state is expected, doubled at each check otherwise
+     */
+    private static long getNextCheckInterval(long checkInterval, boolean transitionExpected) {
+        if (transitionExpected) {
+            return Parameters.APP_CHECK_STATUS_INTERVAL;
+        }
+        return Math.min(Parameters.APP_CHECK_STATUS_MAX_INTERVAL, checkInterval * 2);
+    }
+
+    private static boolean isStarting(YarnApplicationState state) {
+        return state == YarnApplicationState.NEW || state == YarnApplicationState.NEW_SAVING || state == YarnApplicationState.SUBMITTED;
+    }
+
+    /**
+     * Leave applications run on their own, writing their ids to a file if asked, to follow them again later
+     */
+    private static void detachFromApplications(Collection<ApplicationId> applicationIds) {
+        applicationIds.forEach(applicationId -> logger.info("Detaching from application: " + applicationId +
+                ", to follow it again, run with: --reattach " + applicationId));
+        if (Parameters.APP_ID_FILE.isEmpty()) {
+            return;
+        }
+        try {
+            Files.write(Paths.get(Parameters.APP_ID_FILE),
+                    applicationIds.stream().map(ApplicationId::toString).collect(Collectors.toList()), StandardCharsets.UTF_8);
+            logger.info("Application ids written to file: " + Parameters.APP_ID_FILE);
+        } catch (IOException e) {
+            logger.error("Could not write application ids to file: " + Parameters.APP_ID_FILE + " due to error: ", e);
+        }
+    }
+
 
 }
@@ -40,6 +40,16 @@ public class Utils {
         return filesToChangePrefix.stream().map(f -> newPrefix + Utils.getFileNameFromPath(f)).collect(Collectors.toList());
     }
 
+    /**
+     * Find in a list of files, the one with the given file name
+     * @param filesPath
+     * @param fileName
+     * @return path of the file found or null if there is none
+     */
+    public static String getFilePathWithName(List<String> filesPath, String fileName) {
+        return filesPath.stream().filter(f -> Utils.getFileNameFromPath(f).equals(fileName)).findFirst().orElse(null);
+    }
+
     public static String getJarFilePath() {
         try {
             return URLDecoder.decode(Main.class.getProtectionDomain().getCodeSource().getLocation().getPath(), "UTF-8");
@@ -37,6 +37,12 @@ public class CommandLineArgumentsParser {
         input.setRequired(true);
         options.addOption(input);
 
+        Option reattach = new Option("r", "reattach", true, "id of an application already submitted to follow, instead of submitting one");
+        options.addOption(reattach);
+
+        Option manifest = new Option("m", "manifest", true, "file listing parameters files of several applications to submit at once");
+        options.addOption(manifest);
+
         CommandLineParser parser = new BasicParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd;
@@ -44,6 +50,12 @@ public class CommandLineArgumentsParser {
         try {
             cmd = parser.parse(options, args);
             arguments.put(Arguments.CONFIG_FILE, cmd.getOptionValue("config-file"));
+            if (cmd.hasOption("reattach")) {
+                arguments.put(Arguments.REATTACH, cmd.getOptionValue("reattach"));
+            }
+            if (cmd.hasOption("manifest")) {
+                arguments.put(Arguments.MANIFEST, cmd.getOptionValue("manifest"));
+            }
         } catch (ParseException e) {
             logger.error(e.getMessage());
             formatter.printHelp("utility-name", options);
@@ -56,6 +68,8 @@ public class CommandLineArgumentsParser {
     }
 
     public enum Arguments {
-        CONFIG_FILE
+        CONFIG_FILE,
+        REATTACH,
+        MANIFEST
     }
 }
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parameters of one application to submit, taken from its own parameters file,
+ * so that one client can submit several applications with different parameters.
+ * Parameters of the client itself (site files, Kerberos, cache...) are shared by all applications and stay in Parameters
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class JobParameters {
+
+    private final String configFile;
+    private final String appName;
+    private final String queue;
+    private final int priority;
+    private final int amMemory;
+    private final int amVcores;
+    private final int amMaxAttempts;
+    private final String jarPath;
+    private final List<String> appFiles;
+    private final String hdfsWorkDirectory;
+    private final String javaHome;
+
+    /**
+     * Parameters of the application from parameters currently loaded
+     * @param configFile from which parameters were loaded
+     */
+    public static JobParameters fromParameters(String configFile) {
+        List<String> appFiles = new ArrayList<>();
+        Parameters.APP_FILES.stream().filter(file -> !file.isEmpty()).forEach(appFiles::add);
+        return new JobParameters(configFile, Parameters.APP_NAME, Parameters.APP_QUEUE, Parameters.APP_PRIORITY,
+                Parameters.APP_AM_MEMORY, Parameters.APP_AM_VCORES, Parameters.APP_AM_MAX_ATTEMPTS, Parameters.JAR_PATH,
+                appFiles, Parameters.HDFS_WORK_DIRECTORY, Parameters.JAVA_HOME);
+    }
+
+    /**
+     * Read parameters of all applications listed in a manifest (one parameters file per line, empty lines and lines starting with # are ignored),
+     * parameters of the client are loaded back afterwards
+     * @param manifestFile local path of the manifest
+     * @param clientConfigFile parameters file of the client
+     * @return parameters of each application, in order of the manifest
+     * @throws IOException if manifest could not be read
+     * @throws IllegalArgumentException if two applications share the same work directory
+     */
+    public static List<JobParameters> readManifest(String manifestFile, String clientConfigFile) throws IOException {
+        List<JobParameters> jobs = new ArrayList<>();
+        Set<String> workDirectories = new HashSet<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(manifestFile), StandardCharsets.UTF_8)) {
+                String configFile = line.trim();
+                if (configFile.isEmpty() || configFile.startsWith("#")) {
+                    continue;
+                }
+                Parameters.initParameters(configFile);
+                JobParameters job = fromParameters(configFile);
+                if (!workDirectories.add(job.getHdfsWorkDirectory())) {
+                    throw new IllegalArgumentException("Application of: " + configFile + " has the same HDFS work directory as another one: " +
+                            job.getHdfsWorkDirectory() + ", set hdfs.work.directory for each application");
+                }
+                jobs.add(job);
+            }
+        } finally {
+            Parameters.initParameters(clientConfigFile);
+        }
+        return jobs;
+    }
+}
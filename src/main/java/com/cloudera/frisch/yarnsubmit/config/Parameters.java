@@ -18,6 +18,7 @@
 package com.cloudera.frisch.yarnsubmit.config;
 
 import lombok.Getter;
+import org.apache.hadoop.yarn.api.records.ExecutionType;
 import org.apache.log4j.Logger;
 
 import java.io.FileInputStream;
@@ -48,19 +49,57 @@ public class Parameters {
         KERBEROS = Boolean.valueOf(getProperty(properties,"kerberos", "false"));
         KEYTAB = getProperty(properties,"kerberos.keytab", "");
         KERBEROS_USER = getProperty(properties,"kerberos.user", "");
+        KERBEROS_TOKEN_RENEWAL_INTERVAL = Long.valueOf(getProperty(properties,"kerberos.token.renewal-interval", "3600000"));
         APP_NAME = getProperty(properties,"app.name", "submit-test");
         APP_QUEUE = getProperty(properties,"app.queue", "default");
         APP_PRIORITY = Integer.valueOf(getProperty(properties,"app.priority", "0"));
         APP_AM_MEMORY = Integer.valueOf(getProperty(properties,"app.am.memory", "1024"));
         APP_AM_VCORES = Integer.valueOf(getProperty(properties,"app.am.vcores", "1"));
+        APP_AM_MAX_ATTEMPTS = Integer.valueOf(getProperty(properties,"app.am.max-attempts", "2"));
+        APP_AM_HTTP_PORT = Integer.valueOf(getProperty(properties,"app.am.http-port", "0"));
+        APP_AM_HTTP_PROXY_ONLY = Boolean.valueOf(getProperty(properties,"app.am.http-proxy-only", "true"));
+        APP_METRICS_PUBLISH = Boolean.valueOf(getProperty(properties,"app.metrics.publish", "false"));
+        APP_RESULTS_OUTPUT_LINES = Integer.valueOf(getProperty(properties,"app.results.output-lines", "0"));
         APP_CONTAINER_MEMORY = Integer.valueOf(getProperty(properties,"app.container.memory", "1024"));
         APP_CONTAINER_VCORES = Integer.valueOf(getProperty(properties,"app.container.vcores", "1"));
         APP_CONTAINER_NUMBER = Integer.valueOf(getProperty(properties,"app.container.number", "1"));
+        APP_CONTAINER_EXECUTION_TYPE = ExecutionType.valueOf(getProperty(properties,"app.container.execution-type", "GUARANTEED").toUpperCase());
+        APP_CONTAINER_ENFORCE_EXECUTION_TYPE = Boolean.valueOf(getProperty(properties,"app.container.enforce-execution-type", "true"));
+        APP_OPPORTUNISTIC_MAX_KILLS = Integer.valueOf(getProperty(properties,"app.opportunistic.max-kills", "3"));
         APP_FILES = Arrays.asList(getProperty(properties,"app.files", "").split(","));
+        APP_COMMANDS_BATCH_SIZE = Integer.valueOf(getProperty(properties,"app.commands.batch-size", "10000"));
+        APP_COMMANDS_DAG = Boolean.valueOf(getProperty(properties,"app.commands.dag", "false"));
+        APP_BUNDLE_SIZE = Integer.valueOf(getProperty(properties,"app.bundle.size", "1"));
+        APP_BUNDLE_TARGET_DURATION = Long.valueOf(getProperty(properties,"app.bundle.target-duration", "0"));
+        APP_BUNDLE_PARALLELISM = Integer.valueOf(getProperty(properties,"app.bundle.parallelism", "1"));
+        APP_WORKERS_NUMBER = Integer.valueOf(getProperty(properties,"app.workers.number", "0"));
+        APP_LOCALITY_DELAY = Long.valueOf(getProperty(properties,"app.locality.delay", "3000"));
+        APP_CONCURRENCY_INITIAL = Integer.valueOf(getProperty(properties,"app.concurrency.initial", "100"));
+        APP_CONCURRENCY_MAX = Integer.valueOf(getProperty(properties,"app.concurrency.max", "10000"));
+        APP_CONCURRENCY_LATENCY_TARGET = Long.valueOf(getProperty(properties,"app.concurrency.latency-target", "10000"));
+        APP_SPECULATION_THRESHOLD = Double.valueOf(getProperty(properties,"app.speculation.threshold", "0"));
+        APP_RETRY_MAX_TRIES = Integer.valueOf(getProperty(properties,"app.retry.max-tries", "3"));
+        APP_RETRY_BACKOFF = Long.valueOf(getProperty(properties,"app.retry.backoff", "1000"));
+        APP_RETRY_MAX_BACKOFF = Long.valueOf(getProperty(properties,"app.retry.max-backoff", "60000"));
+        APP_RETRY_MAX_UNCOUNTED_RETRIES = Integer.valueOf(getProperty(properties,"app.retry.max-uncounted-retries", "10"));
+        APP_RETRY_NODE_MAX_FAILURES = Integer.valueOf(getProperty(properties,"app.retry.node-max-failures", "3"));
+        APP_RETRY_NODE_BLACKLIST_TIMEOUT = Long.valueOf(getProperty(properties,"app.retry.node-blacklist-timeout", "600000"));
+        APP_RETRY_POLICY = getProperty(properties,"app.retry.policy", "com.cloudera.frisch.yarnsubmit.master.DefaultRetryPolicy");
         APP_CHECK_STATUS_INTERVAL = Long.valueOf(getProperty(properties,"app.check-status-interval", "1000"));
+        APP_CHECK_STATUS_MAX_INTERVAL = Long.valueOf(getProperty(properties,"app.check-status-max-interval", "30000"));
+        APP_DETACH = Boolean.valueOf(getProperty(properties,"app.detach", "false"));
+        APP_ID_FILE = getProperty(properties,"app.id-file", "");
+        APP_BATCH_PARALLELISM = Integer.valueOf(getProperty(properties,"app.batch.parallelism", "8"));
         APP_CHECK_CONTAINERS_COMPLETED = Long.valueOf(getProperty(properties,"app.check.containers.completed", "1000"));
+        APP_AM_HEARTBEAT_INTERVAL = Integer.valueOf(getProperty(properties,"app.am.heartbeat-interval", "1000"));
 
         HDFS_WORK_DIRECTORY = getProperty(properties,"hdfs.work.directory", "/tmp/yarnsubmit/" + APP_NAME + "/");
+        HDFS_UPLOAD_THREADS = Integer.valueOf(getProperty(properties,"hdfs.upload.threads", "4"));
+        HDFS_UPLOAD_BUFFER_SIZE = Integer.valueOf(getProperty(properties,"hdfs.upload.buffer-size", "1048576"));
+        HDFS_CACHE_ENABLED = Boolean.valueOf(getProperty(properties,"hdfs.cache.enabled", "false"));
+        HDFS_CACHE_DIRECTORY = getProperty(properties,"hdfs.cache.directory", "");
+        HDFS_CACHE_PUBLIC = Boolean.valueOf(getProperty(properties,"hdfs.cache.public", "false"));
+        HDFS_CACHE_SHARED_CACHE = Boolean.valueOf(getProperty(properties,"hdfs.cache.shared-cache", "false"));
 
         JAVA_HOME = getProperty(properties,"java.home", "/usr/bin/java");
         JAR_PATH = getProperty(properties,"jar.path", "");
@@ -74,10 +113,17 @@ public class Parameters {
     public static String HADOOP_USER_NAME;
     public static String HADOOP_HOME_DIR;
     public static String HDFS_WORK_DIRECTORY;
+    public static Integer HDFS_UPLOAD_THREADS;
+    public static Integer HDFS_UPLOAD_BUFFER_SIZE;
+    public static Boolean HDFS_CACHE_ENABLED;
+    public static String HDFS_CACHE_DIRECTORY;
+    public static Boolean HDFS_CACHE_PUBLIC;
+    public static Boolean HDFS_CACHE_SHARED_CACHE;
 
     public static Boolean KERBEROS;
     public static String KEYTAB;
     public static String KERBEROS_USER;
+    public static Long KERBEROS_TOKEN_RENEWAL_INTERVAL;
 
     public static String APP_NAME;
     public static String APP_QUEUE;
@@ -87,9 +133,40 @@ public class Parameters {
     public static Integer APP_CONTAINER_MEMORY;
     public static Integer APP_CONTAINER_VCORES;
     public static Integer APP_CONTAINER_NUMBER;
+    public static ExecutionType APP_CONTAINER_EXECUTION_TYPE;
+    public static Boolean APP_CONTAINER_ENFORCE_EXECUTION_TYPE;
+    public static Integer APP_OPPORTUNISTIC_MAX_KILLS;
     public static List<String> APP_FILES;
+    public static Integer APP_COMMANDS_BATCH_SIZE;
+    public static Boolean APP_COMMANDS_DAG;
+    public static Integer APP_BUNDLE_SIZE;
+    public static Long APP_BUNDLE_TARGET_DURATION;
+    public static Integer APP_BUNDLE_PARALLELISM;
+    public static Integer APP_WORKERS_NUMBER;
+    public static Long APP_LOCALITY_DELAY;
+    public static Integer APP_CONCURRENCY_INITIAL;
+    public static Integer APP_CONCURRENCY_MAX;
+    public static Long APP_CONCURRENCY_LATENCY_TARGET;
+    public static Double APP_SPECULATION_THRESHOLD;
+    public static Integer APP_RETRY_MAX_TRIES;
+    public static Long APP_RETRY_BACKOFF;
+    public static Long APP_RETRY_MAX_BACKOFF;
+    public static Integer APP_RETRY_MAX_UNCOUNTED_RETRIES;
+    public static Integer APP_RETRY_NODE_MAX_FAILURES;
+    public static Long APP_RETRY_NODE_BLACKLIST_TIMEOUT;
+    public static String APP_RETRY_POLICY;
     public static Long APP_CHECK_STATUS_INTERVAL;
+    public static Long APP_CHECK_STATUS_MAX_INTERVAL;
+    public static Boolean APP_DETACH;
+    public static String APP_ID_FILE;
+    public static Integer APP_BATCH_PARALLELISM;
     public static Long APP_CHECK_CONTAINERS_COMPLETED ;
+    public static Integer APP_AM_HEARTBEAT_INTERVAL;
+    public static Integer APP_AM_MAX_ATTEMPTS;
+    public static Integer APP_AM_HTTP_PORT;
+    public static Boolean APP_AM_HTTP_PROXY_ONLY;
+    public static Boolean APP_METRICS_PUBLISH;
+    public static Integer APP_RESULTS_OUTPUT_LINES;
 
     public static String JAVA_HOME;
     public static String JAR_PATH;
@@ -103,8 +180,7 @@ public class Parameters {
      */
     private static Properties loadProperties(String pathToConfigPropertiesFile) {
         java.util.Properties properties = new java.util.Properties();
-        try {
-            FileInputStream fileInputStream = new FileInputStream(pathToConfigPropertiesFile);
+        try (FileInputStream fileInputStream = new FileInputStream(pathToConfigPropertiesFile)) {
             properties.load(fileInputStream);
         } catch (IOException e) {
             logger.error("Property file not found !", e);
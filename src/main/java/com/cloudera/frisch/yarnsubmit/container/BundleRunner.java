@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.container;
+
+import com.cloudera.frisch.yarnsubmit.config.Parameters;
+import com.cloudera.frisch.yarnsubmit.object.CommandResult;
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import com.cloudera.frisch.yarnsubmit.services.YarnService;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a bundle of commands inside one container, sequentially or with a bounded parallelism,
+ * and writes exit code, duration and last lines of output of each command to a results file in HDFS, read by the AM once container completes.
+ * A bundle of a single command exits with its exit code, so that it can stand for the command itself.
+ * Arguments are: parallelism, HDFS path of the results file and then each command encoded in base64
+ */
+public class BundleRunner {
+
+    private static final Logger logger = Logger.getLogger(BundleRunner.class);
+
+    public static void main(String[] args) {
+        int parallelism = Integer.parseInt(args[0]);
+        String resultsFile = args[1];
+        List<String> commands = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            commands.add(new String(Base64.getDecoder().decode(args[i]), StandardCharsets.UTF_8));
+        }
+        logger.info("Starting bundle of " + commands.size() + " commands with a parallelism of " + parallelism);
+        Parameters.initParameters("parameters.properties");
+
+        List<CommandResult> results = runCommands(commands, parallelism);
+
+        try {
+            new HdfsService(YarnService.createConfiguration()).writeFile(resultsFile,
+                    results.stream().map(CommandResult::toLine).collect(Collectors.toList()));
+        } catch (IOException e) {
+            logger.error("Could not write results of bundle to: " + resultsFile + " due to error: ", e);
+            System.exit(2);
+        }
+
+        boolean allSuccessful = results.stream().allMatch(result -> result.getExitCode() == 0);
+        logger.info("Finished bundle of " + commands.size() + " commands, all successful: " + allSuccessful);
+        if (results.size() == 1) {
+            System.exit(results.get(0).getExitCode());
+        }
+        System.exit(allSuccessful ? 0 : 1);
+    }
+
+    private static List<CommandResult> runCommands(List<String> commands, int parallelism) {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, commands.size())));
+        List<Future<CommandResult>> futures = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            int index = i;
+            futures.add(executorService.submit(() -> CommandRunner.runCommand(index, commands.get(index), Parameters.APP_RESULTS_OUTPUT_LINES)));
+        }
+        executorService.shutdown();
+
+        List<CommandResult> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                logger.error("Command " + i + " could not be run due to error: ", e);
+                results.add(new CommandResult(i, CommandRunner.COMMAND_NOT_RUN_EXIT_CODE, 0L, null));
+            } catch (InterruptedException e) {
+                logger.error("Interrupted while waiting for command " + i, e);
+                Thread.currentThread().interrupt();
+                results.add(new CommandResult(i, CommandRunner.COMMAND_NOT_RUN_EXIT_CODE, 0L, null));
+            }
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.container;
+
+import com.cloudera.frisch.yarnsubmit.object.CommandResult;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+
+/**
+ * Runs commands inside a container, the same way YARN runs a container command
+ */
+public class CommandRunner {
+
+    private CommandRunner() { throw new IllegalStateException("Command Runner class not instantiable"); }
+
+    private static final Logger logger = Logger.getLogger(CommandRunner.class);
+
+    // Exit code used by shells when a command cannot be run
+    public static final int COMMAND_NOT_RUN_EXIT_CODE = 127;
+
+    /**
+     * Run a command through bash (as YARN does for a container command), with output going to container's stdout and stderr
+     * @param index of the command, used to identify it in logs and in its result
+     * @param command to run
+     * @param outputLines number of last lines of output of the command to keep in its result (0 for none)
+     * @return exit code, duration and last lines of output of the command
+     */
+    public static CommandResult runCommand(int index, String command, int outputLines) {
+        logger.info("Starting command " + index + ": " + command);
+        long start = System.currentTimeMillis();
+        int exitCode;
+        OutputTail outputTail = outputLines > 0 ? new OutputTail(outputLines) : null;
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder("bash", "-c", command);
+            if (outputTail == null) {
+                exitCode = processBuilder.inheritIO().start().waitFor();
+            } else {
+                Process process = processBuilder.redirectInput(ProcessBuilder.Redirect.INHERIT).start();
+                Thread stdout = outputTail.copyInBackground(process.getInputStream(), System.out, "stdout-" + index);
+                Thread stderr = outputTail.copyInBackground(process.getErrorStream(), System.err, "stderr-" + index);
+                exitCode = process.waitFor();
+                // Output is complete once the command and its children closed it
+                stdout.join();
+                stderr.join();
+            }
+        } catch (IOException e) {
+            logger.error("Could not start command " + index + " due to error: ", e);
+            exitCode = COMMAND_NOT_RUN_EXIT_CODE;
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while running command " + index, e);
+            Thread.currentThread().interrupt();
+            exitCode = COMMAND_NOT_RUN_EXIT_CODE;
+        }
+        long duration = System.currentTimeMillis() - start;
+        logger.info("Finished command " + index + " with exit code " + exitCode + " in " + duration + "ms");
+        return new CommandResult(index, exitCode, duration, outputTail != null ? outputTail.getLines() : null);
+    }
+}
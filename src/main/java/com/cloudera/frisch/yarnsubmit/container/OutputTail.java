@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.container;
+
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Last lines written by a command on its stdout and stderr, kept while they are copied to stdout and stderr of the container,
+ * so that they can be reported to the AM without waiting for aggregation of logs
+ */
+public class OutputTail {
+
+    private static final Logger logger = Logger.getLogger(OutputTail.class);
+
+    // Longer lines are cut, so that a command writing no line break can not fill memory
+    private static final int MAX_LINE_LENGTH = 1024;
+
+    private final int maxLines;
+    private final Deque<String> lines = new ArrayDeque<>();
+
+    /**
+     * @param maxLines number of last lines kept
+     */
+    public OutputTail(int maxLines) {
+        this.maxLines = maxLines;
+    }
+
+    /**
+     * Copy an output of the command to an output of the container in background, keeping its last lines
+     * @return thread copying, which ends once the command closes its output
+     */
+    public Thread copyInBackground(InputStream from, OutputStream to, String name) {
+        Thread thread = new Thread(() -> copy(from, to), name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void copy(InputStream from, OutputStream to) {
+        byte[] buffer = new byte[8192];
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try {
+            int read;
+            while ((read = from.read(buffer)) != -1) {
+                to.write(buffer, 0, read);
+                to.flush();
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        addLine(line);
+                    } else if (line.size() < MAX_LINE_LENGTH) {
+                        line.write(buffer[i]);
+                    }
+                }
+            }
+            if (line.size() > 0) {
+                addLine(line);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not copy output of command due to error: ", e);
+        }
+    }
+
+    private synchronized void addLine(ByteArrayOutputStream line) {
+        lines.addLast(new String(line.toByteArray(), StandardCharsets.UTF_8));
+        line.reset();
+        if (lines.size() > maxLines) {
+            lines.removeFirst();
+        }
+    }
+
+    /**
+     * @return last lines of output, from stdout and stderr in the order they were written, null if command wrote nothing
+     */
+    public synchronized String getLines() {
+        return lines.isEmpty() ? null : String.join("\n", lines);
+    }
+}
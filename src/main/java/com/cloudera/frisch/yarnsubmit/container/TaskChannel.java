@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.container;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Connection between the AM and one of its workers, both proving they know the secret of the application before any command is exchanged:
+ * - Worker to AM: HELLO containerId workerNonce
+ * - AM to worker: CHALLENGE amNonce HMAC(secret, AM containerId workerNonce amNonce)
+ * - Worker to AM: PROOF HMAC(secret, WORKER containerId workerNonce amNonce)
+ * Then each message of TaskProtocol is encrypted and authenticated with a key derived from the secret and both nonces,
+ * and numbered in each direction, so that it can be neither read, changed, replayed nor reordered
+ */
+public class TaskChannel implements Closeable {
+
+    // Environment variable giving the secret to workers, as a command line can be read by any user of the node
+    public static final String SECRET_ENV = "YARN_SUBMIT_WORKER_SECRET";
+
+    public static final String CHALLENGE = "CHALLENGE";
+    public static final String PROOF = "PROOF";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+    private static final int NONCE_LENGTH = 32;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final int TO_WORKER = 0;
+    private static final int TO_AM = 1;
+    // Time in ms to wait for each message of the handshake, so that a client saying nothing does not hold a thread of the AM
+    private static final int HANDSHAKE_TIMEOUT = 30000;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final long workerId;
+    private final int sendDirection;
+    private SecretKeySpec sessionKey;
+    private long messagesSent = 0L;
+    private long messagesReceived = 0L;
+
+    private TaskChannel(Socket socket, DataInputStream in, long workerId, boolean isAm) throws IOException {
+        this.socket = socket;
+        this.in = in;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.workerId = workerId;
+        this.sendDirection = isAm ? TO_WORKER : TO_AM;
+    }
+
+    /**
+     * @return a new secret to share between the AM and its workers
+     */
+    public static String newSecret() {
+        byte[] secret = new byte[NONCE_LENGTH];
+        random.nextBytes(secret);
+        return Base64.getEncoder().encodeToString(secret);
+    }
+
+    /**
+     * Open a channel from a worker to the AM
+     * @param socket connected to the AM
+     * @param secret of the application
+     * @param workerId container id of the worker
+     * @throws IOException if AM could not be reached or did not prove it knows the secret
+     */
+    public static TaskChannel connect(Socket socket, String secret, long workerId) throws IOException {
+        try {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            TaskChannel channel = handshakeWithAm(socket, secret, workerId);
+            socket.setSoTimeout(0);
+            return channel;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static TaskChannel handshakeWithAm(Socket socket, String secret, long workerId) throws IOException {
+        TaskChannel channel = new TaskChannel(socket, new DataInputStream(new BufferedInputStream(socket.getInputStream())), workerId, false);
+        byte[] workerNonce = newNonce();
+        TaskProtocol.writeMessage(channel.out, TaskProtocol.HELLO + " " + workerId + " " + encode(workerNonce));
+        String[] challenge = TaskProtocol.readMessage(channel.in).split(" ");
+        if (challenge.length != 3 || !CHALLENGE.equals(challenge[0])) {
+            throw new IOException("Unexpected answer of AM to HELLO: " + challenge[0]);
+        }
+        byte[] amNonce = decode(challenge[1]);
+        if (!MessageDigest.isEqual(hmac(secret, "AM", workerId, workerNonce, amNonce), decode(challenge[2]))) {
+            throw new IOException("AM did not prove it knows the secret of the application");
+        }
+        TaskProtocol.writeMessage(channel.out, PROOF + " " + encode(hmac(secret, "WORKER", workerId, workerNonce, amNonce)));
+        channel.sessionKey = new SecretKeySpec(hmac(secret, "SESSION", workerId, workerNonce, amNonce), "AES");
+        return channel;
+    }
+
+    /**
+     * Open a channel from the AM to a worker which connected to it
+     * @param socket accepted from the worker
+     * @param secret of the application
+     * @throws IOException if worker could not be read or did not prove it knows the secret
+     */
+    public static TaskChannel accept(Socket socket, String secret) throws IOException {
+        try {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            TaskChannel channel = handshakeWithWorker(socket, secret);
+            socket.setSoTimeout(0);
+            return channel;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static TaskChannel handshakeWithWorker(Socket socket, String secret) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        String[] hello = TaskProtocol.readMessage(in).split(" ");
+        if (hello.length != 3 || !TaskProtocol.HELLO.equals(hello[0])) {
+            throw new IOException("Unexpected first message of worker: " + hello[0]);
+        }
+        long workerId;
+        try {
+            workerId = Long.parseLong(hello[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid id of worker: " + hello[1]);
+        }
+        byte[] workerNonce = decode(hello[2]);
+        byte[] amNonce = newNonce();
+        TaskChannel channel = new TaskChannel(socket, in, workerId, true);
+        TaskProtocol.writeMessage(channel.out, CHALLENGE + " " + encode(amNonce) + " " +
+                encode(hmac(secret, "AM", workerId, workerNonce, amNonce)));
+        String[] proof = TaskProtocol.readMessage(in).split(" ");
+        if (proof.length != 2 || !PROOF.equals(proof[0]) ||
+                !MessageDigest.isEqual(hmac(secret, "WORKER", workerId, workerNonce, amNonce), decode(proof[1]))) {
+            throw new IOException("Worker " + workerId + " did not prove it knows the secret of the application");
+        }
+        channel.sessionKey = new SecretKeySpec(hmac(secret, "SESSION", workerId, workerNonce, amNonce), "AES");
+        return channel;
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    public void send(String message) throws IOException {
+        byte[] encrypted = crypt(Cipher.ENCRYPT_MODE, sendDirection, messagesSent++, message.getBytes(StandardCharsets.UTF_8));
+        TaskProtocol.writeFrame(out, encrypted);
+    }
+
+    /**
+     * @throws IOException if message could not be read, or was not sent by the other end of this channel as its next message
+     */
+    public String receive() throws IOException {
+        byte[] encrypted = TaskProtocol.readFrame(in);
+        return new String(crypt(Cipher.DECRYPT_MODE, 1 - sendDirection, messagesReceived++, encrypted), StandardCharsets.UTF_8);
+    }
+
+    private byte[] crypt(int mode, int direction, long sequence, byte[] bytes) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+            byte[] iv = ByteBuffer.allocate(12).putInt(direction).putLong(sequence).array();
+            cipher.init(mode, sessionKey, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+            return cipher.doFinal(bytes);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Message " + sequence + " could not be " + (mode == Cipher.ENCRYPT_MODE ? "encrypted" : "authenticated"), e);
+        }
+    }
+
+    private static byte[] hmac(String secret, String role, long workerId, byte[] workerNonce, byte[] amNonce) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM));
+            mac.update((role + " " + workerId + " ").getBytes(StandardCharsets.UTF_8));
+            mac.update(workerNonce);
+            return mac.doFinal(amNonce);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not compute proof of the secret", e);
+        }
+    }
+
+    private static byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        return nonce;
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static byte[] decode(String text) throws IOException {
+        try {
+            return Base64.getDecoder().decode(text);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid encoded field: " + text);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
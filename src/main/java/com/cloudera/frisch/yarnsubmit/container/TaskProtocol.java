@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.container;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Messages exchanged between the AM and its workers, each message being a length-prefixed UTF-8 string of space separated fields:
+ * - Worker to AM: NEXT, RESULT exitCode duration [base64Output]
+ * - AM to worker: TASK base64Command, WAIT timeInMs, STOP
+ * They are sent through a TaskChannel, once the worker said HELLO and both proved they know the secret of the application
+ */
+public class TaskProtocol {
+
+    private TaskProtocol() { throw new IllegalStateException("Task Protocol class not instantiable"); }
+
+    public static final String HELLO = "HELLO";
+    public static final String NEXT = "NEXT";
+    public static final String RESULT = "RESULT";
+    public static final String TASK = "TASK";
+    public static final String WAIT = "WAIT";
+    public static final String STOP = "STOP";
+
+    private static final int MAX_MESSAGE_LENGTH = 16 * 1024 * 1024;
+
+    public static void writeMessage(DataOutputStream out, String message) throws IOException {
+        writeFrame(out, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String readMessage(DataInputStream in) throws IOException {
+        return new String(readFrame(in), StandardCharsets.UTF_8);
+    }
+
+    static void writeFrame(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+
+    static byte[] readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_MESSAGE_LENGTH) {
+            throw new IOException("Invalid message length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
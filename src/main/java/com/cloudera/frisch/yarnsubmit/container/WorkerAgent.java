@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.container;
+
+import com.cloudera.frisch.yarnsubmit.config.Parameters;
+import com.cloudera.frisch.yarnsubmit.object.CommandResult;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Long-lived worker running in a container: it pulls commands from the AM, runs them one after the other
+ * and reports their results, until the AM tells it to stop.
+ * Arguments are: AM host, AM port and id of this container, secret shared with the AM is in environment variable YARN_SUBMIT_WORKER_SECRET
+ */
+public class WorkerAgent {
+
+    private static final Logger logger = Logger.getLogger(WorkerAgent.class);
+
+    public static void main(String[] args) {
+        String amHost = args[0];
+        int amPort = Integer.parseInt(args[1]);
+        long containerId = Long.parseLong(args[2]);
+        String secret = System.getenv(TaskChannel.SECRET_ENV);
+        if (secret == null) {
+            logger.error("No secret to connect to AM in environment variable: " + TaskChannel.SECRET_ENV);
+            System.exit(1);
+        }
+        Parameters.initParameters("parameters.properties");
+
+        logger.info("Starting worker, connecting to AM at " + amHost + ":" + amPort);
+        try {
+            int tasksRun = run(amHost, amPort, secret, containerId);
+            logger.info("Stopping worker after running " + tasksRun + " tasks");
+        } catch (IOException e) {
+            logger.error("Lost connection with AM due to error: ", e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for a task", e);
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Pull commands from the AM and run them until it tells to stop
+     * @return number of commands run
+     * @throws IOException if AM could not be reached, did not prove it knows the secret, or connection with it was lost
+     * @throws InterruptedException if interrupted while waiting for a command
+     */
+    static int run(String amHost, int amPort, String secret, long containerId) throws IOException, InterruptedException {
+        int tasksRun = 0;
+        try (TaskChannel channel = TaskChannel.connect(new Socket(amHost, amPort), secret, containerId)) {
+            while (true) {
+                channel.send(TaskProtocol.NEXT);
+                String[] message = channel.receive().split(" ");
+                switch (message[0]) {
+                    case TaskProtocol.TASK:
+                        String command = new String(Base64.getDecoder().decode(message[1]), StandardCharsets.UTF_8);
+                        logger.info("Received command: " + command);
+                        CommandResult result = CommandRunner.runCommand(tasksRun++, command, Parameters.APP_RESULTS_OUTPUT_LINES);
+                        channel.send(TaskProtocol.RESULT + " " + result.getExitCode() + " " + result.getDuration() +
+                                (result.getOutput() != null ? " " + CommandResult.encodeOutput(result.getOutput()) : ""));
+                        break;
+                    case TaskProtocol.WAIT:
+                        Thread.sleep(Long.parseLong(message[1]));
+                        break;
+                    case TaskProtocol.STOP:
+                        return tasksRun;
+                    default:
+                        logger.warn("Unknown message received from AM: " + message[0]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.object.ContainerRegistry;
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import com.cloudera.frisch.yarnsubmit.services.YarnAmService;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * All services and state of the AM, shared by its main thread and the callbacks of RM and NM clients
+ */
+@Getter
+@AllArgsConstructor
+public class AmContext {
+    private final YarnAmService yarnAmService;
+    private final HdfsService hdfsService;
+    private final ContainerRegistry containers;
+    private final LocalityResolver localityResolver;
+    private final CommandBundler commandBundler;
+    private final WorkerPool workerPool;
+    private final ConcurrencyController concurrencyController;
+    private final Speculator speculator;
+    private final RetryPolicy retryPolicy;
+    private final NodeBlacklist nodeBlacklist;
+    private final TaskJournal taskJournal;
+    private final TaskResults taskResults;
+    private final AmMetrics metrics;
+}
@@ -0,0 +1,218 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.object.ContainerRegistry;
+import com.cloudera.frisch.yarnsubmit.object.LatencyHistogram;
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import com.cloudera.frisch.yarnsubmit.services.YarnAmService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.yarn.api.records.ApplicationResourceUsageReport;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latencies of the lifecycle of containers launched by the AM, and counters of what happened to them,
+ * written as a JSON summary when the AM ends and optionally published to sinks of Hadoop metrics2 while it runs
+ * Ask to allocation latency is measured by YarnAmService, which knows when asks were sent
+ */
+public class AmMetrics implements MetricsSource {
+
+    private static final Logger logger = Logger.getLogger(AmMetrics.class);
+
+    private static final String METRICS_PREFIX = "yarn-submit";
+    private static final String RECORD_NAME = "YarnSubmitAm";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // From call to NM to start a container, to NM reporting it started
+    @Getter
+    private final LatencyHistogram startLatencies = new LatencyHistogram();
+    // From start of a container to its completion, as seen by the AM (so including localization of its files)
+    @Getter
+    private final LatencyHistogram containerRuntimes = new LatencyHistogram();
+    private final Map<Long, Long> startRequestedAt = new HashMap<>();
+    private final Map<Long, Long> startedAt = new HashMap<>();
+    private long containersStarted = 0;
+    private long containersFailedToStart = 0;
+    private long commandsRetried = 0;
+    private long opportunisticContainersKilled = 0;
+
+    private AmContext amContext;
+    private boolean published = false;
+
+    /**
+     * Metrics read state of the AM to report it, so they are bound to it once it is created
+     */
+    public void bind(AmContext amContext) {
+        this.amContext = amContext;
+    }
+
+    public synchronized void containerStartRequested(long containerId) {
+        startRequestedAt.put(containerId, System.currentTimeMillis());
+    }
+
+    public synchronized void containerStarted(long containerId) {
+        long now = System.currentTimeMillis();
+        Long requestedAt = startRequestedAt.remove(containerId);
+        if (requestedAt != null) {
+            startLatencies.record(now - requestedAt);
+        }
+        startedAt.put(containerId, now);
+        containersStarted++;
+    }
+
+    public synchronized void containerStartFailed(long containerId) {
+        startRequestedAt.remove(containerId);
+        containersFailedToStart++;
+    }
+
+    public synchronized void containerCompleted(long containerId) {
+        startRequestedAt.remove(containerId);
+        Long containerStartedAt = startedAt.remove(containerId);
+        if (containerStartedAt != null) {
+            containerRuntimes.record(System.currentTimeMillis() - containerStartedAt);
+        }
+    }
+
+    public synchronized void commandRetried() {
+        commandsRetried++;
+    }
+
+    public synchronized void opportunisticContainerKilled() {
+        opportunisticContainersKilled++;
+    }
+
+    /**
+     * @param resourceUsage of the application as reported by RM, or null if unknown
+     * @return all metrics, as nested maps
+     */
+    public synchronized Map<String, Object> getSummary(ApplicationResourceUsageReport resourceUsage) {
+        YarnAmService yarnAmService = amContext.getYarnAmService();
+        ContainerRegistry containers = amContext.getContainers();
+        Map<String, Object> summary = new LinkedHashMap<>();
+
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        latencies.put("askToAllocation", yarnAmService.getAllocationLatencies().toMap());
+        latencies.put("allocationToStart", startLatencies.toMap());
+        latencies.put("containerRuntime", containerRuntimes.toMap());
+        summary.put("latenciesMs", latencies);
+
+        Map<String, Object> containersSummary = new LinkedHashMap<>();
+        containersSummary.put("allocated", yarnAmService.getAllocatedContainers());
+        containersSummary.put("started", containersStarted);
+        containersSummary.put("failedToStart", containersFailedToStart);
+        containersSummary.put("released", yarnAmService.getReleasedContainers());
+        containersSummary.put("opportunisticKilled", opportunisticContainersKilled);
+        summary.put("containers", containersSummary);
+
+        Map<String, Object> commands = new LinkedHashMap<>();
+        commands.put("total", containers.size());
+        commands.put("launched", containers.getNumberOfLaunchedContainers());
+        commands.put("successful", containers.getNumberOfSuccessfulContainers());
+        commands.put("failed", containers.getNumberOfCompletedContainers() - containers.getNumberOfSuccessfulContainers());
+        commands.put("retried", commandsRetried);
+        summary.put("commands", commands);
+
+        Map<String, Object> speculation = new LinkedHashMap<>();
+        speculation.put("launched", amContext.getSpeculator().getSpeculativeAttemptsLaunched());
+        speculation.put("won", amContext.getSpeculator().getSpeculativeAttemptsWon());
+        summary.put("speculativeAttempts", speculation);
+
+        if (resourceUsage != null) {
+            Map<String, Object> usage = new LinkedHashMap<>();
+            usage.put("memorySeconds", resourceUsage.getMemorySeconds());
+            usage.put("vcoreSeconds", resourceUsage.getVcoreSeconds());
+            usage.put("preemptedMemorySeconds", resourceUsage.getPreemptedMemorySeconds());
+            usage.put("preemptedVcoreSeconds", resourceUsage.getPreemptedVcoreSeconds());
+            summary.put("resourceUsage", usage);
+        }
+        return summary;
+    }
+
+    /**
+     * Write summary of metrics as JSON to a file in HDFS
+     *
+     * @param hdfsService
+     * @param path of the file in HDFS
+     * @param resourceUsage of the application as reported by RM, or null if unknown
+     */
+    public void writeSummary(HdfsService hdfsService, String path, ApplicationResourceUsageReport resourceUsage) {
+        try {
+            String json = objectMapper.writeValueAsString(getSummary(resourceUsage));
+            logger.info("Metrics of the AM: " + json);
+            hdfsService.writeFile(path, Collections.singletonList(json));
+            logger.info("Metrics of the AM written to: " + path);
+        } catch (IOException e) {
+            logger.warn("Could not write metrics of the AM to: " + path + " due to error: ", e);
+        }
+    }
+
+    /**
+     * Publish metrics to sinks of Hadoop metrics2, configured with prefix yarn-submit in hadoop-metrics2-yarn-submit.properties
+     */
+    public void publish() {
+        DefaultMetricsSystem.initialize(METRICS_PREFIX);
+        DefaultMetricsSystem.instance().register(RECORD_NAME, "Lifecycle of containers launched by yarn-submit AM", this);
+        published = true;
+    }
+
+    public void stopPublishing() {
+        if (published) {
+            DefaultMetricsSystem.shutdown();
+        }
+    }
+
+    @Override
+    public synchronized void getMetrics(MetricsCollector collector, boolean all) {
+        if (amContext == null) {
+            return;
+        }
+        YarnAmService yarnAmService = amContext.getYarnAmService();
+        MetricsRecordBuilder record = collector.addRecord(RECORD_NAME).setContext(METRICS_PREFIX)
+                .addCounter(Interns.info("ContainersAllocated", "Containers allocated by RM"), yarnAmService.getAllocatedContainers())
+                .addCounter(Interns.info("ContainersStarted", "Containers started by NMs"), containersStarted)
+                .addCounter(Interns.info("ContainersFailedToStart", "Containers NMs failed to start"), containersFailedToStart)
+                .addCounter(Interns.info("ContainersReleased", "Containers given back to RM unused"), (long) yarnAmService.getReleasedContainers())
+                .addCounter(Interns.info("CommandsRetried", "Failed commands run again"), commandsRetried)
+                .addCounter(Interns.info("OpportunisticContainersKilled", "OPPORTUNISTIC containers killed for GUARANTEED ones"), opportunisticContainersKilled)
+                .addGauge(Interns.info("CommandsCompleted", "Commands completed"), amContext.getContainers().getNumberOfCompletedContainers());
+        addHistogram(record, "AskToAllocation", yarnAmService.getAllocationLatencies());
+        addHistogram(record, "AllocationToStart", startLatencies);
+        addHistogram(record, "ContainerRuntime", containerRuntimes);
+    }
+
+    private static void addHistogram(MetricsRecordBuilder record, String name, LatencyHistogram histogram) {
+        record.addCounter(Interns.info(name + "Count", "Number of values of " + name), histogram.getCount())
+                .addGauge(Interns.info(name + "MeanMs", "Mean of " + name), histogram.getMean())
+                .addGauge(Interns.info(name + "P50Ms", "Median of " + name), histogram.getPercentile(50))
+                .addGauge(Interns.info(name + "P99Ms", "99th percentile of " + name), histogram.getPercentile(99))
+                .addGauge(Interns.info(name + "MaxMs", "Maximum of " + name), histogram.getMax());
+    }
+}
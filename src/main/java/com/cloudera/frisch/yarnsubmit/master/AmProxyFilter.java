@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.webapp.util.WebAppUtils;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lets only RM web proxy reach the HTTP server of the AM, as AmIpFilter does for AMs serving through a servlet container:
+ * other clients are redirected to the proxy, which authenticates users and checks they can view the application
+ */
+public class AmProxyFilter extends Filter {
+
+    private static final Logger logger = Logger.getLogger(AmProxyFilter.class);
+
+    // Addresses of proxy hosts are resolved again from time to time, as they may change (RM fail over...)
+    private static final long ADDRESSES_REFRESH_MS = 5 * 60 * 1000L;
+
+    private final List<String> proxyHostsAndPorts;
+    private final String proxyUriBase;
+    private Set<String> proxyAddresses;
+    private long proxyAddressesResolvedAt = 0L;
+
+    /**
+     * @param conf of YARN, giving addresses of RM web proxy
+     * @param applicationId of this AM
+     */
+    public AmProxyFilter(Configuration conf, ApplicationId applicationId) {
+        this.proxyHostsAndPorts = WebAppUtils.getProxyHostsAndPortsForAmFilter(conf);
+        this.proxyUriBase = WebAppUtils.getHttpSchemePrefix(conf) + proxyHostsAndPorts.get(0) + "/proxy/" + applicationId;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        String remoteAddress = exchange.getRemoteAddress().getAddress().getHostAddress();
+        if (getProxyAddresses().contains(remoteAddress)) {
+            chain.doFilter(exchange);
+            return;
+        }
+        logger.debug("Request from: " + remoteAddress + " is not from RM web proxy, it is redirected to it");
+        exchange.getResponseHeaders().set("Location", proxyUriBase + exchange.getRequestURI());
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+    }
+
+    private synchronized Set<String> getProxyAddresses() {
+        long now = System.currentTimeMillis();
+        if (proxyAddresses == null || now - proxyAddressesResolvedAt > ADDRESSES_REFRESH_MS) {
+            Set<String> addresses = new HashSet<>();
+            for (String proxyHostAndPort : proxyHostsAndPorts) {
+                String proxyHost = proxyHostAndPort.split(":")[0];
+                try {
+                    for (InetAddress address : InetAddress.getAllByName(proxyHost)) {
+                        addresses.add(address.getHostAddress());
+                    }
+                } catch (UnknownHostException e) {
+                    logger.warn("Could not resolve address of RM web proxy: " + proxyHost + " due to error: " + e.getMessage());
+                }
+            }
+            proxyAddresses = addresses;
+            proxyAddressesResolvedAt = now;
+        }
+        return proxyAddresses;
+    }
+
+    @Override
+    public String description() {
+        return "Lets only RM web proxy reach the AM";
+    }
+}
@@ -0,0 +1,347 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.object.ContainerRegistry;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import com.cloudera.frisch.yarnsubmit.services.YarnAmService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hadoop.yarn.api.ApplicationConstants;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP server of the AM, registered to RM as its tracking URL, showing state of commands while they run:
+ * - / : a page refreshed every few seconds
+ * - /status : same content as JSON
+ * - /failures?since=N : all commands which failed for good, in order of failure from position N, by pages, for clients to get only new ones
+ * It listens on the address of the node only and, unless told otherwise, answers only RM web proxy, as it shows commands and their output
+ * Throughput is computed over the last minute, from samples of the registry taken at each loop of the AM
+ */
+public class AmStatusServer implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(AmStatusServer.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Commands listed one by one are capped, as there may be millions of them
+    private static final int MAX_COMMANDS_LISTED = 1000;
+    // Failed commands are served by pages, clients asking for next pages until they got all of them
+    private static final int MAX_FAILURES_PER_PAGE = 1000;
+    private static final long THROUGHPUT_WINDOW_MS = 60000L;
+    private static final int PAGE_REFRESH_SECONDS = 5;
+
+    private final AmContext amContext;
+    private final Deque<long[]> samples = new ArrayDeque<>();
+    private final long startTime = System.currentTimeMillis();
+    private HttpServer httpServer;
+
+    public AmStatusServer(AmContext amContext) {
+        this.amContext = amContext;
+    }
+
+    /**
+     * Start serving on a port
+     * @param port to listen on, 0 for any free port
+     * @param proxyFilter letting only RM web proxy reach the server, null to let any client reach it
+     * @throws IOException if port could not be opened
+     */
+    public void start(int port, Filter proxyFilter) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(getHost(), port), 0);
+        List<HttpContext> contexts = new ArrayList<>();
+        contexts.add(httpServer.createContext("/status", exchange -> respond(exchange, "application/json",
+                objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(getStatus()))));
+        contexts.add(httpServer.createContext("/failures", this::respondFailures));
+        contexts.add(httpServer.createContext("/", exchange -> respond(exchange, "text/html", toHtml(getStatus()))));
+        if (proxyFilter != null) {
+            contexts.forEach(context -> context.getFilters().add(proxyFilter));
+        }
+        httpServer.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "am-status-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        httpServer.start();
+        logger.info("AM status is served at: " + getTrackingUrl());
+    }
+
+    public String getHost() {
+        // Name of the node as known by YARN, for RM to reach the AM
+        String host = System.getenv(ApplicationConstants.Environment.NM_HOST.name());
+        if (host != null && !host.isEmpty()) {
+            return host;
+        }
+        try {
+            return InetAddress.getLocalHost().getCanonicalHostName();
+        } catch (IOException e) {
+            return "localhost";
+        }
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public String getTrackingUrl() {
+        return "http://" + getHost() + ":" + getPort() + "/";
+    }
+
+    /**
+     * Record numbers of commands launched and completed so far, to compute throughput
+     */
+    public synchronized void recordProgress() {
+        long now = System.currentTimeMillis();
+        ContainerRegistry containers = amContext.getContainers();
+        samples.addLast(new long[]{now, containers.getNumberOfLaunchedContainers(), containers.getNumberOfCompletedContainers()});
+        while (samples.size() > 2 && samples.peekFirst()[0] < now - THROUGHPUT_WINDOW_MS) {
+            samples.pollFirst();
+        }
+    }
+
+    /**
+     * @return numbers of commands launched and completed per second over the last minute
+     */
+    private synchronized double[] getThroughput() {
+        if (samples.size() < 2) {
+            return new double[]{0d, 0d};
+        }
+        long[] first = samples.peekFirst();
+        long[] last = samples.peekLast();
+        double seconds = Math.max(1L, last[0] - first[0]) / 1000d;
+        return new double[]{(last[1] - first[1]) / seconds, (last[2] - first[2]) / seconds};
+    }
+
+    /**
+     * @return state of the AM and its commands, as nested maps and lists
+     */
+    Map<String, Object> getStatus() {
+        ContainerRegistry containers = amContext.getContainers();
+        YarnAmService yarnAmService = amContext.getYarnAmService();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("uptimeSeconds", (System.currentTimeMillis() - startTime) / 1000L);
+
+        Map<String, Object> commands = new LinkedHashMap<>();
+        int total = containers.size();
+        int completed = containers.getNumberOfCompletedContainers();
+        int successful = containers.getNumberOfSuccessfulContainers();
+        commands.put("total", total);
+        commands.put("allLoaded", containers.isAllContainersLoaded());
+        commands.put("toRun", containers.getNumberOfContainersToRun());
+        commands.put("waitingForRetry", containers.getNumberOfContainersToRetry());
+        commands.put("running", containers.getRunningContainers().size());
+        commands.put("completed", completed);
+        commands.put("successful", successful);
+        commands.put("failed", completed - successful);
+        status.put("commands", commands);
+
+        double[] throughput = getThroughput();
+        Map<String, Object> throughputStatus = new LinkedHashMap<>();
+        throughputStatus.put("launchedPerSecond", round(throughput[0]));
+        throughputStatus.put("completedPerSecond", round(throughput[1]));
+        status.put("throughput", throughputStatus);
+
+        // Commands waiting while asks are outstanding for long mean the application is starved of containers
+        Map<String, Object> allocation = new LinkedHashMap<>();
+        allocation.put("outstandingAsks", yarnAmService.getNumberOfOutstandingAsks());
+        allocation.put("heldContainers", yarnAmService.getNumberOfHeldContainers());
+        allocation.put("concurrencyLimit", amContext.getConcurrencyController().getLimit());
+        allocation.put("allocationLatencyMs", yarnAmService.getAllocationLatency());
+        allocation.put("releasedContainers", yarnAmService.getReleasedContainers());
+        allocation.put("blacklistedNodes", amContext.getNodeBlacklist().getNumberOfBlacklistedNodes());
+        status.put("allocation", allocation);
+
+        Runtime runtime = Runtime.getRuntime();
+        Map<String, Object> jvm = new LinkedHashMap<>();
+        jvm.put("heapUsedMb", (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+        jvm.put("heapMaxMb", runtime.maxMemory() / (1024 * 1024));
+        status.put("jvm", jvm);
+
+        // Estimated from throughput of last minute, unknown while commands are still loaded or none completes
+        int remaining = total - completed;
+        status.put("etaSeconds", containers.isAllContainersLoaded() && throughput[1] > 0 ? Math.round(remaining / throughput[1]) : null);
+
+        List<Map<String, Object>> running = new ArrayList<>();
+        for (YarnContainer container : containers.getRunningContainers()) {
+            if (running.size() >= MAX_COMMANDS_LISTED) {
+                break;
+            }
+            Map<String, Object> command = describe(container);
+            command.put("containerId", container.getContainerId());
+            command.put("node", yarnAmService.getNodeOfContainer(container.getContainerId()));
+            running.add(command);
+        }
+        status.put("runningCommands", running);
+
+        List<Map<String, Object>> failed = new ArrayList<>();
+        for (YarnContainer container : containers.getFailedContainers()) {
+            if (failed.size() >= MAX_COMMANDS_LISTED) {
+                break;
+            }
+            Map<String, Object> command = describe(container);
+            command.put("exitCode", container.getExitCode());
+            command.put("output", container.getOutput());
+            failed.add(command);
+        }
+        status.put("failedCommands", failed);
+        return status;
+    }
+
+    private void respondFailures(HttpExchange exchange) throws IOException {
+        int since;
+        try {
+            since = getSince(exchange.getRequestURI().getQuery());
+        } catch (NumberFormatException e) {
+            respond(exchange, 400, "text/plain", "Invalid position of failed commands: " + e.getMessage());
+            return;
+        }
+        // Each attempt of the AM lists its own failed commands, hence clients start again from 0 when it changes
+        Map<String, Object> failures = new LinkedHashMap<>();
+        failures.put("attempt", amContext.getYarnAmService().getAttemptId());
+        failures.putAll(getFailures(since));
+        respond(exchange, 200, "application/json", objectMapper.writeValueAsString(failures));
+    }
+
+    /**
+     * @param query of the request, with position of the first failed command to get as since=N
+     * @return position of the first failed command to get, 0 if not given
+     */
+    static int getSince(String query) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("since=")) {
+                    return Integer.parseInt(parameter.substring("since=".length()));
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param since position of the first failed command to get, in order of failure
+     * @return a page of failed commands from that position, total number of failed commands, and position of the next page
+     */
+    Map<String, Object> getFailures(int since) {
+        ContainerRegistry containers = amContext.getContainers();
+        // Failed commands are only added, so total got after the page is never below its end
+        List<YarnContainer> page = containers.getFailedContainers(since, MAX_FAILURES_PER_PAGE);
+        int total = containers.getNumberOfFailedContainers();
+        List<Map<String, Object>> failed = new ArrayList<>();
+        for (YarnContainer container : page) {
+            Map<String, Object> command = new LinkedHashMap<>();
+            command.put("index", container.getIndex());
+            command.put("command", container.getCommand());
+            command.put("tries", container.getTries());
+            command.put("exitCode", container.getExitCode());
+            command.put("output", container.getOutput());
+            if (container.getSkippedReason() != null) {
+                command.put("skipped", container.getSkippedReason());
+            }
+            failed.add(command);
+        }
+        Map<String, Object> failures = new LinkedHashMap<>();
+        failures.put("total", total);
+        // Beyond total when asked from a position of a previous attempt of the AM
+        failures.put("next", Math.max(0, since) + page.size());
+        failures.put("failedCommands", failed);
+        return failures;
+    }
+
+    private static Map<String, Object> describe(YarnContainer container) {
+        Map<String, Object> command = new LinkedHashMap<>();
+        command.put("index", container.getIndex());
+        command.put("command", container.getCommand());
+        command.put("attempts", container.getTries());
+        return command;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100d) / 100d;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toHtml(Map<String, Object> status) {
+        StringBuilder html = new StringBuilder("<html><head><title>yarn-submit</title>")
+                .append("<meta http-equiv=\"refresh\" content=\"").append(PAGE_REFRESH_SECONDS).append("\"></head><body>")
+                .append("<h1>yarn-submit</h1><p>Up for ").append(status.get("uptimeSeconds")).append(" s, ETA: ")
+                .append(status.get("etaSeconds") != null ? status.get("etaSeconds") + " s" : "unknown")
+                .append(" (<a href=\"status\">JSON</a>)</p>");
+        for (String section : new String[]{"commands", "throughput", "allocation", "jvm"}) {
+            html.append("<h2>").append(section).append("</h2><table border=\"1\">");
+            ((Map<String, Object>) status.get(section)).forEach((key, value) ->
+                    html.append("<tr><td>").append(key).append("</td><td>").append(value).append("</td></tr>"));
+            html.append("</table>");
+        }
+        for (String section : new String[]{"runningCommands", "failedCommands"}) {
+            List<Map<String, Object>> commands = (List<Map<String, Object>>) status.get(section);
+            html.append("<h2>").append(section).append(" (").append(commands.size()).append(")</h2><table border=\"1\">");
+            if (!commands.isEmpty()) {
+                html.append("<tr>");
+                commands.get(0).keySet().forEach(key -> html.append("<th>").append(key).append("</th>"));
+                html.append("</tr>");
+            }
+            for (Map<String, Object> command : commands) {
+                html.append("<tr>");
+                command.values().forEach(value -> html.append("<td>").append(escape(String.valueOf(value))).append("</td>"));
+                html.append("</tr>");
+            }
+            html.append("</table>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        respond(exchange, 200, contentType, body);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+    }
+}
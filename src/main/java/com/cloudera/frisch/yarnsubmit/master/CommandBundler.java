@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.Utils;
+import com.cloudera.frisch.yarnsubmit.config.Parameters;
+import com.cloudera.frisch.yarnsubmit.container.BundleRunner;
+import com.cloudera.frisch.yarnsubmit.object.CommandResult;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import com.cloudera.frisch.yarnsubmit.services.CommandFileReader;
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups several commands into one container, to not pay container allocation and start up for each short command.
+ * Bundle size is either fixed, or adapted to reach a target duration of a bundle, using durations of commands already run
+ */
+public class CommandBundler {
+
+    private static final Logger logger = Logger.getLogger(CommandBundler.class);
+
+    private final HdfsService hdfsService;
+    private final String resultsDirectory;
+    private final int maxBundleSize;
+    private final long targetDuration;
+    private final int parallelism;
+
+    private long totalDurationOfCommands = 0;
+    private long numberOfCommandsTimed = 0;
+
+    /**
+     * @param hdfsService used to read results of bundles
+     * @param resultsDirectory HDFS directory where bundles write their results
+     * @param maxBundleSize maximum number of commands in a bundle (1 means no bundling)
+     * @param targetDuration target duration in ms of a bundle (0 to always use maxBundleSize)
+     * @param parallelism number of commands run in parallel in a bundle
+     */
+    public CommandBundler(HdfsService hdfsService, String resultsDirectory, int maxBundleSize, long targetDuration, int parallelism) {
+        this.hdfsService = hdfsService;
+        this.resultsDirectory = resultsDirectory;
+        this.maxBundleSize = Math.max(1, maxBundleSize);
+        this.targetDuration = targetDuration;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @return number of commands to put in next bundle
+     */
+    public synchronized int getBundleSize() {
+        if (maxBundleSize == 1 || targetDuration <= 0 || numberOfCommandsTimed == 0) {
+            return maxBundleSize;
+        }
+        long averageDuration = Math.max(1L, totalDurationOfCommands / numberOfCommandsTimed);
+        // Commands running in parallel take less time for the whole bundle
+        long bundleSize = targetDuration * parallelism / averageDuration;
+        return (int) Math.max(1L, Math.min(maxBundleSize, bundleSize));
+    }
+
+    /**
+     * @return true if several commands may be run in the same container
+     */
+    public boolean isBundling() {
+        return maxBundleSize > 1;
+    }
+
+    /**
+     * Number of containers to ask for to launch a number of commands
+     */
+    public int getNumberOfContainersNeeded(int numberOfCommands) {
+        int bundleSize = getBundleSize();
+        return (numberOfCommands + bundleSize - 1) / bundleSize;
+    }
+
+    /**
+     * Create command of a container running a bundle of commands through BundleRunner
+     */
+    public String createBundleCommand(List<YarnContainer> bundle, long containerId) {
+        StringBuilder command = new StringBuilder(Parameters.JAVA_HOME)
+                .append(" -cp ").append(Utils.getFileNameFromPath(Utils.getJarFilePath()))
+                .append(" ").append(BundleRunner.class.getName())
+                .append(" ").append(parallelism)
+                .append(" ").append(getResultsFile(containerId));
+        for (YarnContainer container : bundle) {
+            command.append(" ").append(Base64.getEncoder().encodeToString(container.getCommand().getBytes(StandardCharsets.UTF_8)));
+        }
+        return command.toString();
+    }
+
+    /**
+     * Read results written by a bundle, and remove its results file
+     * (it accesses HDFS, so it must not be called while holding the lock of the AM)
+     * @return results by index of command in the bundle, commands with no result (or an unreadable one) are missing
+     */
+    public Map<Integer, CommandResult> readResults(long containerId) {
+        Map<Integer, CommandResult> results = new HashMap<>();
+        Path resultsFile = new Path(getResultsFile(containerId));
+        try {
+            if (!hdfsService.getFileSystem().exists(resultsFile)) {
+                logger.warn("No results written by bundle in container: " + containerId);
+                return results;
+            }
+            try (CommandFileReader reader = hdfsService.readCommandFile(resultsFile.toString())) {
+                reader.forEachRemaining(line -> readResult(containerId, line, results));
+            }
+            hdfsService.getFileSystem().delete(resultsFile, false);
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Could not read results of bundle in container: " + containerId + " due to error: ", e);
+        }
+        return results;
+    }
+
+    private void readResult(long containerId, String line, Map<Integer, CommandResult> results) {
+        try {
+            CommandResult result = CommandResult.fromLine(line);
+            results.put(result.getIndex(), result);
+            recordDuration(result.getDuration());
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            // Number or output not parsable, or fields missing
+            logger.warn("Ignoring malformed result: " + line + " of bundle in container: " + containerId + " due to error: " + e);
+        }
+    }
+
+    private synchronized void recordDuration(long duration) {
+        totalDurationOfCommands += duration;
+        numberOfCommandsTimed++;
+    }
+
+    private String getResultsFile(long containerId) {
+        return resultsDirectory + containerId;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Caps number of containers held and asked for at the same time, so that a huge number of commands does not flood RM with asks.
+ * The cap grows while the queue has room and asks are quickly allocated, is halved on preemption,
+ * and shrinks slowly down to containers held when the queue is full and asks wait
+ */
+public class ConcurrencyController {
+
+    private static final Logger logger = Logger.getLogger(ConcurrencyController.class);
+
+    private final int maxConcurrency;
+    private final long latencyTarget;
+
+    private double limit;
+    private int preemptedContainers = 0;
+
+    /**
+     * @param initialConcurrency number of containers held and asked for at first
+     * @param maxConcurrency maximum number of containers held and asked for
+     * @param latencyTarget time in ms between an ask and its allocation above which the queue is considered full
+     */
+    public ConcurrencyController(int initialConcurrency, int maxConcurrency, long latencyTarget) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.latencyTarget = latencyTarget;
+        this.limit = Math.max(1, Math.min(initialConcurrency, this.maxConcurrency));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized void containerPreempted() {
+        preemptedContainers++;
+    }
+
+    /**
+     * Adapt the cap to latest signals of RM, must be called regularly
+     * @param headroomContainers number of containers that still fit in resources available to the application
+     * @param clusterNodes number of nodes in the cluster
+     * @param allocationLatency time in ms asks currently wait before being allocated
+     * @param heldContainers number of containers currently held
+     * @param demand number of containers that would be held and asked for without any cap
+     */
+    public synchronized void adjust(int headroomContainers, int clusterNodes, long allocationLatency, int heldContainers, int demand) {
+        double previousLimit = limit;
+        if (preemptedContainers > 0) {
+            limit = Math.max(1, limit / 2);
+            preemptedContainers = 0;
+        } else if (demand > limit && headroomContainers > 0 && allocationLatency <= latencyTarget) {
+            // Queue has room: grow by what it can take, at most doubling (or by number of nodes for a small cap)
+            limit = Math.min(maxConcurrency, limit + Math.min(headroomContainers, Math.max(limit, clusterNodes)));
+        } else if (headroomContainers == 0 && allocationLatency > latencyTarget) {
+            // Queue is full: stop piling asks up, but keep one to not lose our turn
+            limit = Math.max(Math.min(limit, heldContainers + 1), limit * 0.9);
+        }
+        if ((int) previousLimit != (int) limit) {
+            logger.info("Concurrency limit changed from " + (int) previousLimit + " to " + (int) limit +
+                    " (headroom: " + headroomContainers + " containers, allocation latency: " + allocationLatency + "ms, held: " +
+                    heldContainers + ", demand: " + demand + ")");
+        }
+    }
+}
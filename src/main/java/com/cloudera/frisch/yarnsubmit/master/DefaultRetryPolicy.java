@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.config.Parameters;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+
+/**
+ * Runs a failed command again up to a maximum number of tries, waiting longer and longer between tries.
+ * Failures not due to the command (preemption, node failure) do not count as a try, they are retried with the same backoff
+ * up to their own maximum number of retries. Containers killed by the AM itself are retried right away
+ */
+public class DefaultRetryPolicy implements RetryPolicy {
+
+    private final int maxTries;
+    private final int maxUncountedRetries;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    public DefaultRetryPolicy() {
+        this(Parameters.APP_RETRY_MAX_TRIES, Parameters.APP_RETRY_MAX_UNCOUNTED_RETRIES,
+                Parameters.APP_RETRY_BACKOFF, Parameters.APP_RETRY_MAX_BACKOFF);
+    }
+
+    /**
+     * @param maxTries maximum number of tries of a command
+     * @param maxUncountedRetries maximum number of retries of a command after failures not counting as a try
+     * @param initialBackoff time in ms to wait before second try, doubled for each next one
+     * @param maxBackoff maximum time in ms to wait before a try
+     */
+    public DefaultRetryPolicy(int maxTries, int maxUncountedRetries, long initialBackoff, long maxBackoff) {
+        this.maxTries = maxTries;
+        this.maxUncountedRetries = maxUncountedRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    @Override
+    public long getRetryDelay(YarnContainer container, ExitStatusClass exitStatusClass) {
+        if (exitStatusClass == ExitStatusClass.KILLED_BY_AM) {
+            return 0L;
+        }
+        if (!exitStatusClass.countsAsTry()) {
+            if (container.getUncountedRetries() > maxUncountedRetries) {
+                return -1L;
+            }
+            return getBackoff(container.getUncountedRetries());
+        }
+        if (container.getTries() >= maxTries) {
+            return -1L;
+        }
+        return getBackoff(container.getTries());
+    }
+
+    /**
+     * @param failures number of failures of the command so far, including this one
+     * @return time in ms to wait before running the command again
+     */
+    private long getBackoff(int failures) {
+        int doublings = Math.min(30, Math.max(0, failures - 1));
+        return Math.min(maxBackoff, initialBackoff << doublings);
+    }
+
+    /**
+     * Instantiate retry policy set in parameters
+     */
+    public static RetryPolicy fromParameters() {
+        try {
+            return (RetryPolicy) Class.forName(Parameters.APP_RETRY_POLICY).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Cannot instantiate retry policy: " + Parameters.APP_RETRY_POLICY, e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import org.apache.hadoop.yarn.api.records.ContainerExitStatus;
+
+/**
+ * Classes of exit status of a command, telling whether the command or its node is to blame
+ */
+public enum ExitStatusClass {
+    // Command succeeded
+    SUCCESS,
+    // Container was taken back by YARN to give resources to others, nothing is wrong with command nor node
+    PREEMPTED,
+    // Container was stopped by the AM itself (as a speculative attempt that lost)
+    KILLED_BY_AM,
+    // Node lost its disks or itself, or RM killed the container: command did not get a fair try
+    NODE_FAILURE,
+    // Container went over its memory, retrying it in a container of same size may fail again
+    OUT_OF_MEMORY,
+    // Command itself failed
+    COMMAND_FAILURE;
+
+    public static ExitStatusClass fromExitStatus(int exitStatus) {
+        switch (exitStatus) {
+            case ContainerExitStatus.SUCCESS:
+                return SUCCESS;
+            case ContainerExitStatus.PREEMPTED:
+            case ContainerExitStatus.KILLED_BY_CONTAINER_SCHEDULER:
+                return PREEMPTED;
+            case ContainerExitStatus.KILLED_BY_APPMASTER:
+                return KILLED_BY_AM;
+            case ContainerExitStatus.DISKS_FAILED:
+            case ContainerExitStatus.ABORTED:
+            case ContainerExitStatus.KILLED_BY_RESOURCEMANAGER:
+            case ContainerExitStatus.KILLED_AFTER_APP_COMPLETION:
+                return NODE_FAILURE;
+            case ContainerExitStatus.KILLED_EXCEEDED_PMEM:
+            case ContainerExitStatus.KILLED_EXCEEDED_VMEM:
+                return OUT_OF_MEMORY;
+            default:
+                return COMMAND_FAILURE;
+        }
+    }
+
+    /**
+     * @return true if a failure of this class counts as a try of the command
+     */
+    public boolean countsAsTry() {
+        return this == OUT_OF_MEMORY || this == COMMAND_FAILURE;
+    }
+
+    /**
+     * @return true if a failure of this class comes from the node the command ran on
+     */
+    public boolean blamesNode() {
+        return this == NODE_FAILURE;
+    }
+
+    /**
+     * @return true if a failure of this class may come from the node the command ran on,
+     * which is only known once the command succeeded on another node
+     */
+    public boolean blamesNodeIfSucceedsElsewhere() {
+        return this == COMMAND_FAILURE;
+    }
+}
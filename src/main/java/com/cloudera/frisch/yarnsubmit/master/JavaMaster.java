@@ -19,27 +19,50 @@ package com.cloudera.frisch.yarnsubmit.master;
 
 import com.cloudera.frisch.yarnsubmit.Utils;
 import com.cloudera.frisch.yarnsubmit.config.Parameters;
+import com.cloudera.frisch.yarnsubmit.container.TaskProtocol;
+import com.cloudera.frisch.yarnsubmit.object.CommandDag;
+import com.cloudera.frisch.yarnsubmit.object.CommandResult;
+import com.cloudera.frisch.yarnsubmit.object.ContainerRegistry;
+import com.cloudera.frisch.yarnsubmit.object.DataLocality;
+import com.cloudera.frisch.yarnsubmit.object.RecoveredState;
+import com.cloudera.frisch.yarnsubmit.object.ResourceProfile;
 import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
 import com.cloudera.frisch.yarnsubmit.services.HdfsService;
 import com.cloudera.frisch.yarnsubmit.services.KerberosService;
 import com.cloudera.frisch.yarnsubmit.services.YarnAmService;
-import org.apache.hadoop.yarn.api.protocolrecords.AllocateResponse;
 import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerExitStatus;
 import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
 import org.apache.hadoop.yarn.api.records.ContainerStatus;
+import org.apache.hadoop.yarn.api.records.ExecutionType;
 import org.apache.hadoop.yarn.api.records.FinalApplicationStatus;
 import org.apache.hadoop.yarn.exceptions.YarnException;
 import org.apache.log4j.Logger;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 
 public class JavaMaster {
 
     private static final Logger logger = Logger.getLogger(JavaMaster.class);
 
+    // Number of nodes holding most data of a command, asked for it
+    private static final int LOCALITY_MAX_NODES = 3;
+
     public static void main(String[] args) {
 
         logger.info("Starting AM");
@@ -53,11 +76,8 @@ public class JavaMaster {
         Parameters.initParameters("parameters.properties");
 
         // Even if all required files are passed in classpath, it is necessary to locate them in HDFS and pass them to future containers
-        List<String> listOfRequiredFiles = new ArrayList<>();
-        listOfRequiredFiles.add(Parameters.KEYTAB);
-        listOfRequiredFiles.add(Parameters.JAR_PATH);
-        listOfRequiredFiles.addAll(Parameters.APP_FILES);
-        List<String> listOfRequiredHdfsFiles = Utils.changePrefixOfFilesPath(listOfRequiredFiles, Parameters.HDFS_WORK_DIRECTORY);
+        // Client passes their HDFS paths as first argument, as they may be in the work directory or in the staging cache
+        List<String> listOfRequiredHdfsFiles = Arrays.asList(args[0].split(","));
 
 
         logger.info("Initialize Yarn AM service");
@@ -66,173 +86,786 @@ public class JavaMaster {
         logger.info("Initialize HDFS service");
         HdfsService hdfsService = new HdfsService(yarnAmService.getConf());
 
-        logger.info("Initialize ResourceManager and NodeManager clients");
-        yarnAmService.createAmAndRmclient();
+        // Tokens are renewed in background, all containers launched afterwards get the new ones
+        if (Boolean.TRUE.equals(Parameters.KERBEROS)) {
+            logger.info("Start renewal of tokens");
+            KerberosService.startTokenRenewal(Parameters.KERBEROS_USER, Utils.getFileNameFromPath(Parameters.KEYTAB),
+                    yarnAmService.getConf(), Parameters.KERBEROS_TOKEN_RENEWAL_INTERVAL, yarnAmService::refreshContainerTokens);
+        }
 
-        logger.info("Register Application Master to Yarn");
-        yarnAmService.registerAmToYarn();
+        logger.info("Prepare context shared by all containers");
+        yarnAmService.prepareContainerContext(listOfRequiredHdfsFiles, hdfsService.getFileSystem());
 
         logger.info("Retrieving commands to launch and set them up");
-        List<YarnContainer> containers = new ArrayList<>();
-        JavaMaster.commandListToLaunch(hdfsService).forEach(command -> containers.add(new YarnContainer(command)));
+        // Commands finished by previous attempts of the AM are not run again, and states of commands are journaled for next attempts
+        TaskJournal taskJournal = new TaskJournal(hdfsService, Parameters.HDFS_WORK_DIRECTORY + "journal/");
+        RecoveredState recoveredState = openJournal(yarnAmService, taskJournal);
 
-        logger.info("Asking to launch " + containers.size() + " containers");
-        for (int i = 0; i < containers.size(); i++) {
-            yarnAmService.getRmClient().addContainerRequest(
-                    yarnAmService.setupContainerAskForRM(Parameters.APP_CONTAINER_MEMORY, Parameters.APP_CONTAINER_VCORES, Parameters.APP_PRIORITY)
-            );
+        // Result of each command is written once it finished, with last lines of its output if containers report them
+        TaskResults taskResults = new TaskResults(hdfsService, Parameters.HDFS_WORK_DIRECTORY + "results/");
+        try {
+            taskResults.open(yarnAmService.getAttemptId());
+        } catch (IOException e) {
+            logger.error("Cannot write results of commands due to error: ", e);
         }
 
-        // Loop while not all containers to be allocated have been retrieved and have completed their tasks
-        int numbersOfContainersToComplete = containers.size();
-        int completedContainers = 0;
-        while (completedContainers < numbersOfContainersToComplete) {
+        // Commands are loaded by batches, so that a huge list of commands never sits entirely in memory,
+        // except for a pipeline of commands which needs all of them to know their dependencies
+        Iterator<String> commandsToLaunch = JavaMaster.commandListToLaunch(hdfsService, listOfRequiredHdfsFiles);
+        ContainerRegistry containers = Boolean.TRUE.equals(Parameters.APP_COMMANDS_DAG) ?
+                new ContainerRegistry(createCommandDag(commandsToLaunch), recoveredState) :
+                new ContainerRegistry(commandsToLaunch, Parameters.APP_COMMANDS_BATCH_SIZE, recoveredState);
 
-            // Progression is calculated by checking how many containers have finished compare to the total number of containers to launch (A default 10 is set)
-            float progression = completedContainers == 0 && numbersOfContainersToComplete < 10 ?
-                    0.1f : (float) completedContainers / (float) numbersOfContainersToComplete;
+        // Commands may be bundled to run several of them in one container
+        CommandBundler commandBundler = new CommandBundler(hdfsService, Parameters.HDFS_WORK_DIRECTORY + "results/",
+                Parameters.APP_BUNDLE_SIZE, Parameters.APP_BUNDLE_TARGET_DURATION, Parameters.APP_BUNDLE_PARALLELISM);
 
-            try {
-                // Retrieve containers by asking RM
-                AllocateResponse response = yarnAmService.getRmClient().allocate(progression);
+        // Or they may be pulled one after another by long-lived workers
+        WorkerPool workerPool = new WorkerPool(Parameters.APP_WORKERS_NUMBER, Parameters.APP_AM_HEARTBEAT_INTERVAL);
 
-                // Let's launch command in containers by talking to NM directly
-                launchcontainers(yarnAmService, containers, response.getAllocatedContainers(), hdfsService, listOfRequiredHdfsFiles);
+        // Number of containers held and asked for is capped, and adapted to room left in the queue
+        ConcurrencyController concurrencyController = new ConcurrencyController(Parameters.APP_CONCURRENCY_INITIAL,
+                Parameters.APP_CONCURRENCY_MAX, Parameters.APP_CONCURRENCY_LATENCY_TARGET);
 
-                // Check results of completed containers
-                checkCompletedContainersStatus(yarnAmService, containers, response.getCompletedContainersStatuses());
-            } catch (YarnException | IOException e) {
-                logger.error("Could not get YARN RM response due to error: ", e);
-            }
+        // Commands running much longer than their peers get a duplicate attempt, not possible when commands are bundled
+        Speculator speculator = new Speculator(commandBundler.isBundling() ? 0 : Parameters.APP_SPECULATION_THRESHOLD);
+
+        // Failed commands are retried depending on why they failed, and nodes where too many of them failed are avoided
+        RetryPolicy retryPolicy = null;
+        try {
+            retryPolicy = DefaultRetryPolicy.fromParameters();
+        } catch (IllegalArgumentException e) {
+            logger.error("Cannot set up retries of commands due to error: ", e);
+            System.exit(1);
+        }
+        NodeBlacklist nodeBlacklist = new NodeBlacklist(Parameters.APP_RETRY_NODE_MAX_FAILURES, Parameters.APP_RETRY_NODE_BLACKLIST_TIMEOUT);
+
+        // Latencies of allocation, start and run of containers are summarized when the AM ends, and published while it runs if asked
+        AmMetrics metrics = new AmMetrics();
+
+        // Where input data of commands lies is asked to NameNode in background, never while scheduling containers
+        LocalityResolver localityResolver = new LocalityResolver(hdfsService, LOCALITY_MAX_NODES);
+
+        AmContext amContext = new AmContext(yarnAmService, hdfsService, containers, localityResolver, commandBundler, workerPool,
+                concurrencyController, speculator, retryPolicy, nodeBlacklist, taskJournal, taskResults, metrics);
+        metrics.bind(amContext);
+        if (Boolean.TRUE.equals(Parameters.APP_METRICS_PUBLISH)) {
+            metrics.publish();
+        }
 
-            logger.info("Waiting for containers to complete");
+        if (workerPool.isEnabled()) {
+            logger.info("Start listening for workers");
             try {
-                Thread.sleep(Parameters.APP_CHECK_CONTAINERS_COMPLETED);
-            } catch (InterruptedException e) {
-                logger.error("Error while waiting for containers to complete", e);
-                Thread.currentThread().interrupt();
+                workerPool.start(amContext);
+            } catch (IOException e) {
+                logger.error("Cannot open socket for workers due to error: ", e);
+                System.exit(1);
             }
+        }
 
-            // Update number of completed containers
-            completedContainers = YarnContainer.getNumberOfCompletedContainers(containers);
+        logger.info("Initialize ResourceManager and NodeManager asynchronous clients");
+        RMCallbackHandler rmCallbackHandler = new RMCallbackHandler(amContext);
+        NMCallbackHandler nmCallbackHandler = new NMCallbackHandler(amContext);
+        yarnAmService.createAmAndRmclient(Parameters.APP_AM_HEARTBEAT_INTERVAL, rmCallbackHandler, nmCallbackHandler);
 
+        // State of commands is served over HTTP, and linked from RM UI
+        AmStatusServer statusServer = new AmStatusServer(amContext);
+        try {
+            statusServer.start(Parameters.APP_AM_HTTP_PORT, Parameters.APP_AM_HTTP_PROXY_ONLY ?
+                    new AmProxyFilter(yarnAmService.getConf(), yarnAmService.getApplicationId()) : null);
+        } catch (IOException e) {
+            logger.error("Cannot start HTTP server of the AM due to error: ", e);
+            System.exit(1);
         }
 
+        logger.info("Register Application Master to Yarn");
+        List<Container> containersFromPreviousAttempts = yarnAmService.registerAmToYarn(statusServer.getHost(),
+                statusServer.getPort(), statusServer.getTrackingUrl());
+        if (!containersFromPreviousAttempts.isEmpty()) {
+            adoptContainersFromPreviousAttempts(amContext, containersFromPreviousAttempts);
+        }
+
+        logger.info("Asking to launch first commands, out of " + containers.getNumberOfContainersToRun() + " commands loaded");
+        adjustConcurrency(amContext);
+
+        // Allocations and completions are handled by callbacks, main thread only waits for all containers to complete
+        try {
+            while (!rmCallbackHandler.waitForCompletion(Parameters.APP_CHECK_CONTAINERS_COMPLETED)) {
+                checkStragglers(amContext);
+                expireBlacklistedNodes(amContext);
+                adjustConcurrency(amContext);
+                taskJournal.flush();
+                taskResults.flush();
+                statusServer.recordProgress();
+                logger.info("Waiting for containers to complete: " + containers.getNumberOfCompletedContainers() +
+                        " / " + containers.size() + " completed");
+            }
+        } catch (InterruptedException e) {
+            logger.error("Error while waiting for containers to complete", e);
+            Thread.currentThread().interrupt();
+        }
+
+        // Summary is written before unregistering, so that it is there once the application is seen finished
+        metrics.writeSummary(hdfsService, Parameters.HDFS_WORK_DIRECTORY + "metrics/attempt-" + yarnAmService.getAttemptId() + ".json",
+                yarnAmService.getResourceUsage());
+
         logger.info("Unregister Application Master to Resource Manager");
-        unregisterMaster(yarnAmService, containers);
+        unregisterMaster(yarnAmService, containers, rmCallbackHandler.isStoppedByRM());
+        yarnAmService.stopClients();
+        workerPool.close();
+        localityResolver.close();
+        statusServer.close();
+        metrics.stopPublishing();
+        try {
+            taskJournal.close();
+            taskResults.close();
+        } catch (IOException e) {
+            logger.warn("Could not close journal or results of commands due to error: ", e);
+        }
+        if (speculator.isEnabled()) {
+            logger.info("Speculative attempts launched: " + speculator.getSpeculativeAttemptsLaunched() +
+                    ", won: " + speculator.getSpeculativeAttemptsWon());
+        }
+        KerberosService.stopTokenRenewal();
 
         logger.info("Finished AM");
 
     }
 
 
-    private static void unregisterMaster(YarnAmService yarnAmService, List<YarnContainer> containers) {
+    /**
+     * Replay journals of previous attempts of the AM if any, and start journal of this attempt
+     *
+     * @param yarnAmService
+     * @param taskJournal
+     * @return state of commands left by previous attempts
+     */
+    private static RecoveredState openJournal(YarnAmService yarnAmService, TaskJournal taskJournal) {
+        if (Parameters.APP_AM_MAX_ATTEMPTS <= 1) {
+            return new RecoveredState();
+        }
+        RecoveredState recoveredState = new RecoveredState();
         try {
-            if (!YarnContainer.checkAllContainersAreSuccessful(containers)) {
+            int attemptId = yarnAmService.getAttemptId();
+            if (attemptId > 1) {
+                logger.info("This is attempt " + attemptId + " of the AM, recovering commands of previous attempts");
+                recoveredState = taskJournal.replay();
+            }
+            taskJournal.open(attemptId);
+        } catch (IOException e) {
+            logger.error("Cannot use journal of commands, a next attempt of the AM would run all commands again, due to error: ", e);
+        }
+        return recoveredState;
+    }
+
+    /**
+     * Containers of previous attempts of the AM still running commands are kept, and their commands are not run again,
+     * other ones (as workers which lost their AM) are released
+     *
+     * @param amContext
+     * @param containersFromPreviousAttempts
+     */
+    static synchronized void adoptContainersFromPreviousAttempts(AmContext amContext, List<Container> containersFromPreviousAttempts) {
+        Set<Long> containersAlive = new HashSet<>();
+        containersFromPreviousAttempts.forEach(container -> containersAlive.add(container.getId().getContainerId()));
+        Set<Long> containersAdopted = amContext.getContainers().adoptRunningContainers(containersAlive);
+        for (Container container : containersFromPreviousAttempts) {
+            if (containersAdopted.contains(container.getId().getContainerId())) {
+                amContext.getYarnAmService().adoptContainer(container);
+            } else {
+                amContext.getYarnAmService().releaseContainer(container.getId());
+            }
+        }
+        logger.info("Kept " + containersAdopted.size() + " containers running commands, out of " +
+                containersFromPreviousAttempts.size() + " containers of previous attempts");
+    }
+
+    private static synchronized void unregisterMaster(YarnAmService yarnAmService, ContainerRegistry containers, boolean stoppedByRM) {
+        try {
+            if (stoppedByRM) {
+                logger.warn("AM has been stopped before all containers completed");
+                yarnAmService.getRmClient().unregisterApplicationMaster(FinalApplicationStatus.FAILED,
+                        "Failed due to AM being stopped before all containers completed", null);
+            } else if (!containers.checkAllContainersAreSuccessful()) {
                 logger.warn("Some containers did not finished successfully, check with yarn logs for this application");
                 yarnAmService.getRmClient().unregisterApplicationMaster(FinalApplicationStatus.FAILED,
                         "Failed due to at least one container failing", null);
+            } else {
+                yarnAmService.getRmClient().unregisterApplicationMaster(FinalApplicationStatus.SUCCEEDED, "Finished", null);
             }
-            yarnAmService.getRmClient().unregisterApplicationMaster(FinalApplicationStatus.SUCCEEDED, "Finished", null);
         } catch (YarnException | IOException e) {
             logger.error("Could not unregister master due to error: ", e);
         }
     }
 
     /**
-     * Launch as much as possible containers requested using containers allocated by NM
+     * Launch as much as possible containers requested using containers allocated by NM,
+     * all containers that cannot be used are released and surplus asks are cancelled
      *
-     * @param yarnAmService
-     * @param containers
+     * @param amContext
      * @param containersAllocated
-     * @param hdfsService
-     * @param listOfRequiredHdfsFiles
      */
-    private static void launchcontainers(YarnAmService yarnAmService, List<YarnContainer> containers, List<Container> containersAllocated,
-                                         HdfsService hdfsService, List<String> listOfRequiredHdfsFiles) {
+    static synchronized void launchcontainers(AmContext amContext, List<Container> containersAllocated) {
+        YarnAmService yarnAmService = amContext.getYarnAmService();
+        ContainerRegistry containers = amContext.getContainers();
+        CommandBundler commandBundler = amContext.getCommandBundler();
+        WorkerPool workerPool = amContext.getWorkerPool();
+
+        ResourceProfile defaultProfile = ResourceProfile.getDefault();
         for (Container container : containersAllocated) {
-            YarnContainer containerWheretoRun = YarnContainer.findOneAvailableCommandToLaunch(containers);
+            YarnContainer askedBy = yarnAmService.containerAllocated(container);
+            ResourceProfile profile = yarnAmService.getProfileOfContainer(container);
+            long containerId = container.getId().getContainerId();
+
+            // Commands must run in a container of their own profile, never in a smaller one (nor waste a bigger one)
+            if (!profile.fitsIn(container.getResource().getMemorySize(), container.getResource().getVirtualCores())) {
+                logger.warn("Container: " + containerId + " is smaller than asked for profile: " + profile + ", so cancelling it");
+                yarnAmService.releaseContainer(container.getId());
+                continue;
+            }
 
-            if (containerWheretoRun == null) {
-                logger.warn("Not able to find a needed command to launch, so cancelling container: " + container.getId().getContainerId());
-                yarnAmService.getRmClient().releaseAssignedContainer(container.getId());
-                break;
+            // Workers pull their commands themselves once started, they only run commands of default profile
+            if (workerPool.isEnabled() && profile.equals(defaultProfile)) {
+                if (getNumberOfWorkersNeeded(amContext) == 0) {
+                    logger.warn("No more worker needed, so cancelling container: " + containerId);
+                    yarnAmService.releaseContainer(container.getId());
+                    continue;
+                }
+                workerPool.addWorker(containerId);
+                logger.info("Launch a worker in container: " + containerId);
+                startContainer(amContext, container, yarnAmService.createContainerContext(workerPool.createWorkerCommand(containerId),
+                        workerPool.getWorkerEnvironment()));
+                continue;
             }
 
-            ContainerLaunchContext ctx = yarnAmService.createContainerContext(listOfRequiredHdfsFiles,
-                    containerWheretoRun.getCommand(), hdfsService.getFileSystem());
-            containerWheretoRun.setContainerRunning(container.getId().getContainerId());
+            // Several commands may be run in the same container if they are bundled
+            List<YarnContainer> commandsToRun = new ArrayList<>();
+            int bundleSize = commandBundler.getBundleSize();
+            YarnContainer containerWheretoRun = pollContainerCloseTo(amContext, container, profile, askedBy);
+            if (containerWheretoRun != null) {
+                commandsToRun.add(containerWheretoRun);
+            }
+            while (commandsToRun.size() < bundleSize && (containerWheretoRun = containers.pollContainerToRun(profile)) != null) {
+                commandsToRun.add(containerWheretoRun);
+            }
 
-            logger.info("Launch a container: " + containerWheretoRun.toString());
-            try {
-                yarnAmService.getNmClient().startContainer(container, ctx);
-            } catch (YarnException | IOException e) {
-                logger.warn("Could not allocate a container due to error: ", e);
+            // Container left unused may run a speculative attempt of a command running on another node
+            YarnContainer containerToSpeculate;
+            if (commandsToRun.isEmpty() && amContext.getSpeculator().isEnabled() &&
+                    (containerToSpeculate = amContext.getSpeculator().pollSpeculationToLaunch(profile, container.getNodeId().getHost())) != null) {
+                containers.addSpeculativeAttempt(containerToSpeculate, containerId);
+                amContext.getTaskJournal().commandsRunning(Collections.singletonList(containerToSpeculate), containerId);
+                amContext.getSpeculator().attemptLaunched(containerToSpeculate, container, true);
+                logger.info("Launch a container: " + containerId + " with a speculative attempt of command: " + containerToSpeculate);
+                startContainer(amContext, container, yarnAmService.createContainerContext(
+                        createContainerCommand(amContext, Collections.singletonList(containerToSpeculate), containerId)));
+                continue;
+            }
+
+            if (commandsToRun.isEmpty()) {
+                logger.warn("Not able to find a needed command to launch, so cancelling container: " + containerId);
+                yarnAmService.releaseContainer(container.getId());
+                continue;
+            }
+
+            ContainerLaunchContext ctx = yarnAmService.createContainerContext(createContainerCommand(amContext, commandsToRun, containerId));
+            containers.setContainersRunning(commandsToRun, containerId);
+            amContext.getTaskJournal().commandsRunning(commandsToRun, containerId);
+            if (commandsToRun.size() == 1 && amContext.getSpeculator().isEnabled()) {
+                amContext.getSpeculator().attemptLaunched(commandsToRun.get(0), container, false);
             }
+
+            logger.info("Launch a container: " + containerId + " with commands: " + commandsToRun.toString());
+            startContainer(amContext, container, ctx);
         }
+        reconcileAsks(amContext);
+    }
+
+    /**
+     * A single command is run as is by its container, unless its output must be reported: it is then run as a bundle of one command,
+     * which writes its result and exits with its exit code
+     */
+    private static String createContainerCommand(AmContext amContext, List<YarnContainer> commandsToRun, long containerId) {
+        if (commandsToRun.size() == 1 && Parameters.APP_RESULTS_OUTPUT_LINES <= 0) {
+            return commandsToRun.get(0).getCommand();
+        }
+        return amContext.getCommandBundler().createBundleCommand(commandsToRun, containerId);
+    }
+
+    private static void startContainer(AmContext amContext, Container container, ContainerLaunchContext ctx) {
+        amContext.getMetrics().containerStartRequested(container.getId().getContainerId());
+        amContext.getYarnAmService().getNmClient().startContainerAsync(container, ctx);
+    }
+
+    /**
+     * Find command to run in a container allocated without bundling: command it was asked for if any,
+     * else the one whose data is the closest to it
+     *
+     * @param amContext
+     * @param container allocated
+     * @param profile of the container
+     * @param askedBy command for which the container was asked, or null
+     * @return command to run in container, or null if none could be found close to it
+     */
+    private static YarnContainer pollContainerCloseTo(AmContext amContext, Container container, ResourceProfile profile, YarnContainer askedBy) {
+        if (amContext.getCommandBundler().isBundling()) {
+            return null;
+        }
+        ContainerRegistry containers = amContext.getContainers();
+        if (askedBy != null && containers.takeContainerToRun(askedBy) != null) {
+            return askedBy;
+        }
+        String node = container.getNodeId().getHost();
+        YarnContainer containerCloseTo = containers.pollContainerToRun(profile, node, amContext.getYarnAmService().getRackOfNode(node));
+        if (containerCloseTo != null) {
+            amContext.getYarnAmService().cancelAskCloseTo(containerCloseTo);
+            if (containerCloseTo.getLocality() != null && containerCloseTo.getLocality().isOnNode(node)) {
+                logger.debug("Container: " + container.getId() + " is on a node holding data of command: " + containerCloseTo);
+            }
+        }
+        return containerCloseTo;
     }
 
     /**
      * Check status of completed containers and if it is successful,
-     * If not, It will retry to launch it 3 times before considering it as finished with a failed status
+     * If not, it is retried as decided by the retry policy (app.retry.*) before considering it as finished with a failed status
+     * For a bundle of commands, status of each command is read from results written by the bundle, and each one is retried on its own
      *
-     * @param yarnAmService
-     * @param containers
+     * @param amContext
      * @param containersCompletedStatus
+     * @param resultsOfContainers results of commands read by readResultsOfCompletedContainers(), by container id
      */
-    private static void checkCompletedContainersStatus(YarnAmService yarnAmService, List<YarnContainer> containers, List<ContainerStatus> containersCompletedStatus) {
+    static synchronized void checkCompletedContainersStatus(AmContext amContext, List<ContainerStatus> containersCompletedStatus,
+                                                            Map<Long, Map<Integer, CommandResult>> resultsOfContainers) {
+        ContainerRegistry containers = amContext.getContainers();
         for (ContainerStatus container : containersCompletedStatus) {
             logger.info("Container : " + container.getContainerId() + " has finished its tasks");
-            YarnContainer containerFinished = YarnContainer.findContainerUsingContainerId(containers, container.getContainerId().getContainerId());
-            if (containerFinished == null) {
-                logger.error("Unable to retrieve ended container, please check YARN NM logs");
+            String node = amContext.getYarnAmService().containerCompleted(container.getContainerId());
+            amContext.getMetrics().containerCompleted(container.getContainerId().getContainerId());
+            if (container.getExitStatus() == ContainerExitStatus.PREEMPTED) {
+                amContext.getConcurrencyController().containerPreempted();
+            }
+            long containerId = container.getContainerId().getContainerId();
+            boolean isWorker = amContext.getWorkerPool().removeWorker(containerId);
+            List<YarnContainer> containersFinished = containers.removeRunningContainer(containerId);
+            if (containersFinished == null) {
+                if (!isWorker) {
+                    logger.error("Unable to retrieve ended container, please check YARN NM logs");
+                }
                 continue;
             }
-            containerFinished.setFinalState(YarnContainer.state.FINISHED);
-
             // Check if container exited with a non-successful return code
             if (container.getExitStatus() != 0) {
                 logger.warn("Container : " + container.getContainerId() + " failed with exit code " + container.getExitStatus() +
                         "due to error: " + container.getState().name());
+            }
 
-                if (containerFinished.getTries() < 3) {
-                    logger.info("Container will be retried as there are less than 3 retries for this container: " + containerFinished.toString());
-                    yarnAmService.getRmClient().addContainerRequest(
-                            yarnAmService.setupContainerAskForRM(Parameters.APP_CONTAINER_MEMORY, Parameters.APP_CONTAINER_VCORES, Parameters.APP_PRIORITY)
-                    );
-                    containerFinished.resetContainerToRun();
-
-                } else {
-                    logger.warn("Container has been retried more than 3, it should not be retried: " + container.toString());
-                    containerFinished.setSuccessful(false);
+            if (isWorker) {
+                // Worker ended while running a command, which did not report its result
+                int exitStatus = container.getExitStatus() != 0 ? container.getExitStatus() : ContainerExitStatus.INVALID;
+                checkCommandStatus(amContext, containersFinished.get(0), exitStatus, node);
+            } else if (containersFinished.size() == 1) {
+                YarnContainer containerFinished = containersFinished.get(0);
+                // Result of a single command is only read for its output, its exit status is the one of its container
+                CommandResult result = resultsOfContainers.getOrDefault(containerId, Collections.emptyMap()).get(0);
+                if (amContext.getSpeculator().isEnabled() && !isDecidedByAttempt(amContext, containerFinished, containerId, container.getExitStatus())) {
+                    continue;
                 }
+                if (result != null) {
+                    containerFinished.setDuration(result.getDuration());
+                    containerFinished.setOutput(result.getOutput());
+                }
+                checkCommandStatus(amContext, containerFinished, container.getExitStatus(), node);
             } else {
-                containerFinished.setSuccessful(true);
+                Map<Integer, CommandResult> results = resultsOfContainers.getOrDefault(containerId, Collections.emptyMap());
+                for (int i = 0; i < containersFinished.size(); i++) {
+                    CommandResult result = results.get(i);
+                    YarnContainer containerFinished = containersFinished.get(i);
+                    if (result != null) {
+                        containerFinished.setDuration(result.getDuration());
+                        containerFinished.setOutput(result.getOutput());
+                    }
+                    // A command without result did not finish, it failed with container's status (or an unknown one)
+                    int exitStatus = result != null ? result.getExitCode() :
+                            container.getExitStatus() != 0 ? container.getExitStatus() : ContainerExitStatus.INVALID;
+                    checkCommandStatus(amContext, containerFinished, exitStatus, node);
+                }
             }
         }
+        reconcileAsks(amContext);
+    }
+
+    /**
+     * Read results written to HDFS by completed containers which ran a bundle (or a single command whose output is reported),
+     * it is not synchronized, so that HDFS is never accessed while holding the lock of the AM
+     *
+     * @param amContext
+     * @param containersCompletedStatus
+     * @return results of commands by container id, for containers which wrote results
+     */
+    static Map<Long, Map<Integer, CommandResult>> readResultsOfCompletedContainers(AmContext amContext, List<ContainerStatus> containersCompletedStatus) {
+        Map<Long, Map<Integer, CommandResult>> resultsOfContainers = new HashMap<>();
+        for (ContainerStatus container : containersCompletedStatus) {
+            long containerId = container.getContainerId().getContainerId();
+            List<YarnContainer> commands = amContext.getContainers().findContainersUsingContainerId(containerId);
+            // Same condition as in createContainerCommand(), workers report their results over their connection
+            if (commands != null && !amContext.getWorkerPool().isWorker(containerId) &&
+                    (commands.size() > 1 || Parameters.APP_RESULTS_OUTPUT_LINES > 0)) {
+                resultsOfContainers.put(containerId, amContext.getCommandBundler().readResults(containerId));
+            }
+        }
+        return resultsOfContainers;
+    }
+
+    /**
+     * A command may run in several containers with speculative attempts: first attempt to succeed decides, and others are stopped,
+     * while a failed attempt only decides if it is the last one running
+     *
+     * @return true if status of the command must be checked with this attempt
+     */
+    private static boolean isDecidedByAttempt(AmContext amContext, YarnContainer containerFinished, long containerId, int exitStatus) {
+        List<Container> otherAttempts = amContext.getSpeculator().attemptCompleted(containerFinished, containerId, exitStatus == 0);
+        if (containerFinished.getFinalState() == YarnContainer.state.FINISHED) {
+            logger.info("Attempt in container: " + containerId + " completed after its command finished: " + containerFinished);
+            return false;
+        }
+        if (exitStatus == 0) {
+            for (Container otherAttempt : otherAttempts) {
+                logger.info("Stopping attempt in container: " + otherAttempt.getId() + " as command finished: " + containerFinished);
+                amContext.getYarnAmService().getNmClient().stopContainerAsync(otherAttempt.getId(), otherAttempt.getNodeId());
+            }
+            return true;
+        }
+        if (!otherAttempts.isEmpty()) {
+            logger.info("Attempt in container: " + containerId + " failed, but command is still running in another one: " + containerFinished);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * A failed command is retried depending on the class of its exit status: preempted or node failures do not count as a try,
+     * node failures count against the node until it gets blacklisted, and so do failures of the command once it succeeded on another node
+     *
+     * @param amContext
+     * @param containerFinished command finished
+     * @param exitStatus exit code of the command or exit status of its container
+     * @param node where the command ran (null if unknown)
+     */
+    private static void checkCommandStatus(AmContext amContext, YarnContainer containerFinished, int exitStatus, String node) {
+        ContainerRegistry containers = amContext.getContainers();
+        containerFinished.setExitCode(exitStatus);
+        if (exitStatus == 0) {
+            containers.setContainerFinished(containerFinished, true);
+            amContext.getTaskJournal().commandFinished(containerFinished, true);
+            amContext.getTaskResults().commandFinished(containerFinished, node);
+            amContext.getNodeBlacklist().commandSucceeded(containerFinished.getIndex(), node, amContext.getYarnAmService().getClusterNodeCount())
+                    .forEach(amContext.getYarnAmService()::blacklistNode);
+            // Output of successful commands is not kept, to not fill memory of the AM
+            containerFinished.setOutput(null);
+            return;
+        }
+        if (containerFinished.getOutput() != null) {
+            logger.warn("Command " + containerFinished.getIndex() + " exited with: " + exitStatus +
+                    ", last lines of its output:\n" + containerFinished.getOutput());
+        }
+        ExitStatusClass exitStatusClass = ExitStatusClass.fromExitStatus(exitStatus);
+        if (exitStatusClass.blamesNode() &&
+                amContext.getNodeBlacklist().recordFailure(node, amContext.getYarnAmService().getClusterNodeCount())) {
+            amContext.getYarnAmService().blacklistNode(node);
+        }
+        if (exitStatusClass.blamesNodeIfSucceedsElsewhere()) {
+            amContext.getNodeBlacklist().commandFailed(containerFinished.getIndex(), node);
+        }
+        if (exitStatusClass == ExitStatusClass.PREEMPTED && containerFinished.getProfile().isOpportunistic()) {
+            opportunisticContainerKilled(amContext, containerFinished);
+        }
+        if (!exitStatusClass.countsAsTry()) {
+            containerFinished.setTries(containerFinished.getTries() - 1);
+            if (exitStatusClass != ExitStatusClass.KILLED_BY_AM) {
+                containerFinished.setUncountedRetries(containerFinished.getUncountedRetries() + 1);
+            }
+        }
+        long retryDelay = amContext.getRetryPolicy().getRetryDelay(containerFinished, exitStatusClass);
+        if (retryDelay >= 0) {
+            logger.info("Command failed (" + exitStatusClass + ") and will be retried in " + retryDelay + "ms: " + containerFinished.toString());
+            containers.resetContainerToRun(containerFinished, retryDelay);
+            amContext.getMetrics().commandRetried();
+        } else {
+            logger.warn("Command failed (" + exitStatusClass + ") and should not be retried: " + containerFinished.toString());
+            List<YarnContainer> containersSkipped = containers.setContainerFinished(containerFinished, false);
+            amContext.getTaskJournal().commandFinished(containerFinished, false);
+            amContext.getTaskResults().commandFinished(containerFinished, node);
+            amContext.getNodeBlacklist().commandAbandoned(containerFinished.getIndex());
+            // Commands depending on it will not run, they are finished too for a next attempt of the AM and for results
+            for (YarnContainer containerSkipped : containersSkipped) {
+                amContext.getTaskJournal().commandFinished(containerSkipped, false);
+                amContext.getTaskResults().commandFinished(containerSkipped, null);
+            }
+        }
+    }
+
+    /**
+     * An OPPORTUNISTIC container killed to make room for GUARANTEED ones does not count as a try,
+     * but a command killed too many times asks for a GUARANTEED container from then on, so that it ends on a busy cluster
+     */
+    private static void opportunisticContainerKilled(AmContext amContext, YarnContainer containerFinished) {
+        amContext.getMetrics().opportunisticContainerKilled();
+        containerFinished.setOpportunisticKills(containerFinished.getOpportunisticKills() + 1);
+        if (Parameters.APP_OPPORTUNISTIC_MAX_KILLS > 0 && containerFinished.getOpportunisticKills() >= Parameters.APP_OPPORTUNISTIC_MAX_KILLS) {
+            logger.warn("Command was killed in " + containerFinished.getOpportunisticKills() +
+                    " OPPORTUNISTIC containers, it falls back to GUARANTEED ones: " + containerFinished.toString());
+            containerFinished.setProfile(containerFinished.getProfile().withExecutionType(ExecutionType.GUARANTEED));
+        }
+    }
+
+    /**
+     * A container allocated could not be started by its NM, so its commands are set back to be launched again
+     * (without counting it as a try as the commands never ran)
+     *
+     * @param amContext
+     * @param containerId
+     */
+    static synchronized void retryContainerNotStarted(AmContext amContext, long containerId) {
+        if (amContext.getWorkerPool().removeWorker(containerId)) {
+            logger.info("Worker could not be started in container: " + containerId);
+            reconcileAsks(amContext);
+            return;
+        }
+        ContainerRegistry containers = amContext.getContainers();
+        List<YarnContainer> containersNotStarted = containers.removeRunningContainer(containerId);
+        if (containersNotStarted == null) {
+            logger.error("Unable to retrieve container not started: " + containerId);
+            return;
+        }
+        for (YarnContainer containerNotStarted : containersNotStarted) {
+            if (amContext.getSpeculator().isEnabled() &&
+                    !amContext.getSpeculator().attemptCompleted(containerNotStarted, containerId, false).isEmpty()) {
+                // Only a speculative attempt did not start, command still runs in its other container
+                continue;
+            }
+            containerNotStarted.setTries(containerNotStarted.getTries() - 1);
+            containers.resetContainerToRun(containerNotStarted);
+        }
+        reconcileAsks(amContext);
+    }
+
+    /**
+     * Give next command to run to a worker asking for it
+     *
+     * @param amContext
+     * @param workerId container id of the worker
+     * @return message to send back to the worker: a command to run, a wait if commands may still come, or a stop
+     */
+    static synchronized String nextCommandForWorker(AmContext amContext, long workerId) {
+        ContainerRegistry containers = amContext.getContainers();
+        YarnContainer containerToRun = containers.pollContainerToRun(ResourceProfile.getDefault());
+        if (containerToRun != null) {
+            containers.setContainersRunning(Collections.singletonList(containerToRun), workerId);
+            amContext.getWorkerPool().setWorkerBusy(workerId, true);
+            logger.info("Worker " + workerId + " runs command: " + containerToRun.toString());
+            return TaskProtocol.TASK + " " + Base64.getEncoder().encodeToString(containerToRun.getCommand().getBytes(StandardCharsets.UTF_8));
+        }
+        // Commands retried later will be run by remaining workers or new ones, so there is no need to keep this one idle
+        if (containers.isAllContainersLoaded() && containers.getNumberOfContainersToRun(ResourceProfile.getDefault()) == 0) {
+            logger.info("No more command to run, stopping worker " + workerId);
+            amContext.getWorkerPool().stopWorker(workerId);
+            reconcileAsks(amContext);
+            return TaskProtocol.STOP;
+        }
+        return TaskProtocol.WAIT + " " + Parameters.APP_AM_HEARTBEAT_INTERVAL;
+    }
+
+    /**
+     * A worker reports the result of the command it was running, which is checked like a completed container
+     *
+     * @param amContext
+     * @param workerId container id of the worker
+     * @param exitCode exit code of the command
+     * @param duration time in ms taken by the command
+     * @param output last lines of output of the command, null if not reported
+     */
+    static synchronized void commandFinishedOnWorker(AmContext amContext, long workerId, int exitCode, long duration, String output) {
+        ContainerRegistry containers = amContext.getContainers();
+        List<YarnContainer> containersFinished = containers.removeRunningContainer(workerId);
+        amContext.getWorkerPool().setWorkerBusy(workerId, false);
+        if (containersFinished == null) {
+            logger.error("Unable to retrieve command run by worker: " + workerId);
+            return;
+        }
+        YarnContainer containerFinished = containersFinished.get(0);
+        containerFinished.setDuration(duration);
+        containerFinished.setOutput(output);
+        logger.info("Worker " + workerId + " finished command with exit code " + exitCode + ": " + containerFinished.toString());
+        checkCommandStatus(amContext, containerFinished, exitCode, amContext.getYarnAmService().getNodeOfContainer(workerId));
+        reconcileAsks(amContext);
+    }
+
+    /**
+     * Look for commands running much longer than their peers, to launch a speculative attempt for them
+     *
+     * @param amContext
+     */
+    static synchronized void checkStragglers(AmContext amContext) {
+        if (amContext.getSpeculator().isEnabled()) {
+            amContext.getSpeculator().findStragglers(amContext.getContainers().getRunningContainers());
+        }
+    }
+
+    /**
+     * Nodes blacklisted for long enough get a new chance
+     *
+     * @param amContext
+     */
+    static synchronized void expireBlacklistedNodes(AmContext amContext) {
+        amContext.getNodeBlacklist().removeExpiredNodes().forEach(amContext.getYarnAmService()::unblacklistNode);
+    }
+
+    /**
+     * Adapt cap on containers held and asked for to latest signals of RM, then make asks match it
+     *
+     * @param amContext
+     */
+    static synchronized void adjustConcurrency(AmContext amContext) {
+        YarnAmService yarnAmService = amContext.getYarnAmService();
+        int heldContainers = yarnAmService.getNumberOfHeldContainers();
+        int demand = heldContainers + getContainersNeeded(amContext).values().stream().mapToInt(Integer::intValue).sum();
+        amContext.getConcurrencyController().adjust(yarnAmService.getHeadroomContainers(ResourceProfile.getDefault()),
+                yarnAmService.getClusterNodeCount(), yarnAmService.getAllocationLatency(), heldContainers, demand);
+        reconcileAsks(amContext);
+    }
+
+    /**
+     * Containers needed to launch all commands waiting, for each resource profile:
+     * commands of default profile run by workers need as many workers as possible, bundled commands need a container per bundle,
+     * and other commands need a container each
+     */
+    private static Map<ResourceProfile, Integer> getContainersNeeded(AmContext amContext) {
+        WorkerPool workerPool = amContext.getWorkerPool();
+        CommandBundler commandBundler = amContext.getCommandBundler();
+        ResourceProfile defaultProfile = ResourceProfile.getDefault();
+        Map<ResourceProfile, Integer> containersNeeded = new LinkedHashMap<>();
+        amContext.getContainers().getNumberOfContainersToRunByProfile().forEach((profile, containersToRun) -> {
+            if (workerPool.isEnabled() && profile.equals(defaultProfile)) {
+                containersNeeded.put(profile, workerPool.getNumberOfWorkersNeeded(containersToRun));
+            } else if (commandBundler.isBundling()) {
+                containersNeeded.put(profile, commandBundler.getNumberOfContainersNeeded(containersToRun));
+            } else {
+                containersNeeded.put(profile, containersToRun);
+            }
+        });
+        amContext.getSpeculator().getNumberOfSpeculationsToLaunchByProfile()
+                .forEach((profile, speculations) -> containersNeeded.merge(profile, speculations, Integer::sum));
+        return containersNeeded;
+    }
+
+    /**
+     * Make asks match containers needed, without going over the cap on containers held and asked for:
+     * commands with input data get their own ask close to their data, others share asks of their profile
+     */
+    private static void reconcileAsks(AmContext amContext) {
+        ContainerRegistry containers = amContext.getContainers();
+        YarnAmService yarnAmService = amContext.getYarnAmService();
+        WorkerPool workerPool = amContext.getWorkerPool();
+        boolean bundling = amContext.getCommandBundler().isBundling();
+        ResourceProfile defaultProfile = ResourceProfile.getDefault();
+
+        int containersAllowed = amContext.getConcurrencyController().getLimit()
+                - yarnAmService.getNumberOfHeldContainers() - yarnAmService.getNumberOfLocalityAsks();
+
+        for (YarnContainer containerToLocate : containers.pollContainersToLocate(bundling ? Integer.MAX_VALUE : Math.max(0, containersAllowed))) {
+            boolean runByWorker = workerPool.isEnabled() && defaultProfile.equals(containerToLocate.getProfile());
+            if (bundling || runByWorker || containerToLocate.getFinalState() != YarnContainer.state.TO_RUN) {
+                continue;
+            }
+            DataLocality locality = containerToLocate.getLocality();
+            if (locality == null) {
+                // Command is located again once its locality is resolved
+                amContext.getLocalityResolver().resolve(containerToLocate, (container, resolved) -> localityResolved(amContext, container, resolved));
+            } else if (!locality.isEmpty()) {
+                yarnAmService.askForContainerCloseTo(containerToLocate, locality, Parameters.APP_LOCALITY_DELAY > 0);
+                containersAllowed--;
+            }
+        }
+        yarnAmService.relaxLocalityAsks(Parameters.APP_LOCALITY_DELAY);
+
+        Map<ResourceProfile, Integer> containersToAsk = new LinkedHashMap<>();
+        for (Map.Entry<ResourceProfile, Integer> containersNeeded : getContainersNeeded(amContext).entrySet()) {
+            ResourceProfile profile = containersNeeded.getKey();
+            int containersNotAsked = containersNeeded.getValue() - yarnAmService.getNumberOfLocalityAsks(profile);
+            int asks = Math.max(0, Math.min(containersNotAsked, containersAllowed));
+            containersToAsk.put(profile, asks);
+            containersAllowed -= asks;
+        }
+        yarnAmService.reconcileAsks(containersToAsk);
+    }
+
+    private static int getNumberOfWorkersNeeded(AmContext amContext) {
+        return amContext.getWorkerPool().getNumberOfWorkersNeeded(
+                amContext.getContainers().getNumberOfContainersToRun(ResourceProfile.getDefault()));
+    }
+
+    /**
+     * Locality of a command has been resolved in background: it gets an ask close to its data if it is still waiting to be launched
+     */
+    static synchronized void localityResolved(AmContext amContext, YarnContainer container, DataLocality locality) {
+        amContext.getContainers().setLocality(container, locality);
+        reconcileAsks(amContext);
+    }
+
+    /**
+     * Read all commands to launch and link them by their dependencies
+     *
+     * @param commandsToLaunch
+     * @return pipeline of commands
+     */
+    private static CommandDag createCommandDag(Iterator<String> commandsToLaunch) {
+        List<YarnContainer> commands = new ArrayList<>();
+        commandsToLaunch.forEachRemaining(line -> {
+            YarnContainer command = YarnContainer.fromCommandLine(line);
+            command.setIndex(commands.size());
+            commands.add(command);
+        });
+        if (commandsToLaunch instanceof Closeable) {
+            try {
+                ((Closeable) commandsToLaunch).close();
+            } catch (IOException e) {
+                logger.warn("Could not close source of commands due to error: ", e);
+            }
+        }
+        try {
+            return new CommandDag(commands);
+        } catch (IllegalArgumentException e) {
+            logger.error("Cannot launch pipeline of commands due to error: ", e);
+            System.exit(1);
+        }
+        return null;
     }
 
     /**
      * List all commands to launch on containers, either by duplicating one to the number of necessary times or
-     * reading file listing all commands
+     * reading file listing all commands (lazily, so the file can be of any size)
      *
      * @param hdfsService
+     * @param listOfRequiredHdfsFiles
      * @return
      */
-    private static List<String> commandListToLaunch(HdfsService hdfsService) {
-        List<String> commandsToLaunch = new ArrayList<>();
-
+    private static Iterator<String> commandListToLaunch(HdfsService hdfsService, List<String> listOfRequiredHdfsFiles) {
         if (Parameters.JAR_PATH.endsWith(".jar")) {
             logger.info("This is a jar file, there will be " + Parameters.APP_CONTAINER_NUMBER + " containers launched with that jar");
-            for (int i = 0; i < Parameters.APP_CONTAINER_NUMBER; i++) {
-                commandsToLaunch.add("java -jar " + Utils.getFileNameFromPath(Parameters.JAR_PATH) + " " + Parameters.JAR_ARGUMENTS);
-            }
-        } else {
-            logger.info("File: " + Parameters.HDFS_WORK_DIRECTORY + Utils.getFileNameFromPath(Parameters.JAR_PATH) + " will be read from HDFS to determine which commands to launch");
-            commandsToLaunch.addAll(hdfsService.readFileAsList(Parameters.HDFS_WORK_DIRECTORY + Utils.getFileNameFromPath(Parameters.JAR_PATH)));
+            String command = "java -jar " + Utils.getFileNameFromPath(Parameters.JAR_PATH) + " " + Parameters.JAR_ARGUMENTS;
+            return Stream.generate(() -> command).limit(Parameters.APP_CONTAINER_NUMBER).iterator();
         }
 
-        return commandsToLaunch;
+        String commandFile = Utils.getFilePathWithName(listOfRequiredHdfsFiles, Utils.getFileNameFromPath(Parameters.JAR_PATH));
+        logger.info("File: " + commandFile + " will be read from HDFS to determine which commands to launch");
+        try {
+            return hdfsService.readCommandFile(commandFile);
+        } catch (IOException e) {
+            logger.error("Cannot read file of commands to launch: " + commandFile + " due to error: ", e);
+            System.exit(1);
+        }
+        return Collections.emptyIterator();
     }
 
 }
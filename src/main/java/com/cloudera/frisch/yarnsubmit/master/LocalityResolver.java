@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.object.DataLocality;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+/**
+ * Resolves where input data of commands lies in a background thread,
+ * so that the AM never waits for NameNode while holding its lock
+ */
+public class LocalityResolver {
+
+    private static final Logger logger = Logger.getLogger(LocalityResolver.class);
+
+    private final HdfsService hdfsService;
+    private final int maxNodes;
+    private final ExecutorService executorService;
+    // Commands whose locality is being resolved, to not resolve a command twice
+    private final Set<YarnContainer> containersResolving = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param hdfsService used to get locations of blocks
+     * @param maxNodes maximum number of nodes holding most data of a command kept
+     */
+    public LocalityResolver(HdfsService hdfsService, int maxNodes) {
+        this.hdfsService = hdfsService;
+        this.maxNodes = maxNodes;
+        this.executorService = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "locality-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Resolve locality of a command in background, unless it is already being resolved
+     * @param container command with input data
+     * @param onResolved called from the background thread with the command and its locality (empty if it could not be resolved)
+     */
+    public void resolve(YarnContainer container, BiConsumer<YarnContainer, DataLocality> onResolved) {
+        if (executorService.isShutdown() || !containersResolving.add(container)) {
+            return;
+        }
+        executorService.execute(() -> {
+            DataLocality locality;
+            try {
+                locality = hdfsService.getDataLocality(container.getInputPaths(), maxNodes);
+            } catch (IOException e) {
+                logger.warn("Could not locate input data of command: " + container.getCommand() + " due to error: ", e);
+                locality = new DataLocality(Collections.emptyList(), Collections.emptyList());
+            }
+            try {
+                onResolved.accept(container, locality);
+            } catch (RuntimeException e) {
+                logger.error("Could not use locality of command: " + container.getCommand() + " due to error: ", e);
+            } finally {
+                containersResolving.remove(container);
+            }
+        });
+    }
+
+    public void close() {
+        executorService.shutdownNow();
+    }
+}
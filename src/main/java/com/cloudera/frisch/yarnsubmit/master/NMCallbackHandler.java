@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.ContainerStatus;
+import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.hadoop.yarn.client.api.async.NMClientAsync;
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Handles all events coming from NMs about containers launched by this AM
+ */
+public class NMCallbackHandler extends NMClientAsync.AbstractCallbackHandler {
+
+    private static final Logger logger = Logger.getLogger(NMCallbackHandler.class);
+
+    private final AmContext amContext;
+
+    public NMCallbackHandler(AmContext amContext) {
+        this.amContext = amContext;
+    }
+
+    @Override
+    public void onContainerStarted(ContainerId containerId, Map<String, ByteBuffer> allServiceResponse) {
+        logger.info("Container: " + containerId + " has started");
+        amContext.getMetrics().containerStarted(containerId.getContainerId());
+    }
+
+    @Override
+    public void onContainerStatusReceived(ContainerId containerId, ContainerStatus containerStatus) {
+        logger.debug("Container: " + containerId + " has status: " + containerStatus);
+    }
+
+    @Override
+    public void onContainerStopped(ContainerId containerId) {
+        logger.debug("Container: " + containerId + " has been stopped");
+    }
+
+    /**
+     * Container could not be started, so it is given back to RM and its command is asked to be launched again
+     */
+    @Override
+    public void onStartContainerError(ContainerId containerId, Throwable t) {
+        logger.warn("Could not start container: " + containerId + " due to error: ", t);
+        amContext.getMetrics().containerStartFailed(containerId.getContainerId());
+        amContext.getYarnAmService().releaseContainer(containerId);
+        JavaMaster.retryContainerNotStarted(amContext, containerId.getContainerId());
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void onContainerResourceIncreased(ContainerId containerId, Resource resource) {
+        logger.debug("Container: " + containerId + " has its resources increased to: " + resource);
+    }
+
+    @Override
+    public void onContainerResourceUpdated(ContainerId containerId, Resource resource) {
+        logger.debug("Container: " + containerId + " has its resources updated to: " + resource);
+    }
+
+    @Override
+    public void onGetContainerStatusError(ContainerId containerId, Throwable t) {
+        logger.warn("Could not get status of container: " + containerId + " due to error: ", t);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void onIncreaseContainerResourceError(ContainerId containerId, Throwable t) {
+        logger.warn("Could not increase resources of container: " + containerId + " due to error: ", t);
+    }
+
+    @Override
+    public void onUpdateContainerResourceError(ContainerId containerId, Throwable t) {
+        logger.warn("Could not update resources of container: " + containerId + " due to error: ", t);
+    }
+
+    @Override
+    public void onStopContainerError(ContainerId containerId, Throwable t) {
+        logger.warn("Could not stop container: " + containerId + " due to error: ", t);
+    }
+}
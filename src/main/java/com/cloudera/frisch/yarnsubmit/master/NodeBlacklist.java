@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts failures blamed on each node, and blacklists nodes with too many of them for some time,
+ * without ever blacklisting more than half of the cluster.
+ * A failure of a command is only blamed on its node once the command succeeded on another node,
+ * as a command failing everywhere says nothing about nodes
+ */
+public class NodeBlacklist {
+
+    private static final Logger logger = Logger.getLogger(NodeBlacklist.class);
+
+    private final int maxFailuresPerNode;
+    private final long blacklistTimeout;
+    private final Map<String, Integer> failuresByNode = new HashMap<>();
+    // Time of last failure blamed on each node, its failures are forgotten after the timeout
+    private final Map<String, Long> lastFailureByNode = new HashMap<>();
+    // Time each node was blacklisted at
+    private final Map<String, Long> blacklistedNodes = new HashMap<>();
+    // Nodes where a command failed, by index of the command, until it succeeds or fails for good
+    private final Map<Integer, Set<String>> commandFailuresByCommand = new HashMap<>();
+
+    /**
+     * @param maxFailuresPerNode number of failures after which a node is blacklisted (0 to never blacklist)
+     * @param blacklistTimeout time in ms after which a node is not blacklisted anymore and its failures are forgotten (0 to never forget)
+     */
+    public NodeBlacklist(int maxFailuresPerNode, long blacklistTimeout) {
+        this.maxFailuresPerNode = maxFailuresPerNode;
+        this.blacklistTimeout = blacklistTimeout;
+    }
+
+    /**
+     * Record a failure blamed on a node
+     * @param node where command failed
+     * @param clusterNodes number of nodes in the cluster
+     * @return true if node must be blacklisted from now on
+     */
+    public synchronized boolean recordFailure(String node, int clusterNodes) {
+        if (maxFailuresPerNode <= 0 || node == null || blacklistedNodes.containsKey(node)) {
+            return false;
+        }
+        int failures = failuresByNode.merge(node, 1, Integer::sum);
+        lastFailureByNode.put(node, System.currentTimeMillis());
+        if (failures < maxFailuresPerNode) {
+            return false;
+        }
+        if (blacklistedNodes.size() + 1 > clusterNodes / 2) {
+            logger.warn("Node: " + node + " had " + failures + " failures but is not blacklisted, as half of the cluster already is");
+            return false;
+        }
+        logger.warn("Node: " + node + " had " + failures + " failures, it is blacklisted");
+        blacklistedNodes.put(node, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Record a failure of a command itself on a node, only blamed on the node if the command later succeeds on another one
+     * @param command index of the command
+     * @param node where command failed
+     */
+    public synchronized void commandFailed(int command, String node) {
+        if (maxFailuresPerNode > 0 && node != null) {
+            commandFailuresByCommand.computeIfAbsent(command, c -> new HashSet<>()).add(node);
+        }
+    }
+
+    /**
+     * A command succeeded: its previous failures on other nodes are blamed on them
+     * @param command index of the command
+     * @param node where command succeeded (null if unknown)
+     * @param clusterNodes number of nodes in the cluster
+     * @return nodes that must be blacklisted from now on
+     */
+    public synchronized List<String> commandSucceeded(int command, String node, int clusterNodes) {
+        List<String> nodesToBlacklist = new ArrayList<>();
+        Set<String> nodesFailed = commandFailuresByCommand.remove(command);
+        if (nodesFailed == null || node == null) {
+            return nodesToBlacklist;
+        }
+        nodesFailed.remove(node);
+        for (String nodeFailed : nodesFailed) {
+            if (recordFailure(nodeFailed, clusterNodes)) {
+                nodesToBlacklist.add(nodeFailed);
+            }
+        }
+        return nodesToBlacklist;
+    }
+
+    /**
+     * A command failed for good: its failures are not blamed on any node
+     * @param command index of the command
+     */
+    public synchronized void commandAbandoned(int command) {
+        commandFailuresByCommand.remove(command);
+    }
+
+    /**
+     * Forget failures of nodes and blacklisting of nodes older than the timeout
+     * @return nodes that must not be blacklisted anymore
+     */
+    public synchronized List<String> removeExpiredNodes() {
+        List<String> nodesExpired = new ArrayList<>();
+        if (blacklistTimeout <= 0) {
+            return nodesExpired;
+        }
+        long expiredBefore = System.currentTimeMillis() - blacklistTimeout;
+        for (Iterator<Map.Entry<String, Long>> it = blacklistedNodes.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> blacklistedNode = it.next();
+            if (blacklistedNode.getValue() <= expiredBefore) {
+                logger.info("Node: " + blacklistedNode.getKey() + " has been blacklisted for " + blacklistTimeout + "ms, it is not anymore");
+                it.remove();
+                failuresByNode.remove(blacklistedNode.getKey());
+                lastFailureByNode.remove(blacklistedNode.getKey());
+                nodesExpired.add(blacklistedNode.getKey());
+            }
+        }
+        for (Iterator<Map.Entry<String, Long>> it = lastFailureByNode.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> lastFailure = it.next();
+            if (lastFailure.getValue() <= expiredBefore && !blacklistedNodes.containsKey(lastFailure.getKey())) {
+                it.remove();
+                failuresByNode.remove(lastFailure.getKey());
+            }
+        }
+        return nodesExpired;
+    }
+
+    public synchronized int getNumberOfBlacklistedNodes() {
+        return blacklistedNodes.size();
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.object.CommandResult;
+import com.cloudera.frisch.yarnsubmit.object.ContainerRegistry;
+import lombok.Getter;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerStatus;
+import org.apache.hadoop.yarn.api.records.NodeReport;
+import org.apache.hadoop.yarn.api.records.UpdatedContainer;
+import org.apache.hadoop.yarn.client.api.async.AMRMClientAsync;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handles all events coming from the RM: containers are launched as soon as they are allocated
+ * and completed containers are checked (and retried if needed) as soon as they are reported
+ */
+public class RMCallbackHandler extends AMRMClientAsync.AbstractCallbackHandler {
+
+    private static final Logger logger = Logger.getLogger(RMCallbackHandler.class);
+
+    private final AmContext amContext;
+    private final ContainerRegistry containers;
+    private final CountDownLatch allContainersCompleted = new CountDownLatch(1);
+
+    @Getter
+    private volatile boolean stoppedByRM = false;
+
+    public RMCallbackHandler(AmContext amContext) {
+        this.amContext = amContext;
+        this.containers = amContext.getContainers();
+        if (containers.allContainersCompleted()) {
+            allContainersCompleted.countDown();
+        }
+    }
+
+    /**
+     * Wait until all containers have completed or AM has been asked to stop
+     * (commands run by workers complete without their container completing, so registry is also checked)
+     * @param timeoutMs maximum time to wait in ms
+     * @return true if there is nothing more to wait for
+     * @throws InterruptedException
+     */
+    public boolean waitForCompletion(long timeoutMs) throws InterruptedException {
+        return allContainersCompleted.await(timeoutMs, TimeUnit.MILLISECONDS) || containers.allContainersCompleted();
+    }
+
+    @Override
+    public void onContainersCompleted(List<ContainerStatus> statuses) {
+        // Results written by containers are read from HDFS first, without holding the lock of the AM
+        Map<Long, Map<Integer, CommandResult>> results = JavaMaster.readResultsOfCompletedContainers(amContext, statuses);
+        JavaMaster.checkCompletedContainersStatus(amContext, statuses, results);
+        if (containers.allContainersCompleted()) {
+            logger.info("All containers have completed");
+            allContainersCompleted.countDown();
+        }
+    }
+
+    @Override
+    public void onContainersAllocated(List<Container> allocatedContainers) {
+        JavaMaster.launchcontainers(amContext, allocatedContainers);
+    }
+
+    @Override
+    public void onContainersUpdated(List<UpdatedContainer> updatedContainers) {
+        logger.debug("Received " + updatedContainers.size() + " updated containers from RM");
+    }
+
+    @Override
+    public void onShutdownRequest() {
+        logger.warn("RM requested AM to shutdown");
+        stoppedByRM = true;
+        allContainersCompleted.countDown();
+    }
+
+    @Override
+    public void onNodesUpdated(List<NodeReport> updatedNodes) {
+        logger.debug("Received " + updatedNodes.size() + " updated nodes from RM");
+    }
+
+    /**
+     * Progression is calculated by checking how many containers have finished compare to the total number of containers to launch (A default 10 is set)
+     * As commands are loaded by batches, total number of containers is only known once they are all loaded
+     */
+    @Override
+    public float getProgress() {
+        int completedContainers = containers.getNumberOfCompletedContainers();
+        int numbersOfContainersToComplete = containers.size();
+        return completedContainers == 0 && numbersOfContainersToComplete < 10 ?
+                0.1f : (float) completedContainers / (float) numbersOfContainersToComplete;
+    }
+
+    @Override
+    public void onError(Throwable e) {
+        logger.error("Error on RM client, AM will stop: ", e);
+        stoppedByRM = true;
+        allContainersCompleted.countDown();
+    }
+}
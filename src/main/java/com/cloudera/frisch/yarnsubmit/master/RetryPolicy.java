@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+
+/**
+ * Decides if and when a failed command is run again.
+ * Implementations are set with app.retry.policy and must have a public constructor without arguments
+ */
+public interface RetryPolicy {
+
+    /**
+     * @param container command that failed, with its number of tries (failures not counting as a try are already discounted from it,
+     *                  and counted in its uncounted retries instead)
+     * @param exitStatusClass class of its exit status
+     * @return time in ms to wait before running the command again, or a negative value to not run it again
+     */
+    long getRetryDelay(YarnContainer container, ExitStatusClass exitStatusClass);
+}
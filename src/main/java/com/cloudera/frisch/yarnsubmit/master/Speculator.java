@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.object.ResourceProfile;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import lombok.Getter;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Launches a duplicate attempt of commands running much longer than their peers (commands with the same template),
+ * on another node: first attempt to succeed wins and other ones are stopped
+ */
+public class Speculator {
+
+    private static final Logger logger = Logger.getLogger(Speculator.class);
+
+    // Number of commands of a template that must have succeeded before expecting a runtime for this template
+    private static final int MIN_PEERS = 5;
+
+    private final double threshold;
+
+    // Average runtime of commands that succeeded, by template
+    private final Map<String, Long> totalDurationByTemplate = new HashMap<>();
+    private final Map<String, Integer> successesByTemplate = new HashMap<>();
+
+    // Containers running an attempt of each command, and when they were launched
+    private final Map<YarnContainer, List<Container>> attempts = new HashMap<>();
+    private final Map<Long, Long> attemptsLaunchedAt = new HashMap<>();
+    private final Set<Long> speculativeAttempts = new HashSet<>();
+    private final Deque<YarnContainer> speculationsToLaunch = new ArrayDeque<>();
+
+    @Getter
+    private int speculativeAttemptsLaunched = 0;
+    @Getter
+    private int speculativeAttemptsWon = 0;
+
+    /**
+     * @param threshold a command is speculated when running longer than this times the average runtime of its peers (0 to disable)
+     */
+    public Speculator(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public boolean isEnabled() {
+        return threshold > 0;
+    }
+
+    /**
+     * Template of a command, shared by commands only differing by their numbers (as part-0001 and part-0002)
+     */
+    static String getTemplate(String command) {
+        return command.replaceAll("[0-9]+", "N");
+    }
+
+    /**
+     * A command started running in a container, either as its original attempt or as a speculative one
+     */
+    public synchronized void attemptLaunched(YarnContainer task, Container container, boolean speculative) {
+        attempts.computeIfAbsent(task, t -> new ArrayList<>()).add(container);
+        attemptsLaunchedAt.put(container.getId().getContainerId(), System.currentTimeMillis());
+        if (speculative) {
+            speculativeAttempts.add(container.getId().getContainerId());
+        }
+    }
+
+    /**
+     * An attempt of a command completed, if it succeeded its runtime is recorded for its peers
+     * @return containers still running other attempts of this command
+     */
+    public synchronized List<Container> attemptCompleted(YarnContainer task, long containerId, boolean successful) {
+        Long launchedAt = attemptsLaunchedAt.remove(containerId);
+        boolean speculative = speculativeAttempts.remove(containerId);
+        if (successful && launchedAt != null && task.getFinalState() != YarnContainer.state.FINISHED) {
+            String template = getTemplate(task.getCommand());
+            totalDurationByTemplate.merge(template, System.currentTimeMillis() - launchedAt, Long::sum);
+            successesByTemplate.merge(template, 1, Integer::sum);
+            if (speculative) {
+                speculativeAttemptsWon++;
+                logger.info("Speculative attempt won for command: " + task.getCommand());
+            }
+        }
+
+        List<Container> otherAttempts = new ArrayList<>();
+        attempts.getOrDefault(task, Collections.emptyList()).stream()
+                .filter(c -> c.getId().getContainerId() != containerId)
+                .forEach(otherAttempts::add);
+        if (otherAttempts.isEmpty()) {
+            attempts.remove(task);
+        } else {
+            attempts.put(task, otherAttempts);
+        }
+        return otherAttempts;
+    }
+
+    /**
+     * Find commands running for too long compared to their peers, and queue a speculative attempt for each of them
+     * @param runningTasks commands currently running in their own container
+     */
+    public synchronized void findStragglers(List<YarnContainer> runningTasks) {
+        long now = System.currentTimeMillis();
+        for (YarnContainer task : runningTasks) {
+            List<Container> taskAttempts = attempts.get(task);
+            if (taskAttempts == null || taskAttempts.size() > 1 || speculationsToLaunch.contains(task)) {
+                continue;
+            }
+            String template = getTemplate(task.getCommand());
+            int peers = successesByTemplate.getOrDefault(template, 0);
+            if (peers < MIN_PEERS) {
+                continue;
+            }
+            long expectedDuration = totalDurationByTemplate.get(template) / peers;
+            long runningFor = now - attemptsLaunchedAt.getOrDefault(taskAttempts.get(0).getId().getContainerId(), now);
+            if (runningFor > threshold * expectedDuration) {
+                logger.info("Command running for " + runningFor + "ms while its peers take " + expectedDuration +
+                        "ms, a speculative attempt will be launched: " + task.getCommand());
+                speculationsToLaunch.addLast(task);
+            }
+        }
+    }
+
+    /**
+     * Take a command waiting for a speculative attempt that can run in a container: of its profile and on another node
+     * than its running attempt
+     * @return command to run or null if there is none
+     */
+    public synchronized YarnContainer pollSpeculationToLaunch(ResourceProfile profile, String node) {
+        for (Iterator<YarnContainer> it = speculationsToLaunch.iterator(); it.hasNext(); ) {
+            YarnContainer task = it.next();
+            List<Container> taskAttempts = attempts.get(task);
+            if (taskAttempts == null || task.getFinalState() != YarnContainer.state.RUNNING) {
+                // Command finished or failed meanwhile
+                it.remove();
+                continue;
+            }
+            if (profile.equals(task.getProfile()) && taskAttempts.stream().noneMatch(c -> c.getNodeId().getHost().equals(node))) {
+                it.remove();
+                speculativeAttemptsLaunched++;
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of speculative attempts waiting for a container, by profile
+     */
+    public synchronized Map<ResourceProfile, Integer> getNumberOfSpeculationsToLaunchByProfile() {
+        Map<ResourceProfile, Integer> speculationsByProfile = new HashMap<>();
+        speculationsToLaunch.forEach(task -> speculationsByProfile.merge(task.getProfile(), 1, Integer::sum));
+        return speculationsByProfile;
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.object.RecoveredState;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only journal in HDFS of commands launched and finished, so that a new attempt of the AM only runs again unfinished commands.
+ * Each attempt writes its own file, and replays files of all previous attempts in order when it starts. Lines are:
+ * - R containerId index1,index2,... : commands (by index in the command file) launched in a container, in their order in it
+ * - S index : command succeeded
+ * - F index : command failed for good
+ * Journal is flushed to HDFS at each loop of the AM rather than at each line, a failure of the AM may lose last lines,
+ * which only means a few more commands run again
+ */
+public class TaskJournal implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(TaskJournal.class);
+
+    private static final String ATTEMPT_FILE_PREFIX = "attempt-";
+
+    private final HdfsService hdfsService;
+    private final String directory;
+    private FSDataOutputStream journal;
+    private boolean linesToFlush = false;
+
+    /**
+     * @param hdfsService used to read and write journal files
+     * @param directory HDFS directory of journal files
+     */
+    public TaskJournal(HdfsService hdfsService, String directory) {
+        this.hdfsService = hdfsService;
+        this.directory = directory;
+    }
+
+    /**
+     * Read journals of all previous attempts of the AM, in order
+     * @return state of commands left by previous attempts, empty if this is the first attempt
+     * @throws IOException if journals could not be listed
+     */
+    public RecoveredState replay() throws IOException {
+        RecoveredState recoveredState = new RecoveredState();
+        Path journalDirectory = new Path(directory);
+        if (!hdfsService.getFileSystem().exists(journalDirectory)) {
+            return recoveredState;
+        }
+        List<FileStatus> journals = Arrays.stream(hdfsService.getFileSystem().listStatus(journalDirectory))
+                .filter(file -> file.getPath().getName().startsWith(ATTEMPT_FILE_PREFIX))
+                .sorted(Comparator.comparingInt(file -> getAttemptOfFile(file.getPath().getName())))
+                .collect(Collectors.toList());
+        for (FileStatus journalFile : journals) {
+            logger.info("Replaying journal of previous attempt: " + journalFile.getPath());
+            try (BufferedReader reader = hdfsService.openFile(journalFile.getPath().toString())) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    replayLine(recoveredState, line);
+                }
+            }
+        }
+        logger.info("Previous attempts left " + recoveredState.getFinishedCommands().size() + " commands finished and " +
+                recoveredState.getRunningCommands().size() + " commands running");
+        return recoveredState;
+    }
+
+    private static void replayLine(RecoveredState recoveredState, String line) {
+        String[] fields = line.split(" ");
+        try {
+            switch (fields[0]) {
+                case "R":
+                    long containerId = Long.parseLong(fields[1]);
+                    String[] indexes = fields[2].split(",");
+                    for (int position = 0; position < indexes.length; position++) {
+                        recoveredState.commandRunning(Integer.parseInt(indexes[position]), containerId, position);
+                    }
+                    break;
+                case "S":
+                case "F":
+                    recoveredState.commandFinished(Integer.parseInt(fields[1]), "S".equals(fields[0]));
+                    break;
+                default:
+                    logger.warn("Unknown line in journal, it is ignored: " + line);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            // Last line may have been cut by a failure of the AM
+            logger.warn("Incomplete line in journal, it is ignored: " + line);
+        }
+    }
+
+    private static int getAttemptOfFile(String name) {
+        try {
+            return Integer.parseInt(name.substring(ATTEMPT_FILE_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Start journal of this attempt of the AM
+     * @param attemptId of this attempt
+     * @throws IOException if journal file could not be created
+     */
+    public synchronized void open(int attemptId) throws IOException {
+        String journalFile = directory + ATTEMPT_FILE_PREFIX + attemptId;
+        logger.info("Journal of commands is written to: " + journalFile);
+        journal = hdfsService.getFileSystem().create(new Path(journalFile), true);
+    }
+
+    public synchronized void commandsRunning(List<YarnContainer> containers, long containerId) {
+        write("R " + containerId + " " + containers.stream().map(c -> String.valueOf(c.getIndex())).collect(Collectors.joining(",")));
+    }
+
+    public synchronized void commandFinished(YarnContainer container, boolean successful) {
+        write((successful ? "S " : "F ") + container.getIndex());
+    }
+
+    private void write(String line) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            linesToFlush = true;
+        } catch (IOException e) {
+            logger.error("Could not write to journal, it is not written anymore, due to error: ", e);
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Make lines written so far visible to a next attempt of the AM
+     */
+    public synchronized void flush() {
+        if (journal == null || !linesToFlush) {
+            return;
+        }
+        try {
+            journal.hflush();
+            linesToFlush = false;
+        } catch (IOException e) {
+            logger.error("Could not flush journal, it is not written anymore, due to error: ", e);
+            closeQuietly();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.debug("Could not close journal: ", e);
+        }
+        journal = null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
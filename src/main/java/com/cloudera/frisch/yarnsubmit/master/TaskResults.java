@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of each command once finished for good, written by each attempt of the AM to its own file in HDFS, one JSON object per line:
+ * index, id, command, successful, exitCode, tries, durationMs, node, containerId and last lines of its output when they were reported,
+ * and why it was not run when it was skipped (as a command depending on a command which failed).
+ * Like the journal, file is flushed to HDFS at each loop of the AM rather than at each line
+ */
+public class TaskResults implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(TaskResults.class);
+
+    private static final String ATTEMPT_FILE_PREFIX = "attempt-";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HdfsService hdfsService;
+    private final String directory;
+    private FSDataOutputStream results;
+    private boolean linesToFlush = false;
+
+    /**
+     * @param hdfsService used to write results files
+     * @param directory HDFS directory of results files
+     */
+    public TaskResults(HdfsService hdfsService, String directory) {
+        this.hdfsService = hdfsService;
+        this.directory = directory;
+    }
+
+    /**
+     * Start results file of this attempt of the AM
+     * @param attemptId of this attempt
+     * @throws IOException if results file could not be created
+     */
+    public synchronized void open(int attemptId) throws IOException {
+        String resultsFile = directory + ATTEMPT_FILE_PREFIX + attemptId + ".jsonl";
+        logger.info("Results of commands are written to: " + resultsFile);
+        results = hdfsService.getFileSystem().create(new Path(resultsFile), true);
+    }
+
+    /**
+     * @param container command finished for good
+     * @param node where the command last ran (null if unknown)
+     */
+    public synchronized void commandFinished(YarnContainer container, String node) {
+        if (results == null) {
+            return;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", container.getIndex());
+        result.put("id", container.getId());
+        result.put("command", container.getCommand());
+        result.put("successful", container.isSuccessful());
+        result.put("exitCode", container.getExitCode());
+        result.put("tries", container.getTries());
+        result.put("durationMs", container.getDuration());
+        result.put("node", node);
+        result.put("containerId", container.getContainerId());
+        result.put("output", container.getOutput());
+        if (container.getSkippedReason() != null) {
+            result.put("skipped", container.getSkippedReason());
+        }
+        try {
+            results.write((objectMapper.writeValueAsString(result) + "\n").getBytes(StandardCharsets.UTF_8));
+            linesToFlush = true;
+        } catch (JsonProcessingException e) {
+            logger.warn("Could not write result of command: " + container.getIndex() + " due to error: ", e);
+        } catch (IOException e) {
+            logger.error("Could not write to results file, it is not written anymore, due to error: ", e);
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Make results written so far visible in HDFS
+     */
+    public synchronized void flush() {
+        if (results == null || !linesToFlush) {
+            return;
+        }
+        try {
+            results.hflush();
+            linesToFlush = false;
+        } catch (IOException e) {
+            logger.error("Could not flush results file, it is not written anymore, due to error: ", e);
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Read results of commands which failed for good, from results files of all attempts of the AM
+     * (a line cut by the end of an attempt is skipped)
+     * @param hdfsService used to read results files
+     * @param directory HDFS directory of results files
+     * @return results of failed commands, in order of attempts then of failure
+     * @throws IOException if results files could not be listed or read
+     */
+    public static List<Map<String, Object>> readFailedCommands(HdfsService hdfsService, String directory) throws IOException {
+        FileStatus[] files = hdfsService.getFileSystem().globStatus(new Path(directory + ATTEMPT_FILE_PREFIX + "*.jsonl"));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        // attempt-10 comes after attempt-9
+        Arrays.sort(files, Comparator.comparing((FileStatus file) -> file.getPath().getName().length())
+                .thenComparing(file -> file.getPath().getName()));
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<Map<String, Object>> failedCommands = new ArrayList<>();
+        for (FileStatus file : files) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    hdfsService.getFileSystem().open(file.getPath()), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        Map<String, Object> result = objectMapper.readValue(line, new TypeReference<Map<String, Object>>() {});
+                        if (Boolean.FALSE.equals(result.get("successful"))) {
+                            failedCommands.add(result);
+                        }
+                    } catch (JsonProcessingException e) {
+                        logger.debug("Skip line of results file: " + file.getPath() + " which is not a result: " + line);
+                    }
+                }
+            }
+        }
+        return failedCommands;
+    }
+
+    private void closeQuietly() {
+        try {
+            results.close();
+        } catch (IOException e) {
+            logger.debug("Could not close results file: ", e);
+        }
+        results = null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (results != null) {
+            results.close();
+            results = null;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.Utils;
+import com.cloudera.frisch.yarnsubmit.config.Parameters;
+import com.cloudera.frisch.yarnsubmit.container.TaskChannel;
+import com.cloudera.frisch.yarnsubmit.container.TaskProtocol;
+import com.cloudera.frisch.yarnsubmit.container.WorkerAgent;
+import com.cloudera.frisch.yarnsubmit.object.CommandResult;
+import org.apache.hadoop.yarn.api.ApplicationConstants;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Long-lived worker containers, each one pulling commands from the AM through a socket until there is nothing left to run,
+ * so that a container allocation and start up is not paid for every command.
+ * Socket listens on the address of the node of the AM only, and workers get the secret of the application through their environment
+ */
+public class WorkerPool {
+
+    private static final Logger logger = Logger.getLogger(WorkerPool.class);
+
+    private final int maxWorkers;
+    private final long waitInterval;
+    private final String secret = TaskChannel.newSecret();
+
+    private final Set<Long> liveWorkers = new HashSet<>();
+    private final Set<Long> stoppingWorkers = new HashSet<>();
+    private final Set<Long> busyWorkers = new HashSet<>();
+
+    private ServerSocket serverSocket;
+    private String host;
+
+    /**
+     * @param maxWorkers maximum number of workers running at the same time (0 means workers are not used)
+     * @param waitInterval time in ms a worker waits before asking again for a command, when none is ready
+     */
+    public WorkerPool(int maxWorkers, long waitInterval) {
+        this.maxWorkers = Math.max(0, maxWorkers);
+        this.waitInterval = waitInterval;
+    }
+
+    public boolean isEnabled() {
+        return maxWorkers > 0;
+    }
+
+    /**
+     * Open the socket workers connect to, and accept them in background
+     * @param amContext used to hand out commands to workers and report their results
+     */
+    public void start(AmContext amContext) throws IOException {
+        String nmHost = System.getenv(ApplicationConstants.Environment.NM_HOST.name());
+        start(amContext, nmHost != null ? nmHost : InetAddress.getLocalHost().getCanonicalHostName());
+    }
+
+    void start(AmContext amContext, String host) throws IOException {
+        this.host = host;
+        serverSocket = new ServerSocket(0, 0, InetAddress.getByName(host));
+        logger.info("Workers will connect to AM at " + host + ":" + serverSocket.getLocalPort());
+
+        Thread acceptThread = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    Thread workerThread = new Thread(() -> serveWorker(amContext, socket), "worker-" + socket.getPort());
+                    workerThread.setDaemon(true);
+                    workerThread.start();
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) {
+                        logger.warn("Could not accept a worker connection due to error: ", e);
+                    }
+                }
+            }
+        }, "worker-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    private void serveWorker(AmContext amContext, Socket socket) {
+        TaskChannel channel;
+        try {
+            channel = TaskChannel.accept(socket, secret);
+        } catch (IOException e) {
+            logger.warn("Rejected connection from " + socket.getRemoteSocketAddress() + " as it is not a worker of this application: " + e.getMessage());
+            return;
+        }
+        long workerId = channel.getWorkerId();
+        try (TaskChannel c = channel) {
+            if (!isLiveWorker(workerId)) {
+                logger.warn("Rejected connection from unknown worker: " + workerId);
+                return;
+            }
+            logger.info("Worker " + workerId + " connected from " + socket.getRemoteSocketAddress());
+
+            while (true) {
+                String[] message = c.receive().split(" ");
+                if (TaskProtocol.RESULT.equals(message[0])) {
+                    JavaMaster.commandFinishedOnWorker(amContext, workerId, Integer.parseInt(message[1]), Long.parseLong(message[2]),
+                            message.length > 3 ? CommandResult.decodeOutput(message[3]) : null);
+                } else if (TaskProtocol.NEXT.equals(message[0])) {
+                    String reply = JavaMaster.nextCommandForWorker(amContext, workerId);
+                    c.send(reply);
+                    if (TaskProtocol.STOP.equals(reply)) {
+                        return;
+                    }
+                } else {
+                    logger.warn("Unknown message received from worker " + workerId + ": " + message[0]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Command running on this worker, if any, is handled when its container completes
+            logger.warn("Lost connection with worker " + workerId + " due to error: ", e);
+        }
+    }
+
+    /**
+     * Command of a container running a worker
+     */
+    public String createWorkerCommand(long containerId) {
+        return Parameters.JAVA_HOME + " -cp " + Utils.getFileNameFromPath(Utils.getJarFilePath()) +
+                " " + WorkerAgent.class.getName() +
+                " " + host + " " + serverSocket.getLocalPort() + " " + containerId;
+    }
+
+    /**
+     * Environment of a container running a worker, giving it the secret of the application
+     */
+    public Map<String, String> getWorkerEnvironment() {
+        return Collections.singletonMap(TaskChannel.SECRET_ENV, secret);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Number of workers still to launch: enough to run all commands waiting, without going over the maximum of workers
+     * @param commandsToRun number of commands waiting to be run by workers
+     */
+    public synchronized int getNumberOfWorkersNeeded(int commandsToRun) {
+        int activeWorkers = liveWorkers.size() - stoppingWorkers.size();
+        return Math.max(0, Math.min(maxWorkers, commandsToRun + busyWorkers.size()) - activeWorkers);
+    }
+
+    /**
+     * Mark a worker as running a command or not
+     */
+    public synchronized void setWorkerBusy(long containerId, boolean busy) {
+        if (busy) {
+            busyWorkers.add(containerId);
+        } else {
+            busyWorkers.remove(containerId);
+        }
+    }
+
+    public synchronized void addWorker(long containerId) {
+        liveWorkers.add(containerId);
+    }
+
+    /**
+     * A worker has been told to stop as there is nothing left to run, it does not count anymore as an active worker
+     */
+    public synchronized void stopWorker(long containerId) {
+        if (liveWorkers.contains(containerId)) {
+            stoppingWorkers.add(containerId);
+        }
+    }
+
+    /**
+     * @return true if the container was running a worker
+     */
+    public synchronized boolean removeWorker(long containerId) {
+        stoppingWorkers.remove(containerId);
+        busyWorkers.remove(containerId);
+        return liveWorkers.remove(containerId);
+    }
+
+    public synchronized boolean isWorker(long containerId) {
+        return liveWorkers.contains(containerId);
+    }
+
+    public synchronized boolean isLiveWorker(long containerId) {
+        return liveWorkers.contains(containerId) && !stoppingWorkers.contains(containerId);
+    }
+
+    public synchronized int getNumberOfWorkers() {
+        return liveWorkers.size();
+    }
+
+    public void close() {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Could not close socket of workers due to error: ", e);
+        }
+    }
+}
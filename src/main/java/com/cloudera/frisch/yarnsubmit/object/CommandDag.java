@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Commands linked by dependencies: a command is released once all its parents succeeded,
+ * and all commands downstream of a failed command are failed without being run.
+ * Each command is ranked by the length of the longest chain of commands depending on it (critical path),
+ * so that commands holding up most of the pipeline are launched first
+ */
+public class CommandDag {
+
+    private static final Logger logger = Logger.getLogger(CommandDag.class);
+
+    private final Map<String, YarnContainer> commands = new LinkedHashMap<>();
+    private final Map<String, List<YarnContainer>> children = new HashMap<>();
+    private final Map<String, Integer> parentsNotSucceeded = new HashMap<>();
+
+    /**
+     * @param containers all commands of the pipeline, those without id get one from their position
+     * @throws IllegalArgumentException if ids are duplicated, a parent is unknown or dependencies have a cycle
+     */
+    public CommandDag(List<YarnContainer> containers) {
+        for (int i = 0; i < containers.size(); i++) {
+            YarnContainer container = containers.get(i);
+            if (container.getId() == null) {
+                container.setId("#" + (i + 1));
+            }
+            if (commands.put(container.getId(), container) != null) {
+                throw new IllegalArgumentException("Command id: " + container.getId() + " is used more than once");
+            }
+        }
+        for (YarnContainer container : commands.values()) {
+            for (String parent : container.getParents()) {
+                if (!commands.containsKey(parent)) {
+                    throw new IllegalArgumentException("Command: " + container.getId() + " depends on unknown command: " + parent);
+                }
+                children.computeIfAbsent(parent, p -> new ArrayList<>()).add(container);
+            }
+            parentsNotSucceeded.put(container.getId(), container.getParents().size());
+        }
+        rankCommands();
+    }
+
+    /**
+     * Rank commands in reverse topological order, which fails if there is a cycle
+     */
+    private void rankCommands() {
+        Map<String, Integer> childrenNotRanked = new HashMap<>();
+        Deque<YarnContainer> toRank = new ArrayDeque<>();
+        for (YarnContainer container : commands.values()) {
+            int numberOfChildren = getChildren(container).size();
+            childrenNotRanked.put(container.getId(), numberOfChildren);
+            if (numberOfChildren == 0) {
+                toRank.add(container);
+            }
+        }
+        int ranked = 0;
+        while (!toRank.isEmpty()) {
+            YarnContainer container = toRank.poll();
+            container.setRank(1 + getChildren(container).stream().mapToInt(YarnContainer::getRank).max().orElse(0));
+            ranked++;
+            for (String parent : container.getParents()) {
+                if (childrenNotRanked.merge(parent, -1, Integer::sum) == 0) {
+                    toRank.add(commands.get(parent));
+                }
+            }
+        }
+        if (ranked != commands.size()) {
+            throw new IllegalArgumentException("Dependencies between commands have a cycle");
+        }
+        logger.info("Pipeline of " + commands.size() + " commands has a critical path of " +
+                commands.values().stream().mapToInt(YarnContainer::getRank).max().orElse(0) + " commands");
+    }
+
+    private List<YarnContainer> getChildren(YarnContainer container) {
+        return children.getOrDefault(container.getId(), Collections.emptyList());
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * @return commands without any parent, to run first
+     */
+    public List<YarnContainer> getRoots() {
+        List<YarnContainer> roots = new ArrayList<>();
+        commands.values().stream().filter(container -> container.getParents().isEmpty()).forEach(roots::add);
+        return roots;
+    }
+
+    /**
+     * A command succeeded, so its children may run if all their other parents succeeded too
+     * @return commands released
+     */
+    public List<YarnContainer> commandSucceeded(YarnContainer container) {
+        List<YarnContainer> released = new ArrayList<>();
+        for (YarnContainer child : getChildren(container)) {
+            if (parentsNotSucceeded.merge(child.getId(), -1, Integer::sum) == 0) {
+                released.add(child);
+            }
+        }
+        return released;
+    }
+
+    /**
+     * A command failed for good, so no command downstream of it can run anymore
+     * @return commands downstream that were not already finished
+     */
+    public List<YarnContainer> commandFailed(YarnContainer container) {
+        Set<YarnContainer> downstream = new LinkedHashSet<>();
+        Deque<YarnContainer> toVisit = new ArrayDeque<>(getChildren(container));
+        while (!toVisit.isEmpty()) {
+            YarnContainer child = toVisit.poll();
+            if (child.getFinalState() != YarnContainer.state.FINISHED && downstream.add(child)) {
+                toVisit.addAll(getChildren(child));
+            }
+        }
+        return new ArrayList<>(downstream);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Result of one command run in a bundle of commands, as reported by the container running it
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class CommandResult {
+    int index;
+    int exitCode;
+    long duration;
+    // Last lines of output of the command, null if they were not kept
+    String output;
+
+    /**
+     * @return result as written in results file of a bundle: index exitCode duration [base64Output]
+     */
+    public String toLine() {
+        return index + " " + exitCode + " " + duration + (output != null ? " " + encodeOutput(output) : "");
+    }
+
+    public static CommandResult fromLine(String line) {
+        String[] fields = line.trim().split(" ");
+        return new CommandResult(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                fields.length > 3 ? decodeOutput(fields[3]) : null);
+    }
+
+    /**
+     * Output is sent encoded, as it may hold spaces and line breaks
+     */
+    public static String encodeOutput(String output) {
+        return Base64.getEncoder().encodeToString(output.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodeOutput(String encodedOutput) {
+        return new String(Base64.getDecoder().decode(encodedOutput), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,532 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keeps track of all commands to launch and their state, without ever walking the whole list of commands:
+ * - Commands to run are kept in a FIFO queue per resource profile (commands of higher rank first), loaded lazily from a source of commands by batches
+ * - Commands of a pipeline are all loaded at once, and only queued to run once commands they depend on succeeded
+ * - Commands running are indexed by their container id (and removed from index once finished)
+ * - Commands to run with input data are also queued to get their data locality resolved, and once it is, they are indexed by nodes and racks
+ *   holding their data, to be taken out of order to run close to their data
+ * - Failed commands to run again after some delay wait aside, and are queued to run once their delay is over
+ * - Completed and successful commands are counted as they finish, only failed ones are kept afterwards
+ * - Commands finished in previous attempts of the AM are counted as finished when loaded, and commands still running in a container
+ *   kept from previous attempts are set running in it
+ * All methods are thread-safe as they are called from RM and NM callback threads
+ */
+public class ContainerRegistry {
+
+    private static final Logger logger = Logger.getLogger(ContainerRegistry.class);
+
+    private static final Comparator<YarnContainer> RUN_ORDER =
+            Comparator.comparingInt(YarnContainer::getRank).reversed().thenComparingLong(YarnContainer::getQueuedAt);
+
+    private final Iterator<String> commandsToLoad;
+    private final CommandDag commandDag;
+    private final int batchSize;
+    private final RecoveredState recoveredState;
+    private boolean allContainersLoaded = false;
+
+    // Ordered sets rather than priority queues, so that a command is taken out of order without walking its queue
+    private final Map<ResourceProfile, NavigableSet<YarnContainer>> containersToRun = new LinkedHashMap<>();
+    // Commands to run whose data locality is known, by profile and by nodes (or racks) holding their data
+    private final Map<ResourceProfile, Map<String, NavigableSet<YarnContainer>>> containersToRunByNode = new HashMap<>();
+    private final Map<ResourceProfile, Map<String, NavigableSet<YarnContainer>>> containersToRunByRack = new HashMap<>();
+    private int numberOfContainersToRun = 0;
+    private long queuedContainers = 0;
+    // Failed commands waiting for their delay before being queued to run again, the soonest first
+    private final Queue<YarnContainer> containersToRetry = new PriorityQueue<>(Comparator.comparingLong(YarnContainer::getRetryAt));
+    // Commands to run which declared input data, and need a container close to it
+    private final Deque<YarnContainer> containersToLocate = new ArrayDeque<>();
+    // A container may run several commands when they are bundled
+    private final Map<Long, List<YarnContainer>> runningContainers = new HashMap<>();
+    // Containers of previous attempts of the AM, running commands recovered from them, until they are adopted or not
+    private final Set<Long> recoveredContainers = new HashSet<>();
+    private final List<YarnContainer> failedContainers = new ArrayList<>();
+    private int numberOfContainers = 0;
+    private int completedContainers = 0;
+    private int successfulContainers = 0;
+    // Commands launched so far, counting each attempt of a command
+    private long launchedContainers = 0;
+
+    public ContainerRegistry() {
+        this(Collections.emptyIterator(), 0);
+    }
+
+    /**
+     * @param commandsToLoad source of commands to launch, closed once fully read if it is closeable
+     * @param batchSize maximum number of commands loaded in the queue of commands to run
+     */
+    public ContainerRegistry(Iterator<String> commandsToLoad, int batchSize) {
+        this(commandsToLoad, batchSize, new RecoveredState());
+    }
+
+    /**
+     * @param commandsToLoad source of commands to launch, closed once fully read if it is closeable
+     * @param batchSize maximum number of commands loaded in the queue of commands to run
+     * @param recoveredState state of commands left by previous attempts of the AM
+     */
+    public ContainerRegistry(Iterator<String> commandsToLoad, int batchSize, RecoveredState recoveredState) {
+        this.commandsToLoad = commandsToLoad;
+        this.batchSize = batchSize;
+        this.commandDag = null;
+        this.recoveredState = recoveredState;
+        loadContainersToRun();
+    }
+
+    /**
+     * @param commandDag pipeline of commands to launch, commands without parents are queued to run right away
+     * @param recoveredState state of commands left by previous attempts of the AM
+     */
+    public ContainerRegistry(CommandDag commandDag, RecoveredState recoveredState) {
+        this.commandsToLoad = Collections.emptyIterator();
+        this.batchSize = commandDag.size();
+        this.commandDag = commandDag;
+        this.recoveredState = recoveredState;
+        this.allContainersLoaded = true;
+        this.numberOfContainers = commandDag.size();
+        commandDag.getRoots().forEach(this::recoverOrQueueContainer);
+    }
+
+    public synchronized void addContainer(YarnContainer container) {
+        container.setIndex(numberOfContainers);
+        numberOfContainers++;
+        if (container.getFinalState() == YarnContainer.state.TO_RUN) {
+            recoverOrQueueContainer(container);
+        }
+    }
+
+    /**
+     * Load commands from the source until the queue of commands to run is full (or the source is empty),
+     * and at least until all commands running in previous attempts of the AM are loaded
+     */
+    private synchronized void loadContainersToRun() {
+        if (allContainersLoaded) {
+            return;
+        }
+        while ((numberOfContainersToRun < batchSize || !recoveredState.getRunningCommands().isEmpty()) && commandsToLoad.hasNext()) {
+            addContainer(YarnContainer.fromCommandLine(commandsToLoad.next()));
+        }
+        if (!commandsToLoad.hasNext()) {
+            logger.info("All " + numberOfContainers + " commands to launch have been loaded");
+            allContainersLoaded = true;
+            if (commandsToLoad instanceof Closeable) {
+                try {
+                    ((Closeable) commandsToLoad).close();
+                } catch (IOException e) {
+                    logger.warn("Could not close source of commands due to error: ", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of commands loaded so far
+     */
+    public synchronized int size() {
+        return numberOfContainers;
+    }
+
+    public synchronized boolean isAllContainersLoaded() {
+        return allContainersLoaded;
+    }
+
+    /**
+     * @return a copy of commands that finished without success, as other threads (HTTP server of the AM) go through it
+     */
+    public synchronized List<YarnContainer> getFailedContainers() {
+        return new ArrayList<>(failedContainers);
+    }
+
+    /**
+     * @param from position of the first command to get, in order of failure
+     * @param max number of commands to get at most
+     * @return a copy of commands that finished without success, from that position
+     */
+    public synchronized List<YarnContainer> getFailedContainers(int from, int max) {
+        int start = Math.min(Math.max(0, from), failedContainers.size());
+        return new ArrayList<>(failedContainers.subList(start, Math.min(failedContainers.size(), start + max)));
+    }
+
+    public synchronized int getNumberOfFailedContainers() {
+        return failedContainers.size();
+    }
+
+    public synchronized int getNumberOfContainersToRun() {
+        return numberOfContainersToRun;
+    }
+
+    public synchronized int getNumberOfContainersToRun(ResourceProfile profile) {
+        NavigableSet<YarnContainer> queue = containersToRun.get(profile);
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * @return number of commands waiting to be launched for each resource profile (profiles with none may be absent)
+     */
+    public synchronized Map<ResourceProfile, Integer> getNumberOfContainersToRunByProfile() {
+        releaseContainersToRetry();
+        Map<ResourceProfile, Integer> numberByProfile = new LinkedHashMap<>();
+        containersToRun.forEach((profile, queue) -> numberByProfile.put(profile, queue.size()));
+        return numberByProfile;
+    }
+
+    public synchronized int getNumberOfContainersToRetry() {
+        return containersToRetry.size();
+    }
+
+    public synchronized int getNumberOfRunningContainers() {
+        return runningContainers.size();
+    }
+
+    public synchronized long getNumberOfLaunchedContainers() {
+        return launchedContainers;
+    }
+
+    public synchronized int getNumberOfCompletedContainers() {
+        return completedContainers;
+    }
+
+    public synchronized int getNumberOfSuccessfulContainers() {
+        return successfulContainers;
+    }
+
+    public synchronized boolean allContainersCompleted() {
+        return allContainersLoaded && completedContainers >= numberOfContainers;
+    }
+
+    public synchronized boolean checkAllContainersAreSuccessful() {
+        return allContainersLoaded && successfulContainers == numberOfContainers;
+    }
+
+    /**
+     * Take the first command waiting to be launched of the first profile having some, whatever its resources
+     * @return command to launch or null if there is none
+     */
+    public synchronized YarnContainer pollContainerToRun() {
+        for (ResourceProfile profile : containersToRun.keySet()) {
+            if (!containersToRun.get(profile).isEmpty()) {
+                return pollContainerToRun(profile);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take the first command waiting to be launched with a given profile, and load new ones if needed
+     * @param profile of the container to run the command in
+     * @return command to launch or null if there is none
+     */
+    public synchronized YarnContainer pollContainerToRun(ResourceProfile profile) {
+        releaseContainersToRetry();
+        NavigableSet<YarnContainer> queue = containersToRun.get(profile);
+        YarnContainer container = queue != null ? queue.pollFirst() : null;
+        if (container != null) {
+            numberOfContainersToRun--;
+            unindexContainerToRun(container);
+        }
+        if (numberOfContainersToRun <= batchSize / 2) {
+            loadContainersToRun();
+        }
+        return container;
+    }
+
+    /**
+     * Take the command waiting to be launched with a given profile whose data is the closest to a container:
+     * on the same node, else on the same rack, else the first one to run
+     * @param profile of the container
+     * @param node of the container
+     * @param rack of the container
+     * @return command to launch or null if there is none
+     */
+    public synchronized YarnContainer pollContainerToRun(ResourceProfile profile, String node, String rack) {
+        YarnContainer container = getFirstContainerToRun(containersToRunByNode, profile, node);
+        if (container == null) {
+            container = getFirstContainerToRun(containersToRunByRack, profile, rack);
+        }
+        return container != null ? takeContainerToRun(container) : pollContainerToRun(profile);
+    }
+
+    private static YarnContainer getFirstContainerToRun(Map<ResourceProfile, Map<String, NavigableSet<YarnContainer>>> index,
+                                                        ResourceProfile profile, String location) {
+        NavigableSet<YarnContainer> containers = index.getOrDefault(profile, Collections.emptyMap()).get(location);
+        return containers != null ? containers.first() : null;
+    }
+
+    /**
+     * Take a given command out of the queue of commands waiting to be launched
+     * @return the command or null if it is not waiting to be launched
+     */
+    public synchronized YarnContainer takeContainerToRun(YarnContainer container) {
+        NavigableSet<YarnContainer> queue = containersToRun.get(container.getProfile());
+        if (queue == null || !queue.remove(container)) {
+            return null;
+        }
+        numberOfContainersToRun--;
+        unindexContainerToRun(container);
+        if (numberOfContainersToRun <= batchSize / 2) {
+            loadContainersToRun();
+        }
+        return container;
+    }
+
+    /**
+     * Set where input data of a command lies: if it is waiting to be launched, it is indexed by nodes and racks holding its data,
+     * and queued again to get an ask close to its data
+     */
+    public synchronized void setLocality(YarnContainer container, DataLocality locality) {
+        NavigableSet<YarnContainer> queue = containersToRun.get(container.getProfile());
+        boolean waitingToRun = queue != null && queue.contains(container);
+        if (waitingToRun) {
+            unindexContainerToRun(container);
+        }
+        container.setLocality(locality);
+        if (waitingToRun) {
+            indexContainerToRun(container);
+            containersToLocate.addFirst(container);
+        }
+    }
+
+    /**
+     * Take commands with input data that were queued to run since they were last taken
+     * @param max maximum number of commands to take, others are left for next call
+     */
+    public synchronized List<YarnContainer> pollContainersToLocate(int max) {
+        List<YarnContainer> containers = new ArrayList<>();
+        while (containers.size() < max && !containersToLocate.isEmpty()) {
+            containers.add(containersToLocate.pollFirst());
+        }
+        return containers;
+    }
+
+    /**
+     * Mark commands as running in the same container
+     */
+    public synchronized void setContainersRunning(List<YarnContainer> containers, long containerId) {
+        containers.forEach(container -> container.setContainerRunning(containerId));
+        runningContainers.put(containerId, containers);
+        launchedContainers += containers.size();
+    }
+
+    /**
+     * Keep commands recovered as running in containers of previous attempts of the AM still alive,
+     * while commands of other containers are queued to run again
+     * @param containersAlive ids of containers of previous attempts still running
+     * @return ids of containers whose commands are running
+     */
+    public synchronized Set<Long> adoptRunningContainers(Set<Long> containersAlive) {
+        Set<Long> adoptedContainers = new HashSet<>();
+        for (Long containerId : recoveredContainers) {
+            List<YarnContainer> containers = runningContainers.get(containerId);
+            if (containers == null) {
+                continue;
+            }
+            if (containersAlive.contains(containerId)) {
+                // Results of a bundle of commands are read by position of commands in it
+                containers.sort(Comparator.comparingInt(container -> recoveredState.getPositionsInContainer().getOrDefault(container.getIndex(), 0)));
+                adoptedContainers.add(containerId);
+            } else {
+                runningContainers.remove(containerId);
+                containers.forEach(this::resetContainerToRun);
+            }
+        }
+        recoveredContainers.clear();
+        recoveredState.getRunningCommands().clear();
+        recoveredState.getPositionsInContainer().clear();
+        return adoptedContainers;
+    }
+
+    /**
+     * Mark a command already running as also running in another container, as a speculative attempt
+     */
+    public synchronized void addSpeculativeAttempt(YarnContainer container, long containerId) {
+        runningContainers.put(containerId, Collections.singletonList(container));
+        launchedContainers++;
+    }
+
+    /**
+     * @return commands running, each one once even if it runs in several containers
+     */
+    public synchronized List<YarnContainer> getRunningContainers() {
+        Set<YarnContainer> running = new LinkedHashSet<>();
+        runningContainers.values().forEach(running::addAll);
+        return new ArrayList<>(running);
+    }
+
+    public synchronized List<YarnContainer> findContainersUsingContainerId(long containerId) {
+        return runningContainers.get(containerId);
+    }
+
+    /**
+     * Remove a container from running ones, its commands must then be either finished or reset to run
+     * @return commands that were running in this container or null if there is none
+     */
+    public synchronized List<YarnContainer> removeRunningContainer(long containerId) {
+        return runningContainers.remove(containerId);
+    }
+
+    /**
+     * Mark a command removed from running ones as finished for good
+     * @return commands of the pipeline which will not run as they depend on this command which failed, marked as finished without success
+     */
+    public synchronized List<YarnContainer> setContainerFinished(YarnContainer container, boolean successful) {
+        container.setFinalState(YarnContainer.state.FINISHED);
+        container.setSuccessful(successful);
+        completedContainers++;
+        if (successful) {
+            successfulContainers++;
+        } else {
+            failedContainers.add(container);
+        }
+        if (commandDag == null) {
+            return Collections.emptyList();
+        }
+        if (successful) {
+            commandDag.commandSucceeded(container).forEach(this::recoverOrQueueContainer);
+            return Collections.emptyList();
+        }
+        List<YarnContainer> downstream = commandDag.commandFailed(container);
+        if (!downstream.isEmpty()) {
+            logger.warn("Command: " + container.getId() + " failed, so " + downstream.size() + " commands depending on it will not run");
+        }
+        for (YarnContainer containerDownstream : downstream) {
+            containerDownstream.setFinalState(YarnContainer.state.FINISHED);
+            containerDownstream.setSuccessful(false);
+            containerDownstream.setSkippedReason("skipped: parent " + container.getId() + " failed");
+            completedContainers++;
+            failedContainers.add(containerDownstream);
+        }
+        return downstream;
+    }
+
+    /**
+     * Put a command removed from running ones back at the end of the queue of commands to launch
+     */
+    public synchronized void resetContainerToRun(YarnContainer container) {
+        container.resetContainerToRun();
+        queueContainerToRun(container);
+    }
+
+    /**
+     * Put a command removed from running ones back to be launched, once a delay is over
+     * @param delay time in ms to wait before queuing the command to run (0 or less to queue it right away)
+     */
+    public synchronized void resetContainerToRun(YarnContainer container, long delay) {
+        if (delay <= 0) {
+            resetContainerToRun(container);
+            return;
+        }
+        container.resetContainerToRun();
+        container.setRetryAt(System.currentTimeMillis() + delay);
+        containersToRetry.add(container);
+    }
+
+    /**
+     * Queue to run failed commands whose delay before running again is over
+     */
+    public synchronized void releaseContainersToRetry() {
+        long now = System.currentTimeMillis();
+        while (!containersToRetry.isEmpty() && containersToRetry.peek().getRetryAt() <= now) {
+            YarnContainer container = containersToRetry.poll();
+            container.setRetryAt(0L);
+            queueContainerToRun(container);
+        }
+    }
+
+    /**
+     * A command is ready to run for the first time, unless a previous attempt of the AM finished it or is still running it
+     */
+    private void recoverOrQueueContainer(YarnContainer container) {
+        Boolean successful = recoveredState.getFinishedCommands().remove(container.getIndex());
+        if (successful != null) {
+            setContainerFinished(container, successful);
+            return;
+        }
+        Long containerId = recoveredState.getRunningCommands().remove(container.getIndex());
+        if (containerId != null) {
+            container.setContainerRunning(containerId);
+            runningContainers.computeIfAbsent(containerId, id -> new ArrayList<>()).add(container);
+            recoveredContainers.add(containerId);
+            return;
+        }
+        queueContainerToRun(container);
+    }
+
+    private void queueContainerToRun(YarnContainer container) {
+        container.setQueuedAt(queuedContainers++);
+        containersToRun.computeIfAbsent(container.getProfile(), profile -> new TreeSet<>(RUN_ORDER)).add(container);
+        numberOfContainersToRun++;
+        indexContainerToRun(container);
+        if (!container.getInputPaths().isEmpty()) {
+            containersToLocate.addLast(container);
+        }
+    }
+
+    private void indexContainerToRun(YarnContainer container) {
+        DataLocality locality = container.getLocality();
+        if (locality == null) {
+            return;
+        }
+        locality.getNodes().forEach(node -> containersToRunByNode.computeIfAbsent(container.getProfile(), profile -> new HashMap<>())
+                .computeIfAbsent(node, n -> new TreeSet<>(RUN_ORDER)).add(container));
+        locality.getRacks().forEach(rack -> containersToRunByRack.computeIfAbsent(container.getProfile(), profile -> new HashMap<>())
+                .computeIfAbsent(rack, r -> new TreeSet<>(RUN_ORDER)).add(container));
+    }
+
+    private void unindexContainerToRun(YarnContainer container) {
+        DataLocality locality = container.getLocality();
+        if (locality == null) {
+            return;
+        }
+        locality.getNodes().forEach(node -> removeFromIndex(containersToRunByNode, container, node));
+        locality.getRacks().forEach(rack -> removeFromIndex(containersToRunByRack, container, rack));
+    }
+
+    private static void removeFromIndex(Map<ResourceProfile, Map<String, NavigableSet<YarnContainer>>> index,
+                                        YarnContainer container, String location) {
+        Map<String, NavigableSet<YarnContainer>> containersByLocation = index.get(container.getProfile());
+        NavigableSet<YarnContainer> containers = containersByLocation != null ? containersByLocation.get(location) : null;
+        if (containers != null && containers.remove(container) && containers.isEmpty()) {
+            containersByLocation.remove(location);
+        }
+    }
+
+}
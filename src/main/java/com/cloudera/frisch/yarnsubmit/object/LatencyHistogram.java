@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Distribution of latencies in ms, kept in buckets of powers of 2 so that it takes the same memory whatever number of values:
+ * percentiles are the upper bound of their bucket (so at most twice the real value), capped by the maximum
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 48;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    public synchronized void record(long latency) {
+        long value = Math.max(0L, latency);
+        // Bucket i holds values in [2^(i-1), 2^i), bucket 0 holds 0
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value))]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return latency under which this percentile of values are, 0 if there is no value
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank && buckets[i] > 0) {
+                // Last bucket holds all values above its lower bound
+                long upperBound = i == 0 ? 0 : i == BUCKETS - 1 ? max : (1L << i) - 1;
+                return Math.max(min, Math.min(max, upperBound));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return summary of the distribution, in ms
+     */
+    public synchronized Map<String, Long> toMap() {
+        Map<String, Long> summary = new LinkedHashMap<>();
+        summary.put("count", count);
+        summary.put("min", count == 0 ? 0 : min);
+        summary.put("mean", getMean());
+        summary.put("p50", getPercentile(50));
+        summary.put("p90", getPercentile(90));
+        summary.put("p99", getPercentile(99));
+        summary.put("max", max);
+        return summary;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * State of commands left by previous attempts of the AM, commands being identified by their index in the command file
+ */
+@Getter
+public class RecoveredState {
+
+    // Commands that finished, and whether they succeeded
+    private final Map<Integer, Boolean> finishedCommands = new HashMap<>();
+    // Commands that were running, with their container and their position in it (for a bundle of commands)
+    private final Map<Integer, Long> runningCommands = new HashMap<>();
+    private final Map<Integer, Integer> positionsInContainer = new HashMap<>();
+
+    public void commandRunning(int index, long containerId, int position) {
+        finishedCommands.remove(index);
+        runningCommands.put(index, containerId);
+        positionsInContainer.put(index, position);
+    }
+
+    public void commandFinished(int index, boolean successful) {
+        runningCommands.remove(index);
+        finishedCommands.put(index, successful);
+    }
+
+    public boolean isEmpty() {
+        return finishedCommands.isEmpty() && runningCommands.isEmpty();
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import com.cloudera.frisch.yarnsubmit.config.Parameters;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.hadoop.yarn.api.records.ExecutionType;
+
+/**
+ * Resources, priority and execution type of the container a command must run in,
+ * commands with the same profile are asked and matched to allocated containers together
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class ResourceProfile {
+    int memory;
+    int vcores;
+    int priority;
+    // OPPORTUNISTIC containers start without waiting for free resources, but are killed when GUARANTEED ones need them
+    ExecutionType executionType;
+
+    /**
+     * @return profile of commands that did not set their own resources, from parameters of the application
+     */
+    public static ResourceProfile getDefault() {
+        return new ResourceProfile(Parameters.APP_CONTAINER_MEMORY, Parameters.APP_CONTAINER_VCORES, Parameters.APP_PRIORITY,
+                Parameters.APP_CONTAINER_EXECUTION_TYPE);
+    }
+
+    /**
+     * @return same profile with another execution type
+     */
+    public ResourceProfile withExecutionType(ExecutionType otherExecutionType) {
+        return new ResourceProfile(memory, vcores, priority, otherExecutionType);
+    }
+
+    public boolean isOpportunistic() {
+        return executionType == ExecutionType.OPPORTUNISTIC;
+    }
+
+    /**
+     * @return true if a container with these resources is big enough for this profile
+     */
+    public boolean fitsIn(long containerMemory, int containerVcores) {
+        return memory <= containerMemory && vcores <= containerVcores;
+    }
+}
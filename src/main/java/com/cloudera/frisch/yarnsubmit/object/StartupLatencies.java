@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import lombok.Getter;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hadoop.yarn.api.records.YarnApplicationState;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Time applications take to be accepted by RM, and then to get their AM running, as seen by the client following them:
+ * precision is the interval between two checks of applications, which is the shortest one while they start
+ */
+public class StartupLatencies {
+
+    @Getter
+    private final LatencyHistogram submitToAccepted = new LatencyHistogram();
+    @Getter
+    private final LatencyHistogram acceptedToRunning = new LatencyHistogram();
+    private final Map<ApplicationId, Long> submittedAt = new HashMap<>();
+    private final Map<ApplicationId, Long> acceptedAt = new HashMap<>();
+    private final Set<ApplicationId> running = new HashSet<>();
+
+    public synchronized void applicationSubmitted(ApplicationId applicationId) {
+        submittedAt.put(applicationId, System.currentTimeMillis());
+    }
+
+    /**
+     * Record transitions of an application from its last report, an application not submitted by this client
+     * (when reattaching to it) is considered submitted when RM got it
+     */
+    public synchronized void applicationReported(ApplicationReport report) {
+        ApplicationId applicationId = report.getApplicationId();
+        YarnApplicationState state = report.getYarnApplicationState();
+        long now = System.currentTimeMillis();
+        if (state == YarnApplicationState.ACCEPTED && !acceptedAt.containsKey(applicationId)) {
+            acceptedAt.put(applicationId, now);
+            submitToAccepted.record(now - submittedAt.getOrDefault(applicationId, report.getStartTime()));
+        } else if (state == YarnApplicationState.RUNNING && running.add(applicationId) && acceptedAt.containsKey(applicationId)) {
+            acceptedToRunning.record(now - acceptedAt.get(applicationId));
+        }
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        latencies.put("submitToAccepted", submitToAccepted.toMap());
+        latencies.put("acceptedToRunning", acceptedToRunning.toMap());
+        return latencies;
+    }
+}
@@ -21,7 +21,11 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.apache.hadoop.yarn.api.records.ExecutionType;
+import org.apache.log4j.Logger;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 @Getter
@@ -29,20 +33,121 @@ import java.util.List;
 @AllArgsConstructor
 @ToString
 public class YarnContainer {
+    private static final Logger logger = Logger.getLogger(YarnContainer.class);
+
     String command;
+    // Position of the command in the command file, identifying it across attempts of the AM
+    int index;
     boolean successful;
     int tries;
     state finalState;
-    Long containerId;
+    // 0 means this command has not been launched in any container
+    long containerId;
+    // Time in ms taken by the command on its last run, as reported by a bundle of commands (0 if unknown)
+    long duration;
+    // HDFS paths read by the command, declared in the command file
+    List<String> inputPaths = Collections.emptyList();
+    // Where input data of the command lies, null until resolved
+    DataLocality locality;
+    // Resources of the container to run the command in
+    ResourceProfile profile;
+    // Id of the command and ids of commands it depends on, in a pipeline of commands
+    String id;
+    List<String> parents = Collections.emptyList();
+    // Commands with highest rank are launched first (0 for all commands out of a pipeline)
+    int rank;
+    // Order in which commands were queued to run, for commands of the same rank
+    long queuedAt;
+    // Time before which a failed command must not be run again (0 to run it right away)
+    long retryAt;
+    // Number of times its OPPORTUNISTIC containers were killed to make room for GUARANTEED ones
+    int opportunisticKills;
+    // Number of failures not counted as a try (preemption, node failure), which are retried a limited number of times too
+    int uncountedRetries;
+    // Exit code of the command on its last run (or exit status of its container if the command did not report it)
+    int exitCode;
+    // Last lines of output of the command on its last run, when reported by its container (null otherwise)
+    @ToString.Exclude
+    String output;
+    // Why the command finished for good without being run, as when a command it depends on failed (null if it was run)
+    String skippedReason;
 
     public YarnContainer(String command) {
         this.command = command;
         this.successful = false;
         this.tries = 0;
         this.finalState = state.TO_RUN;
+        this.profile = ResourceProfile.getDefault();
+    }
+
+    /**
+     * Create a command from a line of the command file, which may start with options of the command, as: @key=value
+     * - @inputs=path1,path2 : HDFS paths read by the command, to run it close to its data
+     * - @memory=MB, @vcores=N, @priority=N : resources and priority of its container (instead of application ones)
+     * - @execution=opportunistic|guaranteed : execution type of its container (instead of application one)
+     * - @id=name, @after=name1,name2 : id of the command and ids of commands it must run after, in a pipeline of commands
+     * @param line of the command file
+     * @return command to run
+     */
+    public static YarnContainer fromCommandLine(String line) {
+        String remaining = line.trim();
+        List<String> inputPaths = Collections.emptyList();
+        ResourceProfile defaultProfile = ResourceProfile.getDefault();
+        int memory = defaultProfile.getMemory();
+        int vcores = defaultProfile.getVcores();
+        int priority = defaultProfile.getPriority();
+        ExecutionType executionType = defaultProfile.getExecutionType();
+        String id = null;
+        List<String> parents = Collections.emptyList();
+        while (remaining.startsWith("@")) {
+            int endOfOption = remaining.indexOf(' ');
+            String option = endOfOption == -1 ? remaining : remaining.substring(0, endOfOption);
+            int equal = option.indexOf('=');
+            if (equal == -1) {
+                break;
+            }
+            String key = option.substring(1, equal);
+            String value = option.substring(equal + 1);
+            try {
+                switch (key) {
+                    case "inputs":
+                        inputPaths = Arrays.asList(value.split(","));
+                        break;
+                    case "memory":
+                        memory = Integer.parseInt(value);
+                        break;
+                    case "vcores":
+                        vcores = Integer.parseInt(value);
+                        break;
+                    case "priority":
+                        priority = Integer.parseInt(value);
+                        break;
+                    case "execution":
+                        executionType = ExecutionType.valueOf(value.toUpperCase());
+                        break;
+                    case "id":
+                        id = value;
+                        break;
+                    case "after":
+                        parents = Arrays.asList(value.split(","));
+                        break;
+                    default:
+                        logger.warn("Unknown option: " + key + " for command: " + line);
+                }
+            } catch (IllegalArgumentException e) {
+                logger.warn("Invalid value of option: " + key + " for command: " + line + ", it is ignored");
+            }
+            remaining = endOfOption == -1 ? "" : remaining.substring(endOfOption + 1).trim();
+        }
+        YarnContainer container = new YarnContainer(remaining);
+        container.setInputPaths(inputPaths);
+        container.setProfile(new ResourceProfile(memory, vcores, priority, executionType));
+        container.setId(id);
+        container.setParents(parents);
+        return container;
     }
 
-    public YarnContainer(String command, Long containerId) {
+    public YarnContainer(String command, long containerId) {
         this.command = command;
         this.successful = false;
         this.tries = 1;
@@ -56,7 +161,7 @@ public class YarnContainer {
         FINISHED
     }
 
-    public void setContainerRunning(Long containerId) {
+    public void setContainerRunning(long containerId) {
         this.containerId = containerId;
         this.finalState = state.RUNNING;
         this.tries++;
@@ -67,42 +172,4 @@ public class YarnContainer {
         this.finalState = state.TO_RUN;
     }
 
-    public static YarnContainer findContainerUsingContainerId(List<YarnContainer> containers, Long id) {
-        for(YarnContainer yarnContainer: containers) {
-            if(yarnContainer.containerId.equals(id)) {
-                return yarnContainer;
-            }
-        }
-        return null;
-    }
-
-    public static YarnContainer findOneAvailableCommandToLaunch(List<YarnContainer> containers) {
-        for(YarnContainer container: containers) {
-            if(container.finalState == state.TO_RUN) {
-                return container;
-            }
-        }
-        return null;
-    }
-
-    public static Integer getNumberOfCompletedContainers(List<YarnContainer> containers) {
-        int containersCompleted = 0;
-        for(YarnContainer container: containers) {
-            if(container.finalState==state.FINISHED){
-                containersCompleted++;
-            }
-        }
-        return containersCompleted;
-    }
-
-    public static boolean checkAllContainersAreSuccessful(List<YarnContainer> containers) {
-        for(YarnContainer container: containers) {
-            if(!container.isSuccessful()) {
-                return false;
-            }
-        }
-        return true;
-    }
-
 }
-
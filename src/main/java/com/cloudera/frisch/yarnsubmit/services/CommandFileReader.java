@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.services;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads commands from a file lazily, one per line, skipping blank lines
+ */
+public class CommandFileReader implements Iterator<String>, Closeable {
+
+    private final BufferedReader reader;
+    private String nextCommand;
+    private boolean endOfFile = false;
+
+    public CommandFileReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextCommand == null && !endOfFile) {
+            try {
+                String line = reader.readLine();
+                if (line == null) {
+                    endOfFile = true;
+                } else if (!line.trim().isEmpty()) {
+                    nextCommand = line;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read commands file", e);
+            }
+        }
+        return nextCommand != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String command = nextCommand;
+        nextCommand = null;
+        return command;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
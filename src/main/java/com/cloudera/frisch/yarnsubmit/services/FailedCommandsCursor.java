@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.services;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Position of the next failed command to get from the AM of an application, for the attempt of the AM it was got from:
+ * each attempt lists its own failed commands, so the position starts again from 0 when the attempt changes
+ */
+class FailedCommandsCursor {
+
+    private int attempt = 0;
+    private int next = 0;
+
+    int getNext() {
+        return next;
+    }
+
+    /**
+     * Take into account a page of failed commands served by the AM from position getNext()
+     * @param page served by the AM: attempt, total, next and failedCommands
+     * @param failedCommands to which new failed commands of the page are added
+     * @return true if another page must be asked for, from the new getNext()
+     */
+    @SuppressWarnings("unchecked")
+    boolean accept(Map<String, Object> page, List<Map<String, Object>> failedCommands) {
+        int pageAttempt = ((Number) page.get("attempt")).intValue();
+        int total = ((Number) page.get("total")).intValue();
+        int pageNext = ((Number) page.get("next")).intValue();
+        // Position got from a previous attempt: page was asked for from a wrong position, so it is asked again from 0
+        if (pageAttempt != attempt || pageNext > total) {
+            attempt = pageAttempt;
+            if (next > 0) {
+                next = 0;
+                return true;
+            }
+        }
+        List<Map<String, Object>> commands = (List<Map<String, Object>>) page.get("failedCommands");
+        failedCommands.addAll(commands);
+        next = pageNext;
+        return !commands.isEmpty() && next < total;
+    }
+}
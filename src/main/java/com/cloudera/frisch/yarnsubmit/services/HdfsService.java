@@ -18,19 +18,40 @@
 package com.cloudera.frisch.yarnsubmit.services;
 
 
+import com.cloudera.frisch.yarnsubmit.Utils;
+import com.cloudera.frisch.yarnsubmit.object.DataLocality;
 import lombok.Getter;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.log4j.Logger;
 
 import java.io.*;
 import java.net.URI;
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Provides an HDFS client based on configuration file of the platform
@@ -40,6 +61,8 @@ public class HdfsService {
 
     private static final Logger logger = Logger.getLogger(HdfsService.class);
 
+    private static final long CANCEL_TIMEOUT_SECONDS = 30;
+
     @Getter
     private FileSystem fileSystem;
 
@@ -51,17 +74,111 @@ public class HdfsService {
         }
     }
 
-    public void copyFileToHDFS(String inpuPath, String outputPath, Configuration conf) {
-        try(OutputStream os = fileSystem.create(new Path(outputPath))) {
-            InputStream is = new BufferedInputStream(new FileInputStream(inpuPath));
-            IOUtils.copyBytes(is, os, conf);
-            os.flush();
-            logger.info("Copied file: " + inpuPath + " to hdfs output: " + outputPath);
+    /**
+     * Copy a local file to HDFS
+     * @param inpuPath local file path
+     * @param outputPath HDFS file path
+     * @param bufferSize size in bytes of the buffer used to copy
+     * @return number of bytes copied
+     * @throws IOException if the file could not be copied (partially copied file is then deleted)
+     */
+    public long copyFileToHDFS(String inpuPath, String outputPath, int bufferSize) throws IOException {
+        long start = System.currentTimeMillis();
+        try(InputStream is = new FileInputStream(inpuPath);
+            OutputStream os = fileSystem.create(new Path(outputPath), true, bufferSize)) {
+            IOUtils.copyBytes(is, os, bufferSize, false);
+        } catch (IOException e) {
+            deletePartialFile(outputPath);
+            throw new IOException("Could not copy file " + inpuPath +" to HDFS : " + outputPath, e);
+        }
+        long length = new File(inpuPath).length();
+        logger.info("Copied file: " + inpuPath + " to hdfs output: " + outputPath + " " + getThroughput(length, System.currentTimeMillis() - start));
+        return length;
+    }
+
+    private void deletePartialFile(String path) {
+        try {
+            if (fileSystem.delete(new Path(path), false)) {
+                logger.info("Deleted partially copied file: " + path);
+            }
         } catch (IOException e) {
-            logger.error("Could not copy file " + inpuPath +" to HDFS : " + outputPath + " due to error: ", e);
+            logger.warn("Could not delete partially copied file: " + path + " due to error: ", e);
+        }
+    }
+
+    /**
+     * Copy local files to an HDFS directory in parallel, the first failure cancels all other copies
+     * @param inputPaths local file paths
+     * @param outputDirectory HDFS directory where files are copied (keeping their name)
+     * @param threads maximum number of files copied at the same time
+     * @param bufferSize size in bytes of the buffer used to copy each file
+     * @throws IOException if one of the files could not be copied
+     */
+    public void copyFilesToHDFS(List<String> inputPaths, String outputDirectory, int threads, int bufferSize) throws IOException {
+        long start = System.currentTimeMillis();
+        List<Callable<Long>> copies = new ArrayList<>();
+        for (String inputPath : inputPaths) {
+            copies.add(() -> copyFileToHDFS(inputPath, outputDirectory + Utils.getFileNameFromPath(inputPath), bufferSize));
+        }
+        long totalLength = runInParallel(copies, threads).stream().mapToLong(Long::longValue).sum();
+        logger.info("Copied " + inputPaths.size() + " files to hdfs directory: " + outputDirectory + " " +
+                getThroughput(totalLength, System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Run all tasks with a bounded pool of threads, tasks are collected as soon as they complete,
+     * so the first failure cancels (and interrupts) all other tasks, whatever their order
+     * @param tasks to run
+     * @param threads maximum number of tasks running at the same time
+     * @return results of tasks, in the same order
+     * @throws IOException if one of the tasks failed
+     */
+    static <T> List<T> runInParallel(List<Callable<T>> tasks, int threads) throws IOException {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executorService);
+        List<Future<T>> futures = new ArrayList<>();
+        tasks.forEach(task -> futures.add(completionService.submit(task)));
+        executorService.shutdown();
+
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                completionService.take().get();
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            cancelAll(executorService, futures);
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            cancelAll(executorService, futures);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running tasks on HDFS", e);
+        }
+    }
+
+    /**
+     * Cancel all tasks and wait for running ones to stop, so that they cleaned what they partially wrote before returning
+     */
+    private static <T> void cancelAll(ExecutorService executorService, List<Future<T>> futures) {
+        futures.forEach(future -> future.cancel(true));
+        executorService.shutdownNow();
+        try {
+            if (!executorService.awaitTermination(CANCEL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Some tasks on HDFS did not stop within " + CANCEL_TIMEOUT_SECONDS + "s after being cancelled");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    private static String getThroughput(long length, long timeTakenMs) {
+        return String.format("(%.2f MB in %d ms, %.2f MB/s)", length / 1048576d, timeTakenMs,
+                length / 1048576d / Math.max(timeTakenMs, 1L) * 1000d);
+    }
+
     public void cleanDirectory(String path) {
         try {
             fileSystem.delete(new Path(path), true);
@@ -72,6 +189,49 @@ public class HdfsService {
     }
 
 
+    /**
+     * Write lines to a file in HDFS, overwriting it if it exists
+     * @param path of the file in HDFS
+     * @param lines to write
+     * @throws IOException
+     */
+    public void writeFile(String path, List<String> lines) throws IOException {
+        try (Writer writer = new OutputStreamWriter(fileSystem.create(new Path(path), true), StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Open a file in HDFS to read its lines lazily,
+     * file is decompressed on the fly if its extension matches a compression codec (.gz, .bz2, .zst...)
+     * @param path of the file in HDFS
+     * @return reader of the file content
+     * @throws IOException
+     */
+    public BufferedReader openFile(String path) throws IOException {
+        Path filePath = new Path(path);
+        InputStream inputStream = fileSystem.open(filePath);
+        CompressionCodec codec = new CompressionCodecFactory(fileSystem.getConf()).getCodec(filePath);
+        if (codec != null) {
+            logger.info("File: " + path + " will be decompressed using codec: " + codec.getClass().getSimpleName());
+            inputStream = codec.createInputStream(inputStream);
+        }
+        return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read commands from a file in HDFS lazily, one per line
+     * @param path of the file in HDFS
+     * @return commands of the file
+     * @throws IOException
+     */
+    public CommandFileReader readCommandFile(String path) throws IOException {
+        return new CommandFileReader(openFile(path));
+    }
+
     /**
      * Read a file in HDFS and return its content (in one shot)
      * => BE CAREFUL TO THE SIZE OF THE FILE !!!
@@ -79,21 +239,13 @@ public class HdfsService {
      * @return its content as a full String
      */
     public String readFile(String path) {
-        StringBuilder read = new StringBuilder(10000);
+        ByteArrayOutputStream read = new ByteArrayOutputStream(10000);
         try(FSDataInputStream fsDataInputStream = fileSystem.open(new Path(path))) {
-            int length = 1000;
-            int numberOfBytesRead;
-            byte[] byteArray = new byte[length];
-            do {
-                numberOfBytesRead = fsDataInputStream.read(byteArray);
-                if(numberOfBytesRead != -1) {
-                    read.append(new String(byteArray));
-                }
-            } while (numberOfBytesRead != -1);
+            IOUtils.copyBytes(fsDataInputStream, read, 4096, false);
         } catch (Exception e) {
             logger.error("Can not read file:" + path + " with error : ", e);
         }
-        return read.toString();
+        return new String(read.toByteArray(), StandardCharsets.UTF_8);
     }
 
     /**
@@ -102,7 +254,49 @@ public class HdfsService {
      * @return its content as a full String
      */
     public List<String> readFileAsList(String path) {
-        return Arrays.asList(readFile(path).split("\\n"));
+        List<String> lines = new ArrayList<>();
+        try(CommandFileReader commandFileReader = readCommandFile(path)) {
+            commandFileReader.forEachRemaining(lines::add);
+        } catch (Exception e) {
+            logger.error("Can not read file:" + path + " with error : ", e);
+        }
+        return lines;
+    }
+
+    /**
+     * Find nodes holding most bytes of given files (or directories, read recursively), and their racks
+     * @param paths of files in HDFS
+     * @param maxNodes maximum number of nodes to return
+     * @return nodes sorted by bytes they hold, and their racks
+     * @throws IOException
+     */
+    public DataLocality getDataLocality(List<String> paths, int maxNodes) throws IOException {
+        Map<String, Long> bytesPerNode = new HashMap<>();
+        Map<String, String> rackOfNode = new HashMap<>();
+        for (String path : paths) {
+            RemoteIterator<LocatedFileStatus> files = fileSystem.listFiles(new Path(path), true);
+            while (files.hasNext()) {
+                for (BlockLocation block : files.next().getBlockLocations()) {
+                    String[] hosts = block.getHosts();
+                    String[] topologyPaths = block.getTopologyPaths();
+                    for (int i = 0; i < hosts.length; i++) {
+                        bytesPerNode.merge(hosts[i], block.getLength(), Long::sum);
+                        // Topology path is /rack/host:port
+                        if (i < topologyPaths.length && topologyPaths[i].lastIndexOf('/') > 0) {
+                            rackOfNode.put(hosts[i], topologyPaths[i].substring(0, topologyPaths[i].lastIndexOf('/')));
+                        }
+                    }
+                }
+            }
+        }
+        List<String> nodes = bytesPerNode.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(maxNodes)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        Set<String> racks = new LinkedHashSet<>();
+        nodes.stream().filter(rackOfNode::containsKey).forEach(node -> racks.add(rackOfNode.get(node)));
+        return new DataLocality(nodes, new ArrayList<>(racks));
     }
 
 }
@@ -22,6 +22,8 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.security.Credentials;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.yarn.security.AMRMTokenIdentifier;
 import org.apache.log4j.Logger;
 
 import java.io.ByteArrayOutputStream;
@@ -29,6 +31,10 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.security.PrivilegedExceptionAction;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Collection of functions Kerberos related
@@ -39,6 +45,14 @@ public class KerberosService {
 
     private static final Logger logger = Logger.getLogger(KerberosService.class);
 
+    // Tokens are renewed when this ratio of their remaining lifetime has elapsed
+    private static final double TOKEN_RENEWAL_RATIO = 0.75;
+    private static final long TOKEN_RENEWAL_RETRY_INTERVAL = 60000L;
+
+    private static ScheduledExecutorService tokenRenewalExecutor;
+    // Serialized tokens kept by the token renewal, so that containers do not ask for tokens at each launch
+    private static volatile ByteBuffer cachedTokens;
+
     /**
      * Login to kerberos using a given user and its associated keytab
      * @param kerberosUser is the kerberos user
@@ -64,23 +78,120 @@ public class KerberosService {
      * @return all the tokens in a form of a byteBuffer (required by YARN API)
      */
     public static ByteBuffer getTokensFromUserLogged(Configuration conf) {
+        ByteBuffer tokens = cachedTokens;
+        if (tokens != null) {
+            return tokens.duplicate();
+        }
         ByteBuffer byteBuffer = null;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dataOutputStream = new DataOutputStream(baos);
         try {
             Credentials credentials = UserGroupInformation.getLoginUser().getCredentials();
             FileSystem fileSystem = FileSystem.get(URI.create(conf.get(HdfsClientConfigKeys.DFS_NAMESERVICES)), conf);
             fileSystem.addDelegationTokens("", credentials);
-
-            credentials.writeTokenStorageToStream(dataOutputStream);
-            dataOutputStream.flush();
-            byteBuffer = ByteBuffer.wrap(baos.toByteArray());
+            byteBuffer = serializeTokens(credentials);
         } catch (IOException e) {
             logger.info("Can not get any tokens due to error, ", e);
         }
         return byteBuffer;
     }
 
+    /**
+     * Start a background renewal of HDFS tokens: at each renewal, a new login is made from the keytab,
+     * new HDFS tokens are obtained and added to the current user (so the running AM uses them),
+     * and they are cached for containers launched afterwards.
+     * Next renewal is scheduled ahead of tokens expiry, and at most after maxRenewalInterval
+     * @param kerberosUser is the kerberos user
+     * @param pathToKeytab path to the keytab associated with the user
+     * @param conf Hadoop configuration
+     * @param maxRenewalInterval maximum time in ms between two renewals
+     * @param onTokensRenewed called after each successful renewal
+     */
+    public static synchronized void startTokenRenewal(String kerberosUser, String pathToKeytab, Configuration conf,
+                                                      long maxRenewalInterval, Runnable onTokensRenewed) {
+        if (tokenRenewalExecutor != null) {
+            logger.warn("Token renewal is already started");
+            return;
+        }
+        tokenRenewalExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "token-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewTokens(kerberosUser, pathToKeytab, conf, maxRenewalInterval, onTokensRenewed);
+    }
+
+    public static synchronized void stopTokenRenewal() {
+        if (tokenRenewalExecutor != null) {
+            tokenRenewalExecutor.shutdownNow();
+            tokenRenewalExecutor = null;
+        }
+    }
+
+    private static void renewTokens(String kerberosUser, String pathToKeytab, Configuration conf,
+                                    long maxRenewalInterval, Runnable onTokensRenewed) {
+        long nextRenewal = TOKEN_RENEWAL_RETRY_INTERVAL;
+        try {
+            UserGroupInformation keytabUser = UserGroupInformation.loginUserFromKeytabAndReturnUGI(kerberosUser, pathToKeytab);
+            Credentials newCredentials = new Credentials();
+            long expiration = keytabUser.doAs((PrivilegedExceptionAction<Long>) () -> {
+                try (FileSystem fileSystem = FileSystem.newInstance(URI.create(conf.get(HdfsClientConfigKeys.DFS_NAMESERVICES)), conf)) {
+                    fileSystem.addDelegationTokens(keytabUser.getShortUserName(), newCredentials);
+                }
+                long firstExpiration = Long.MAX_VALUE;
+                for (Token<?> token : newCredentials.getAllTokens()) {
+                    try {
+                        firstExpiration = Math.min(firstExpiration, token.renew(conf));
+                    } catch (Exception e) {
+                        logger.debug("Could not get expiration of token: " + token + " due to error: ", e);
+                    }
+                }
+                return firstExpiration;
+            });
+
+            // Publish new tokens to running AM and cache them for containers
+            UserGroupInformation currentUser = UserGroupInformation.getCurrentUser();
+            currentUser.addCredentials(newCredentials);
+            cachedTokens = serializeTokens(currentUser.getCredentials());
+            logger.info("Renewed " + newCredentials.numberOfTokens() + " tokens for user: " + kerberosUser);
+
+            nextRenewal = Math.min(maxRenewalInterval,
+                    Math.max(TOKEN_RENEWAL_RETRY_INTERVAL, (long) ((expiration - System.currentTimeMillis()) * TOKEN_RENEWAL_RATIO)));
+            if (onTokensRenewed != null) {
+                onTokensRenewed.run();
+            }
+        } catch (Exception e) {
+            logger.error("Could not renew tokens, will retry in " + nextRenewal + "ms due to error: ", e);
+        }
+
+        synchronized (KerberosService.class) {
+            if (tokenRenewalExecutor != null) {
+                logger.info("Next renewal of tokens in " + nextRenewal + "ms");
+                tokenRenewalExecutor.schedule(() -> renewTokens(kerberosUser, pathToKeytab, conf, maxRenewalInterval, onTokensRenewed),
+                        nextRenewal, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Serialize all tokens except the AM-RM one, that must not be passed to containers
+     * @param credentials to serialize
+     * @return all the tokens in a form of a byteBuffer (required by YARN API)
+     * @throws IOException
+     */
+    private static ByteBuffer serializeTokens(Credentials credentials) throws IOException {
+        Credentials containerCredentials = new Credentials();
+        for (Token<?> token : credentials.getAllTokens()) {
+            if (!AMRMTokenIdentifier.KIND_NAME.equals(token.getKind())) {
+                containerCredentials.addToken(token.getService(), token);
+            }
+        }
+        credentials.getAllSecretKeys().forEach(alias -> containerCredentials.addSecretKey(alias, credentials.getSecretKey(alias)));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(baos);
+        containerCredentials.writeTokenStorageToStream(dataOutputStream);
+        dataOutputStream.flush();
+        return ByteBuffer.wrap(baos.toByteArray());
+    }
+
     /**
      * List all kerberos tokens available for logged in user
      */
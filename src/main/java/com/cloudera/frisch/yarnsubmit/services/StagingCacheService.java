@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.services;
+
+import com.cloudera.frisch.yarnsubmit.Utils;
+import lombok.Getter;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.URL;
+import org.apache.hadoop.yarn.client.api.SharedCacheClient;
+import org.apache.log4j.Logger;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Stages files to HDFS in a directory addressed by their content (SHA-256 checksum),
+ * so that an unchanged file is never uploaded again and keeps the same path and timestamp between submissions:
+ * NMs then reuse what they already localized instead of downloading it again.
+ * Files are readable only by their owner, unless the cache is public to be shared between users.
+ * Nothing is ever evicted from the cache.
+ * If enabled, YARN shared cache is looked up first (files are only used from it, never uploaded to it).
+ */
+public class StagingCacheService {
+
+    private static final Logger logger = Logger.getLogger(StagingCacheService.class);
+
+    // Files of a public cache are PUBLIC resources for YARN, so they must be readable by everyone
+    private static final FsPermission PUBLIC_DIRECTORY_PERMISSION = new FsPermission((short) 0755);
+    private static final FsPermission PUBLIC_FILE_PERMISSION = new FsPermission((short) 0644);
+    // Files of a private cache are PRIVATE resources for YARN, localized for their owner only
+    private static final FsPermission PRIVATE_DIRECTORY_PERMISSION = new FsPermission((short) 0700);
+    private static final FsPermission PRIVATE_FILE_PERMISSION = new FsPermission((short) 0600);
+
+    private static final String DEFAULT_CACHE_DIRECTORY = ".yarnsubmit/cache/";
+
+    private final HdfsService hdfsService;
+    @Getter
+    private final String cacheDirectory;
+    private final FsPermission directoryPermission;
+    private final FsPermission filePermission;
+    private SharedCacheClient sharedCacheClient;
+
+    /**
+     * @param hdfsService
+     * @param cacheDirectory HDFS path of the cache, or empty to use a cache in HDFS home directory of the user
+     * @param publicCache true to make cached files readable by everyone, so that other users can share the cache
+     */
+    public StagingCacheService(HdfsService hdfsService, String cacheDirectory, boolean publicCache) {
+        this.hdfsService = hdfsService;
+        if (cacheDirectory == null || cacheDirectory.isEmpty()) {
+            cacheDirectory = hdfsService.getFileSystem().getHomeDirectory() + "/" + DEFAULT_CACHE_DIRECTORY;
+        }
+        this.cacheDirectory = cacheDirectory.endsWith("/") ? cacheDirectory : cacheDirectory + "/";
+        this.directoryPermission = publicCache ? PUBLIC_DIRECTORY_PERMISSION : PRIVATE_DIRECTORY_PERMISSION;
+        this.filePermission = publicCache ? PUBLIC_FILE_PERMISSION : PRIVATE_FILE_PERMISSION;
+    }
+
+    public void createSharedCacheClient(Configuration conf) {
+        this.sharedCacheClient = SharedCacheClient.createSharedCacheClient();
+        sharedCacheClient.init(conf);
+        sharedCacheClient.start();
+    }
+
+    /**
+     * Stage all files to the cache, uploading only those not already there
+     * @param inputPaths local file paths
+     * @param applicationId application using these files (required by shared cache)
+     * @param threads maximum number of files staged at the same time
+     * @param bufferSize size in bytes of the buffer used to copy each file
+     * @return HDFS paths of the files, in the same order
+     * @throws IOException if one of the files could not be staged
+     */
+    public List<String> stageFiles(List<String> inputPaths, ApplicationId applicationId, int threads, int bufferSize) throws IOException {
+        List<Callable<String>> stagings = new ArrayList<>();
+        for (String inputPath : inputPaths) {
+            stagings.add(() -> stageFile(inputPath, applicationId, bufferSize));
+        }
+        return HdfsService.runInParallel(stagings, threads);
+    }
+
+    private String stageFile(String inputPath, ApplicationId applicationId, int bufferSize) throws IOException {
+        String checksum;
+        try (InputStream is = new FileInputStream(inputPath)) {
+            checksum = DigestUtils.sha256Hex(is);
+        }
+        String fileName = Utils.getFileNameFromPath(inputPath);
+
+        String sharedCachePath = useSharedCache(applicationId, checksum);
+        if (sharedCachePath != null) {
+            logger.info("File: " + inputPath + " found in YARN shared cache: " + sharedCachePath);
+            return sharedCachePath;
+        }
+
+        FileSystem fileSystem = hdfsService.getFileSystem();
+        Path cachedDirectory = new Path(cacheDirectory + checksum);
+        Path cachedFile = new Path(cachedDirectory, fileName);
+        if (fileSystem.exists(cachedFile)) {
+            logger.info("File: " + inputPath + " already staged in cache: " + cachedFile);
+            return cachedFile.toString();
+        }
+
+        // Copy to a temporary file first, so that a concurrent submission never uses a partially copied file
+        fileSystem.mkdirs(cachedDirectory, directoryPermission);
+        Path temporaryFile = new Path(cachedDirectory, "." + fileName + "." + UUID.randomUUID() + ".tmp");
+        hdfsService.copyFileToHDFS(inputPath, temporaryFile.toString(), bufferSize);
+        fileSystem.setPermission(temporaryFile, filePermission);
+        if (!fileSystem.rename(temporaryFile, cachedFile)) {
+            logger.info("File: " + cachedFile + " has been staged concurrently, hence using it");
+            fileSystem.delete(temporaryFile, false);
+        }
+        logger.info("File: " + inputPath + " staged in cache: " + cachedFile);
+        return cachedFile.toString();
+    }
+
+    private String useSharedCache(ApplicationId applicationId, String checksum) {
+        if (sharedCacheClient == null) {
+            return null;
+        }
+        try {
+            URL url = sharedCacheClient.use(applicationId, checksum);
+            return url == null ? null : url.toPath().toString();
+        } catch (Exception e) {
+            logger.warn("Could not use YARN shared cache, will use HDFS cache, due to error: ", e);
+            return null;
+        }
+    }
+
+    public void close() {
+        if (sharedCacheClient != null) {
+            sharedCacheClient.stop();
+        }
+    }
+
+}
@@ -17,68 +17,431 @@
  */
 package com.cloudera.frisch.yarnsubmit.services;
 
+import com.cloudera.frisch.yarnsubmit.config.Parameters;
+import com.cloudera.frisch.yarnsubmit.object.DataLocality;
+import com.cloudera.frisch.yarnsubmit.object.LatencyHistogram;
+import com.cloudera.frisch.yarnsubmit.object.ResourceProfile;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
 import lombok.Getter;
-import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.yarn.api.ApplicationConstants;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ApplicationResourceUsageReport;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.ExecutionTypeRequest;
 import org.apache.hadoop.yarn.api.records.Priority;
 import org.apache.hadoop.yarn.api.records.Resource;
 import org.apache.hadoop.yarn.client.api.AMRMClient;
-import org.apache.hadoop.yarn.client.api.NMClient;
+import org.apache.hadoop.yarn.client.api.YarnClient;
+import org.apache.hadoop.yarn.client.api.async.AMRMClientAsync;
+import org.apache.hadoop.yarn.client.api.async.NMClientAsync;
+import org.apache.hadoop.yarn.exceptions.YarnException;
+import org.apache.hadoop.yarn.util.RackResolver;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class YarnAmService extends YarnService {
 
     @Getter
-    AMRMClient<AMRMClient.ContainerRequest> rmClient;
+    AMRMClientAsync<AMRMClient.ContainerRequest> rmClient;
+    @Getter
+    NMClientAsync nmClient;
+
+    // Each resource profile gets its own allocation request ids, so that an allocated container tells which profile it was asked for.
+    // Asks restricted to nodes holding data and asks relaxed to any node are told apart too, as RM client refuses to mix both
+    private static final long REQUEST_IDS_PER_PROFILE = 2L;
+    private static final long STRICT_LOCALITY_REQUEST_ID = 1L;
+    private final List<ResourceProfile> profiles = new ArrayList<>();
+
+    // Ledger of asks sent to RM and not yet fulfilled by an allocated container, by resource profile
+    private final Map<ResourceProfile, Deque<AMRMClient.ContainerRequest>> outstandingAsks = new LinkedHashMap<>();
+    // Asks close to data of a command, by command (which must get its own ask)
+    private final Map<YarnContainer, LocalityAsk> localityAsks = new LinkedHashMap<>();
+    // Time asks were sent, to know how long they wait before being allocated
+    private final Map<AMRMClient.ContainerRequest, Long> asksSentAt = new HashMap<>();
+    private double averageAllocationLatency = 0;
+    @Getter
+    private final LatencyHistogram allocationLatencies = new LatencyHistogram();
+    @Getter
+    private int allocatedContainers = 0;
+    // Containers allocated and not yet completed or released, with the node they are on, by container id
+    private final Map<Long, String> heldContainers = new HashMap<>();
     @Getter
-    NMClient nmClient;
+    private int releasedContainers = 0;
 
 
     public YarnAmService() {
         super();
     }
 
-    // TODO: Be able to handle renewal of tokens in AM (see: https://hadoop.apache.org/docs/current/hadoop-yarn/hadoop-yarn-site/YarnApplicationSecurity.html )
-
-    // TODO: Make use of Async Client & use threads to handle them in the background (see: https://hadoop.apache.org/docs/current/hadoop-yarn/hadoop-yarn-site/WritingYarnApplications.html )
-
-    public void createAmAndRmclient() {
+    /**
+     * Instantiate asynchronous clients to RM and NM, all allocations, completions and container launches are then
+     * handled by the given callback handlers in the background (see: https://hadoop.apache.org/docs/current/hadoop-yarn/hadoop-yarn-site/WritingYarnApplications.html )
+     * @param heartbeatInterval time in ms between two heartbeats (allocate calls) to the RM
+     * @param rmCallbackHandler handler called on allocation, completion and errors coming from RM
+     * @param nmCallbackHandler handler called on start, stop and errors of containers coming from NMs
+     */
+    public void createAmAndRmclient(int heartbeatInterval, AMRMClientAsync.AbstractCallbackHandler rmCallbackHandler,
+                                    NMClientAsync.AbstractCallbackHandler nmCallbackHandler) {
         // Instantiate Resource Manager client that will be used to negotiate containers
-        /*
-        NOTE: It is possible to use more properly the API by creating a CallBackHandler and pass it to the client
-          AMRMClientAsync.CallbackHandler allocListener = new RMCallbackHandler();
-          rmClient = AMRMClientAsync.createAMRMClientAsync(1000, allocListener);
-        Hence, this needs to create a AbstractCallbackHandler by implementing it;
-         */
-        this.rmClient = AMRMClient.createAMRMClient();
+        this.rmClient = AMRMClientAsync.createAMRMClientAsync(heartbeatInterval, rmCallbackHandler);
         rmClient.init(conf);
         rmClient.start();
 
         // Instantiate Node Manager client that will be used to instantiate containers
-         /*
-        NOTE: It is possible to use more properly the API by creating a CallBackHandler and pass it to the client
-          NMClientAsync.createNMClientAsync() should be used and an AbstractCallbackHandler should be passed
-        Hence, this needs to create a AbstractCallbackHandler by implementing it;
-         */
-        this.nmClient = NMClient.createNMClient();
+        this.nmClient = NMClientAsync.createNMClientAsync(nmCallbackHandler);
         nmClient.init(conf);
         nmClient.start();
     }
 
-    // TODO: Check to set better parameters than default one
-    public void registerAmToYarn() {
+    /**
+     * @param host where the AM serves its state
+     * @param port where the AM serves its state
+     * @param trackingUrl of the AM, linked from RM UI
+     * @return containers of previous attempts of the AM still running, kept across attempts
+     */
+    public List<Container> registerAmToYarn(String host, int port, String trackingUrl) {
         try {
-            rmClient.registerApplicationMaster(NetUtils.getHostname(), 12345, "");
+            return rmClient.registerApplicationMaster(host, port, trackingUrl).getContainersFromPreviousAttempts();
         } catch (Exception e) {
             logger.error("Cannot Register Application Master: ", e);
             System.exit(1);
         }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return id of this attempt of the AM, from the id of its container
+     */
+    public int getAttemptId() {
+        return ContainerId.fromString(System.getenv(ApplicationConstants.Environment.CONTAINER_ID.name()))
+                .getApplicationAttemptId().getAttemptId();
+    }
+
+    /**
+     * @return id of the application of this AM, from the id of its container
+     */
+    public ApplicationId getApplicationId() {
+        return ContainerId.fromString(System.getenv(ApplicationConstants.Environment.CONTAINER_ID.name()))
+                .getApplicationAttemptId().getApplicationId();
     }
 
-    public AMRMClient.ContainerRequest setupContainerAskForRM(int memory, int vCores, int priority) {
-        AMRMClient.ContainerRequest request = new AMRMClient.ContainerRequest(Resource.newInstance(memory, vCores),
-                null, null, Priority.newInstance(priority));
+    public AMRMClient.ContainerRequest setupContainerAskForRM(ResourceProfile profile) {
+        AMRMClient.ContainerRequest request = AMRMClient.ContainerRequest.newBuilder()
+                .capability(Resource.newInstance(profile.getMemory(), profile.getVcores()))
+                .priority(Priority.newInstance(profile.getPriority()))
+                .allocationRequestId(getAllocationRequestId(profile, false))
+                .executionTypeRequest(getExecutionTypeRequest(profile))
+                .build();
         logger.info("Requested container ask: " + request.toString());
         return request;
     }
 
+    private synchronized long getAllocationRequestId(ResourceProfile profile, boolean strict) {
+        int index = profiles.indexOf(profile);
+        if (index == -1) {
+            profiles.add(profile);
+            index = profiles.size() - 1;
+        }
+        return index * REQUEST_IDS_PER_PROFILE + (strict ? STRICT_LOCALITY_REQUEST_ID : 0L);
+    }
+
+    /**
+     * Without enforcement, RM may allocate a container of another execution type than the one asked for
+     */
+    private static ExecutionTypeRequest getExecutionTypeRequest(ResourceProfile profile) {
+        return ExecutionTypeRequest.newInstance(profile.getExecutionType(), Parameters.APP_CONTAINER_ENFORCE_EXECUTION_TYPE);
+    }
+
+    /**
+     * @return resource profile a container was asked for, from its allocation request id
+     */
+    public synchronized ResourceProfile getProfileOfContainer(Container container) {
+        int index = (int) (container.getAllocationRequestId() / REQUEST_IDS_PER_PROFILE);
+        return index >= 0 && index < profiles.size() ? profiles.get(index) : ResourceProfile.getDefault();
+    }
+
+    /**
+     * Make outstanding asks to RM match the number of commands waiting for a container, for each resource profile:
+     * missing asks are sent and surplus ones are cancelled, so that no container is allocated for nothing
+     * @param pendingContainersByProfile number of commands waiting for a container by profile, profiles absent need none
+     */
+    public synchronized void reconcileAsks(Map<ResourceProfile, Integer> pendingContainersByProfile) {
+        for (ResourceProfile profile : new ArrayList<>(outstandingAsks.keySet())) {
+            if (!pendingContainersByProfile.containsKey(profile)) {
+                reconcileAsks(profile, 0);
+            }
+        }
+        pendingContainersByProfile.forEach(this::reconcileAsks);
+    }
+
+    /**
+     * Make outstanding asks to RM for a resource profile match the number of commands waiting for a container
+     * @param profile of containers to ask for
+     * @param pendingContainers number of commands waiting for a container
+     */
+    public synchronized void reconcileAsks(ResourceProfile profile, int pendingContainers) {
+        Deque<AMRMClient.ContainerRequest> asks = outstandingAsks.computeIfAbsent(profile, p -> new ArrayDeque<>());
+        while (asks.size() < pendingContainers) {
+            AMRMClient.ContainerRequest request = setupContainerAskForRM(profile);
+            rmClient.addContainerRequest(request);
+            asks.addLast(request);
+            asksSentAt.put(request, System.currentTimeMillis());
+        }
+        while (asks.size() > pendingContainers) {
+            AMRMClient.ContainerRequest request = asks.pollLast();
+            rmClient.removeContainerRequest(request);
+            asksSentAt.remove(request);
+            logger.info("Cancelled surplus container ask: " + request.toString());
+        }
+    }
+
+    /**
+     * Ask for a container close to data of a command, first on its nodes only if strict, then anywhere once relaxed
+     * @param container command needing a container
+     * @param locality nodes and racks holding data of the command
+     * @param strict true to only accept nodes holding data, until asks are relaxed
+     */
+    public synchronized void askForContainerCloseTo(YarnContainer container, DataLocality locality, boolean strict) {
+        cancelAskCloseTo(container);
+        ResourceProfile profile = container.getProfile();
+        AMRMClient.ContainerRequest.ContainerRequestBuilder builder = AMRMClient.ContainerRequest.newBuilder()
+                .capability(Resource.newInstance(profile.getMemory(), profile.getVcores()))
+                .priority(Priority.newInstance(profile.getPriority()))
+                .nodes(locality.getNodes().toArray(new String[0]))
+                .allocationRequestId(getAllocationRequestId(profile, strict))
+                .executionTypeRequest(getExecutionTypeRequest(profile));
+        if (strict) {
+            builder.relaxLocality(false);
+        } else {
+            builder.racks(locality.getRacks().toArray(new String[0])).relaxLocality(true);
+        }
+        AMRMClient.ContainerRequest request = builder.build();
+        rmClient.addContainerRequest(request);
+        localityAsks.put(container, new LocalityAsk(request, locality, strict, System.currentTimeMillis()));
+        logger.debug("Requested container ask close to data: " + request.toString());
+    }
+
+    /**
+     * Cancel ask made for a command, if any, as it does not need a container anymore
+     */
+    public synchronized void cancelAskCloseTo(YarnContainer container) {
+        LocalityAsk localityAsk = localityAsks.remove(container);
+        if (localityAsk != null) {
+            rmClient.removeContainerRequest(localityAsk.request);
+        }
+    }
+
+    /**
+     * Asks restricted to nodes holding data for too long are relaxed to any node (nodes holding data stay preferred)
+     * @param delay time in ms after which an ask is relaxed
+     */
+    public synchronized void relaxLocalityAsks(long delay) {
+        long now = System.currentTimeMillis();
+        localityAsks.entrySet().stream()
+                .filter(entry -> entry.getValue().strict && now - entry.getValue().sentAt >= delay)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList())
+                .forEach(container -> askForContainerCloseTo(container, localityAsks.get(container).locality, false));
+    }
+
+    public String getRackOfNode(String node) {
+        return RackResolver.resolve(node).getNetworkLocation();
+    }
+
+    public synchronized int getNumberOfLocalityAsks() {
+        return localityAsks.size();
+    }
+
+    public synchronized int getNumberOfLocalityAsks(ResourceProfile profile) {
+        return (int) localityAsks.keySet().stream().filter(container -> profile.equals(container.getProfile())).count();
+    }
+
+    /**
+     * An allocated container fulfills an outstanding ask of its resource profile, which is removed so that RM is not asked for it again:
+     * preferably an ask of a command whose data is on the node of the container, else on its rack, else the oldest one
+     * @param container allocated by RM
+     * @return command whose ask was fulfilled, or null if it was not an ask made for a command
+     */
+    public synchronized YarnContainer containerAllocated(Container container) {
+        heldContainers.put(container.getId().getContainerId(), container.getNodeId().getHost());
+        allocatedContainers++;
+        ResourceProfile profile = getProfileOfContainer(container);
+        boolean strict = container.getAllocationRequestId() % REQUEST_IDS_PER_PROFILE == STRICT_LOCALITY_REQUEST_ID;
+        String node = container.getNodeId().getHost();
+        YarnContainer owner = findLocalityAsk(profile, strict, ask -> ask.locality.isOnNode(node));
+        if (owner == null && !strict) {
+            String rack = getRackOfNode(node);
+            owner = findLocalityAsk(profile, false, ask -> ask.locality.isOnRack(rack));
+        }
+        if (owner == null && !strict) {
+            AMRMClient.ContainerRequest request = outstandingAsks.getOrDefault(profile, new ArrayDeque<>()).pollFirst();
+            if (request != null) {
+                rmClient.removeContainerRequest(request);
+                recordAllocationLatency(asksSentAt.remove(request));
+                return null;
+            }
+        }
+        if (owner == null) {
+            owner = findLocalityAsk(profile, strict, ask -> true);
+        }
+        if (owner == null) {
+            logger.debug("Container: " + container.getId() + " allocated while there was no outstanding ask");
+            return null;
+        }
+        recordAllocationLatency(localityAsks.get(owner).sentAt);
+        cancelAskCloseTo(owner);
+        return owner;
+    }
+
+    private void recordAllocationLatency(Long sentAt) {
+        if (sentAt != null) {
+            averageAllocationLatency = 0.8 * averageAllocationLatency + 0.2 * (System.currentTimeMillis() - sentAt);
+            allocationLatencies.record(System.currentTimeMillis() - sentAt);
+        }
+    }
+
+    /**
+     * @return time in ms asks currently wait before being allocated: average time of last allocations,
+     * or time the oldest outstanding ask has been waiting if longer
+     */
+    public synchronized long getAllocationLatency() {
+        long now = System.currentTimeMillis();
+        long oldestAsk = asksSentAt.values().stream().mapToLong(Long::longValue).min().orElse(now);
+        oldestAsk = Math.min(oldestAsk, localityAsks.values().stream().mapToLong(ask -> ask.sentAt).min().orElse(now));
+        return Math.max((long) averageAllocationLatency, now - oldestAsk);
+    }
+
+    /**
+     * @return number of containers of a profile fitting in resources still available to the application, as last reported by RM
+     */
+    public int getHeadroomContainers(ResourceProfile profile) {
+        Resource headroom = rmClient.getAvailableResources();
+        if (headroom == null || profile.getMemory() <= 0 || profile.getVcores() <= 0) {
+            return 0;
+        }
+        return (int) Math.min(headroom.getMemorySize() / profile.getMemory(), headroom.getVirtualCores() / profile.getVcores());
+    }
+
+    public int getClusterNodeCount() {
+        return rmClient.getClusterNodeCount();
+    }
+
+    /**
+     * A container of a previous attempt of the AM is now held by this attempt
+     */
+    public synchronized void adoptContainer(Container container) {
+        heldContainers.put(container.getId().getContainerId(), container.getNodeId().getHost());
+    }
+
+    /**
+     * A container held by the application completed
+     * @return node the container was on, or null if it was not held
+     */
+    public synchronized String containerCompleted(ContainerId containerId) {
+        return heldContainers.remove(containerId.getContainerId());
+    }
+
+    /**
+     * @return node a container held by the application is on, or null if it is not held
+     */
+    public synchronized String getNodeOfContainer(long containerId) {
+        return heldContainers.get(containerId);
+    }
+
+    /**
+     * Ask RM to not allocate containers on a node anymore
+     */
+    public void blacklistNode(String node) {
+        logger.info("Blacklisting node: " + node);
+        rmClient.updateBlacklist(Collections.singletonList(node), null);
+    }
+
+    /**
+     * Let RM allocate containers on a node blacklisted before
+     */
+    public void unblacklistNode(String node) {
+        logger.info("Removing node from blacklist: " + node);
+        rmClient.updateBlacklist(null, Collections.singletonList(node));
+    }
+
+    public synchronized int getNumberOfHeldContainers() {
+        return heldContainers.size();
+    }
+
+    private YarnContainer findLocalityAsk(ResourceProfile profile, boolean strict, Predicate<LocalityAsk> matching) {
+        for (Map.Entry<YarnContainer, LocalityAsk> entry : localityAsks.entrySet()) {
+            if (entry.getValue().strict == strict && profile.equals(entry.getKey().getProfile()) && matching.test(entry.getValue())) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Give back to RM an allocated container that will not be used
+     * @param containerId of the container allocated by RM
+     */
+    public synchronized void releaseContainer(ContainerId containerId) {
+        logger.info("Releasing unused container: " + containerId);
+        rmClient.releaseAssignedContainer(containerId);
+        heldContainers.remove(containerId.getContainerId());
+        releasedContainers++;
+    }
+
+    public synchronized int getNumberOfOutstandingAsks() {
+        return outstandingAsks.values().stream().mapToInt(Deque::size).sum() + localityAsks.size();
+    }
+
+    private static class LocalityAsk {
+        final AMRMClient.ContainerRequest request;
+        final DataLocality locality;
+        final boolean strict;
+        final long sentAt;
+
+        LocalityAsk(AMRMClient.ContainerRequest request, DataLocality locality, boolean strict, long sentAt) {
+            this.request = request;
+            this.locality = locality;
+            this.strict = strict;
+            this.sentAt = sentAt;
+        }
+    }
+
+    /**
+     * Ask RM for resources used by the application so far, with a client of its own as AM protocol does not report them
+     * @return resources used by the application, or null if RM could not be asked for them
+     */
+    public ApplicationResourceUsageReport getResourceUsage() {
+        YarnClient yarnClient = YarnClient.createYarnClient();
+        try {
+            yarnClient.init(conf);
+            yarnClient.start();
+            return yarnClient.getApplicationReport(getApplicationId()).getApplicationResourceUsageReport();
+        } catch (YarnException | IOException e) {
+            logger.warn("Could not get resources used by the application due to error: ", e);
+            return null;
+        } finally {
+            yarnClient.stop();
+        }
+    }
+
+    /**
+     * Stop clients to NM and RM, must be called once AM has been unregistered
+     */
+    public void stopClients() {
+        nmClient.stop();
+        rmClient.stop();
+    }
+
 
 }
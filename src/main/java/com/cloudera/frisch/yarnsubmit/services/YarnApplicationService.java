@@ -18,11 +18,34 @@
 package com.cloudera.frisch.yarnsubmit.services;
 
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Getter;
+import lombok.Setter;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.authentication.client.AuthenticatedURL;
+import org.apache.hadoop.security.authentication.client.AuthenticationException;
+import org.apache.hadoop.security.authentication.client.ConnectionConfigurator;
 import org.apache.hadoop.yarn.api.protocolrecords.GetNewApplicationResponse;
 import org.apache.hadoop.yarn.api.records.*;
 import org.apache.hadoop.yarn.client.api.YarnClient;
 import org.apache.hadoop.yarn.client.api.YarnClientApplication;
+import org.apache.hadoop.yarn.exceptions.YarnException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 
 /**
@@ -30,12 +53,29 @@ import org.apache.hadoop.yarn.client.api.YarnClientApplication;
  */
 public class YarnApplicationService extends YarnService {
 
+    // Time in ms to connect to an AM and to read its state
+    private static final int AM_STATUS_TIMEOUT = 5000;
+    // Time in ms spent at most at each check asking AMs for their failed commands, so that following state of applications is not held up
+    private static final long AM_FAILURES_TIME_BUDGET = 2000L;
+    // Time in ms before asking again an AM which could not be reached, doubled each time it still cannot be reached
+    private static final long UNREACHABLE_AM_RETRY_DELAY = 10000L;
+    private static final long UNREACHABLE_AM_MAX_RETRY_DELAY = 300000L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Applications whose AM could not be reached: delay before asking it again, and time from which it may be asked again
+    private final Map<ApplicationId, long[]> unreachableAms = new HashMap<>();
+    private final Map<ApplicationId, FailedCommandsCursor> failuresCursors = new HashMap<>();
+    // Application whose AM is asked first at next check, when time budget ran out before all AMs were asked
+    private ApplicationId nextApplicationToAsk;
+    // Authentication to RM web proxy, kept from one request to the next
+    private AuthenticatedURL.Token authToken = new AuthenticatedURL.Token();
+
     @Getter
     private YarnClient yarnClient;
+    // Application submitted, or followed after being submitted by another client
     @Getter
-    private YarnClientApplication yarnClientApplication;
-    @Getter
-    private ApplicationSubmissionContext applicationSubmissionContext;
+    @Setter
+    private ApplicationId applicationId;
 
     public YarnApplicationService() {
         super();
@@ -47,47 +87,167 @@ public class YarnApplicationService extends YarnService {
         yarnClient.start();
     }
 
-    public void createApplication() {
-        try {
-            yarnClientApplication = yarnClient.createApplication();
-            GetNewApplicationResponse appResponse = yarnClientApplication.getNewApplicationResponse();
-            logger.info("Application created successfully with ApplicationID: " + appResponse.getApplicationId());
-        } catch (Exception e) {
-            logger.error("An exception occured while trying to create the app", e);
-            System.exit(1);
-        }
+    /**
+     * Create a new application, without keeping it in this service, so that several applications can be created concurrently
+     */
+    public YarnClientApplication newApplication() throws YarnException, IOException {
+        YarnClientApplication application = yarnClient.createApplication();
+        GetNewApplicationResponse appResponse = application.getNewApplicationResponse();
+        logger.info("Application created successfully with ApplicationID: " + appResponse.getApplicationId());
+        return application;
     }
 
-    public void createSubmitContextOfApplication(String queue, int priority, int memory, int vcores, String appName, ContainerLaunchContext ctx) {
-        applicationSubmissionContext = yarnClientApplication.getApplicationSubmissionContext();
-        applicationSubmissionContext.setApplicationId(yarnClientApplication.getNewApplicationResponse().getApplicationId());
+    public static ApplicationSubmissionContext createSubmitContextOfApplication(YarnClientApplication application, String queue, int priority,
+                                                                                int memory, int vcores, String appName, int maxAttempts,
+                                                                                ContainerLaunchContext ctx) {
+        ApplicationSubmissionContext applicationSubmissionContext = application.getApplicationSubmissionContext();
+        applicationSubmissionContext.setApplicationId(application.getNewApplicationResponse().getApplicationId());
         applicationSubmissionContext.setApplicationName(appName);
         // Add the AM container to the submit context
         applicationSubmissionContext.setAMContainerSpec(ctx);
         applicationSubmissionContext.setQueue(queue);
         applicationSubmissionContext.setPriority(Priority.newInstance(priority));
         applicationSubmissionContext.setResource(Resource.newInstance(memory, vcores));
+        // A new attempt of the AM keeps containers still running and only runs again commands not finished
+        applicationSubmissionContext.setMaxAppAttempts(maxAttempts);
+        applicationSubmissionContext.setKeepContainersAcrossApplicationAttempts(true);
+        return applicationSubmissionContext;
     }
 
-    public void submitApplication() {
+    public void submitApplication(ApplicationSubmissionContext submissionContext) throws YarnException, IOException {
+        yarnClient.submitApplication(submissionContext);
+    }
+
+    public ApplicationReport getApplicationReport() {
+        return getApplicationReport(applicationId);
+    }
+
+    /**
+     * @return report of an application, or null if RM could not be reached or does not know it
+     */
+    public ApplicationReport getApplicationReport(ApplicationId applicationId) {
         try {
-            yarnClient.submitApplication(applicationSubmissionContext);
+            return yarnClient.getApplicationReport(applicationId);
         } catch (Exception e) {
-            logger.error("Cannot submit application due to failure", e);
-            System.exit(2);
+            logger.error("Cannot get app status from Yarn, for application: " + applicationId + " due to error: ", e);
         }
+        return null;
     }
 
-    public ApplicationReport getApplicationReport() {
+    /**
+     * Get reports of all applications with a tag in one call to RM
+     * @return reports of applications, or null if RM could not be reached
+     */
+    public List<ApplicationReport> getApplicationReportsWithTag(String tag) {
         try {
-            return yarnClient.getApplicationReport(yarnClientApplication.getNewApplicationResponse().getApplicationId());
+            return yarnClient.getApplications(null, null, Collections.singleton(tag));
         } catch (Exception e) {
-            logger.error("Cannot get app status from Yarn, for application: " +
-                    yarnClientApplication.getNewApplicationResponse().getApplicationId() + " due to error: ", e);
+            logger.error("Cannot get status of applications from Yarn, for tag: " + tag + " due to error: ", e);
         }
         return null;
     }
 
+    /**
+     * Get commands which failed for good since last call, as served by AMs of running applications, page after page
+     * (through RM web proxy, as the AM answers only it, authenticating with SPNEGO when the proxy asks for it).
+     * AMs are asked one after the other for a limited time at each call, those not asked being asked first at next call,
+     * and an AM which could not be reached is asked again after a delay, doubled each time it still cannot be reached
+     * @param applicationReports of applications followed, only running ones with an AM registered being asked
+     * @return failed commands with their exit code, tries and last lines of output, by application which has new ones
+     */
+    public Map<ApplicationId, List<Map<String, Object>>> getFailedCommands(Collection<ApplicationReport> applicationReports) {
+        List<ApplicationReport> reports = applicationReports.stream()
+                .filter(report -> report.getYarnApplicationState() == YarnApplicationState.RUNNING)
+                .filter(report -> report.getOriginalTrackingUrl() != null && report.getOriginalTrackingUrl().startsWith("http"))
+                .filter(report -> report.getTrackingUrl() != null && report.getTrackingUrl().startsWith("http"))
+                .sorted(Comparator.comparing(ApplicationReport::getApplicationId))
+                .collect(Collectors.toList());
+        Map<ApplicationId, List<Map<String, Object>>> failedCommands = new LinkedHashMap<>();
+        int first = 0;
+        while (nextApplicationToAsk != null && first < reports.size() && reports.get(first).getApplicationId().compareTo(nextApplicationToAsk) < 0) {
+            first++;
+        }
+        nextApplicationToAsk = null;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < reports.size(); i++) {
+            ApplicationReport report = reports.get((first + i) % reports.size());
+            if (System.currentTimeMillis() - start > AM_FAILURES_TIME_BUDGET) {
+                nextApplicationToAsk = report.getApplicationId();
+                break;
+            }
+            List<Map<String, Object>> failedCommandsOfApplication = getFailedCommands(report);
+            if (!failedCommandsOfApplication.isEmpty()) {
+                failedCommands.put(report.getApplicationId(), failedCommandsOfApplication);
+            }
+        }
+        return failedCommands;
+    }
+
+    private List<Map<String, Object>> getFailedCommands(ApplicationReport applicationReport) {
+        ApplicationId id = applicationReport.getApplicationId();
+        String trackingUrl = applicationReport.getTrackingUrl();
+        long[] unreachable = unreachableAms.get(id);
+        if (unreachable != null && System.currentTimeMillis() < unreachable[1]) {
+            return Collections.emptyList();
+        }
+        FailedCommandsCursor cursor = failuresCursors.computeIfAbsent(id, applicationId -> new FailedCommandsCursor());
+        List<Map<String, Object>> failedCommands = new ArrayList<>();
+        try {
+            boolean morePages = true;
+            while (morePages) {
+                morePages = cursor.accept(readJson(trackingUrl + "failures?since=" + cursor.getNext()), failedCommands);
+            }
+            if (unreachableAms.remove(id) != null) {
+                logger.info("AM of application: " + id + " can be reached again");
+            }
+        } catch (IOException | RuntimeException e) {
+            long retryDelay = unreachable == null ? UNREACHABLE_AM_RETRY_DELAY : Math.min(UNREACHABLE_AM_MAX_RETRY_DELAY, unreachable[0] * 2);
+            unreachableAms.put(id, new long[]{retryDelay, System.currentTimeMillis() + retryDelay});
+            // Authentication may have to be done again, as with another RM web proxy after a fail over
+            authToken = new AuthenticatedURL.Token();
+            if (unreachable == null) {
+                logger.warn("Could not get failed commands from AM of application: " + id + " at: " + trackingUrl +
+                        ", it will be asked again in " + retryDelay + "ms, due to error: " + e.getMessage());
+            } else {
+                logger.debug("AM of application: " + id + " still cannot be reached, it will be asked again in " + retryDelay +
+                        "ms, due to error: " + e.getMessage());
+            }
+        }
+        return failedCommands;
+    }
+
+    /**
+     * Read JSON served at a URL, authenticating with SPNEGO as the logged user when security is enabled
+     * (otherwise authenticating would cost more requests to RM web proxy, which does not check users)
+     */
+    private Map<String, Object> readJson(String url) throws IOException {
+        ConnectionConfigurator timeouts = connection -> {
+            connection.setConnectTimeout(AM_STATUS_TIMEOUT);
+            connection.setReadTimeout(AM_STATUS_TIMEOUT);
+            return connection;
+        };
+        try {
+            return UserGroupInformation.getCurrentUser().doAs((PrivilegedExceptionAction<Map<String, Object>>) () -> {
+                HttpURLConnection connection;
+                if (UserGroupInformation.isSecurityEnabled()) {
+                    try {
+                        connection = new AuthenticatedURL(null, timeouts).openConnection(new URL(url), authToken);
+                    } catch (AuthenticationException e) {
+                        throw new IOException("Could not authenticate to: " + url, e);
+                    }
+                } else {
+                    connection = timeouts.configure((HttpURLConnection) new URL(url).openConnection());
+                }
+                try (InputStream in = connection.getInputStream()) {
+                    return objectMapper.readValue(in, new TypeReference<Map<String, Object>>() {});
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading: " + url, e);
+        }
+    }
+
     public Boolean applicatonEnded(ApplicationReport applicationReport) {
         YarnApplicationState state = applicationReport.getYarnApplicationState();
         return state.equals(YarnApplicationState.FINISHED) ||
@@ -25,6 +25,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.yarn.api.ApplicationConstants;
 import org.apache.hadoop.yarn.api.records.*;
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
@@ -33,7 +34,9 @@ import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -48,20 +51,35 @@ public class YarnService {
     @Getter
     YarnConfiguration conf;
 
+    // Parts of the container context shared by all containers, built once by prepareContainerContext()
+    private Map<String, LocalResource> containerLocalResources;
+    private Map<String, String> containerEnvironment;
+    private volatile ByteBuffer containerTokens;
+
     /**
      * Instantiate a Yarn Configuration fully setup
      *
      * @return
      */
     YarnService() {
-        this.conf = new YarnConfiguration();
-        this.conf.addResource(new Path(Parameters.CORE_SITE));
-        this.conf.addResource(new Path(Parameters.HDFS_SITE));
-        this.conf.addResource(new Path(Parameters.YARN_SITE));
+        this.conf = createConfiguration();
         System.setProperty("HADOOP_USER_NAME", Parameters.HADOOP_USER_NAME);
         System.setProperty("hadoop.home.dir", Parameters.HADOOP_HOME_DIR);
     }
 
+    /**
+     * Create a Yarn Configuration loading all site files of the platform
+     *
+     * @return
+     */
+    public static YarnConfiguration createConfiguration() {
+        YarnConfiguration yarnConfiguration = new YarnConfiguration();
+        yarnConfiguration.addResource(new Path(Parameters.CORE_SITE));
+        yarnConfiguration.addResource(new Path(Parameters.HDFS_SITE));
+        yarnConfiguration.addResource(new Path(Parameters.YARN_SITE));
+        return yarnConfiguration;
+    }
+
     /**
      * Create a container Context ready to be launched, instantiated with kerberos, hdfs files required, and java command set
      *
@@ -70,16 +88,68 @@ public class YarnService {
      * @return
      */
     public ContainerLaunchContext createContainerContext(List<String> requiredFilesFromHdfs, String command, FileSystem fileSystem) {
+        // Setup the container with all required resources (HDFS files, environment var, kerberos tokens)
+        return ContainerLaunchContext.newInstance(
+                this.getResourcesForContainer(requiredFilesFromHdfs, fileSystem), this.getEnvironment(conf),
+                this.getCommands(command), null, KerberosService.getTokensFromUserLogged(conf), null);
+    }
+
+    /**
+     * Build once all parts of the container context that are common to all containers (HDFS files, environment var, kerberos tokens)
+     * so that each container context is then derived by only setting its command
+     *
+     * @param requiredFilesFromHdfs
+     * @param fileSystem
+     */
+    public void prepareContainerContext(List<String> requiredFilesFromHdfs, FileSystem fileSystem) {
+        this.containerLocalResources = Collections.unmodifiableMap(this.getResourcesForContainer(requiredFilesFromHdfs, fileSystem));
+        this.containerEnvironment = Collections.unmodifiableMap(this.getEnvironment(conf));
+        refreshContainerTokens();
+    }
+
+    /**
+     * Get tokens again for the logged user, they will be used by all containers launched afterwards
+     */
+    public void refreshContainerTokens() {
+        this.containerTokens = KerberosService.getTokensFromUserLogged(conf);
+    }
+
+    /**
+     * Create a container Context ready to be launched from the one prepared by prepareContainerContext()
+     *
+     * @param command
+     * @return
+     */
+    public ContainerLaunchContext createContainerContext(String command) {
+        return createContainerContext(command, Collections.emptyMap());
+    }
+
+    /**
+     * Create a container Context ready to be launched from the one prepared by prepareContainerContext(), with more environment variables
+     * (to pass secrets, which must not go on a command line readable by any user of the node)
+     *
+     * @param command
+     * @param environment added to the prepared one
+     * @return
+     */
+    public ContainerLaunchContext createContainerContext(String command, Map<String, String> environment) {
+        ByteBuffer tokens = containerTokens;
+        Map<String, String> containerEnv = containerEnvironment;
+        if (!environment.isEmpty()) {
+            containerEnv = new HashMap<>(containerEnvironment);
+            containerEnv.putAll(environment);
+        }
+        return ContainerLaunchContext.newInstance(containerLocalResources, containerEnv, this.getCommands(command),
+                null, tokens == null ? null : tokens.duplicate(), null);
+    }
+
+    private List<String> getCommands(String command) {
         // Setup commands to launch one container
         List<String> commands = new ArrayList<>();
         commands.add(command
                 + " 1> " + ApplicationConstants.LOG_DIR_EXPANSION_VAR + "/stdout "
                 + " 2> " + ApplicationConstants.LOG_DIR_EXPANSION_VAR + "/stderr ");
-
-        // Setup the container with all required resources (HDFS files, environment var, kerberos tokens)
-        return ContainerLaunchContext.newInstance(
-                this.getResourcesForContainer(requiredFilesFromHdfs, fileSystem), this.getEnvironment(conf), commands,
-                null, KerberosService.getTokensFromUserLogged(conf), null);
+        return commands;
     }
 
 
@@ -90,7 +160,7 @@ public class YarnService {
                 FileStatus fileStatus = fileSystem.getFileStatus(new Path(file));
                 localResources.put(Utils.getFileNameFromPath(file),
                         LocalResource.newInstance(URL.fromPath(new Path(file)),
-                                LocalResourceType.FILE, LocalResourceVisibility.PUBLIC,
+                                LocalResourceType.FILE, getVisibility(fileStatus),
                                 fileStatus.getLen(), fileStatus.getModificationTime()));
                 logger.info("File added to container: " + file);
             }
@@ -101,6 +171,14 @@ public class YarnService {
         return localResources;
     }
 
+    /**
+     * Files readable by everyone are localized once per node for all users, others only for the user owning them
+     */
+    private static LocalResourceVisibility getVisibility(FileStatus fileStatus) {
+        return fileStatus.getPermission().getOtherAction().implies(FsAction.READ) ?
+                LocalResourceVisibility.PUBLIC : LocalResourceVisibility.PRIVATE;
+    }
+
     private Map<String, String> getEnvironment(Configuration conf) {
         Map<String, String> environment = new HashMap<>();
         Apps.addToEnvironment(environment, ApplicationConstants.Environment.CLASSPATH.name(), conf.get(YarnConfiguration.YARN_APPLICATION_CLASSPATH), ":");
@@ -21,21 +21,61 @@
 APP_FILES=""
 APP_NAME="submit-test"
 HDFS_WORK_DIR=""
+HDFS_UPLOAD_THREADS="4"
+HDFS_UPLOAD_BUFFER_SIZE="1048576"
+HDFS_CACHE_ENABLED="false"
+HDFS_CACHE_DIR=""
+HDFS_CACHE_PUBLIC="false"
+HDFS_SHARED_CACHE="false"
 KERBEROS_KEYTAB=""
 KERBEROS_USER=""
+TOKEN_RENEWAL_INTERVAL="3600000"
 APP_QUEUE="default"
 APP_PRIORITY="0"
 APP_AM_MEMORY="1024"
 APP_AM_VCORES="1"
+APP_AM_MAX_ATTEMPTS="2"
+APP_AM_HTTP_PORT="0"
+APP_AM_HTTP_PROXY_ONLY="true"
+APP_METRICS_PUBLISH="false"
+APP_RESULTS_OUTPUT_LINES="0"
 APP_CONTAINER_MEMORY="1024"
 APP_CONTAINER_VCORES="1"
+APP_CONTAINER_EXECUTION_TYPE="GUARANTEED"
+APP_CONTAINER_ENFORCE_EXECUTION_TYPE="true"
+APP_OPPORTUNISTIC_MAX_KILLS="3"
 APP_CONTAINER_NUMBER="1"
+APP_COMMANDS_BATCH_SIZE="10000"
+APP_COMMANDS_DAG="false"
+APP_BUNDLE_SIZE="1"
+APP_BUNDLE_TARGET_DURATION="0"
+APP_BUNDLE_PARALLELISM="1"
+APP_WORKERS_NUMBER="0"
+APP_LOCALITY_DELAY="3000"
+APP_CONCURRENCY_INITIAL="100"
+APP_CONCURRENCY_MAX="10000"
+APP_CONCURRENCY_LATENCY_TARGET="10000"
+APP_SPECULATION_THRESHOLD="0"
+APP_RETRY_MAX_TRIES="3"
+APP_RETRY_BACKOFF="1000"
+APP_RETRY_MAX_BACKOFF="60000"
+APP_RETRY_MAX_UNCOUNTED_RETRIES="10"
+APP_RETRY_NODE_MAX_FAILURES="3"
+APP_RETRY_NODE_BLACKLIST_TIMEOUT="600000"
+APP_RETRY_POLICY="com.cloudera.frisch.yarnsubmit.master.DefaultRetryPolicy"
 YARN_SITE="/etc/hadoop/conf.cloudera.yarn/yarn-site.xml"
 HDFS_SITE="/etc/hadoop/conf.cloudera.hdfs/hdfs-site.xml"
 CORE_SITE="/etc/hadoop/conf.cloudera.yarn/core-site.xml"
 HADOOP_USERNAME="$USER"
 HADOOP_HOME="/user/$USER"
 CHECK_STATUS_INTERVAL="1000"
+CHECK_STATUS_MAX_INTERVAL="30000"
+DETACH="false"
+APP_ID_FILE=""
+REATTACH=""
+MANIFEST=""
+BATCH_PARALLELISM="8"
+AM_HEARTBEAT_INTERVAL="1000"
 JAVA_HOME="/usr/bin/java"
 
 
@@ -52,15 +92,48 @@ function usage()
     echo "  --app-files=$APP_FILES : (Optional) List of files separated by a ',' required by the java application (Default) "
     echo "  --app-name=$APP_NAME : (Optional) App name in Yarn (Default) submit-test"
     echo "  --hdfs-work-dir=$HDFS_WORK_DIR : (Optional) HDFS path where to work (Default) /tmp/yarnsubmit/ + application Name + Time in ms"
+    echo "  --hdfs-upload-threads=$HDFS_UPLOAD_THREADS : (Optional) Number of files copied in parallel to HDFS work directory (Default) 4"
+    echo "  --hdfs-upload-buffer-size=$HDFS_UPLOAD_BUFFER_SIZE : (Optional) Size in bytes of the buffer used to copy each file to HDFS (Default) 1048576"
+    echo "  --hdfs-cache-enabled=$HDFS_CACHE_ENABLED : (Optional) Stage jars and app files in an HDFS cache addressed by their content, to not upload them again when unchanged (Default) false"
+    echo "  --hdfs-cache-dir=$HDFS_CACHE_DIR : (Optional) HDFS path of the cache (Default) .yarnsubmit/cache/ in HDFS home directory of the user"
+    echo "  --hdfs-cache-public=$HDFS_CACHE_PUBLIC : (Optional) Make cached files readable by everyone, to share the cache between users (Default) false"
+    echo "  --hdfs-shared-cache=$HDFS_SHARED_CACHE : (Optional) Look up files in YARN shared cache before HDFS cache (Default) false"
     echo "  --keytab=$KERBEROS_KEYTAB : (Optional) path to keytab to use if kerberos is used (Default) "
     echo "  --kerberos-user=$KERBEROS_USER : (Optional) principal@REALM.COM associated to the keytab (Default) "
+    echo "  --token-renewal-interval=$TOKEN_RENEWAL_INTERVAL : (Optional) Maximum time in ms between two renewals of HDFS tokens by the master (Default) 3600000"
     echo "  --queue=$APP_QUEUE : (Optional) queue where to launch the application (and the master) (Default) default"
     echo "  --priority=$APP_PRIORITY : (Optional) priority of the application for Yarn, as a number >= 0 (Default) 0"
     echo "  --am-memory=$APP_AM_MEMORY : (Optional) memory allocated for the master in MB (Default) 1024"
     echo "  --am-vcores=$APP_AM_VCORES : (Optional) vcores allocated for the master (Default) 1"
+    echo "  --am-max-attempts=$APP_AM_MAX_ATTEMPTS : (Optional) Number of attempts of the master, a new attempt only runs commands not finished (Default) 2"
+    echo "  --am-http-port=$APP_AM_HTTP_PORT : (Optional) Port of the master serving state of commands, 0 for any free port (Default) 0"
+    echo "  --am-http-proxy-only=$APP_AM_HTTP_PROXY_ONLY : (Optional) To serve state of commands only through RM web proxy, other clients being redirected to it (Default) true"
+    echo "  --metrics-publish=$APP_METRICS_PUBLISH : (Optional) To publish metrics of the master to Hadoop metrics2 sinks (Default) false"
+    echo "  --results-output-lines=$APP_RESULTS_OUTPUT_LINES : (Optional) Number of last lines of output of each command reported to the master, 0 for none (Default) 0"
     echo "  --container-memory=$APP_CONTAINER_MEMORY : (Optional) memory allocated for each container in MB (Default) 1024"
     echo "  --container-vcores=$APP_CONTAINER_VCORES : (Optional) vcores allocated for each container (Default) 1"
     echo "  --container-number=$APP_CONTAINER_NUMBER : (Optional) Number of containers to launch (Default) 1"
+    echo "  --container-execution-type=$APP_CONTAINER_EXECUTION_TYPE : (Optional) Execution type of containers, GUARANTEED or OPPORTUNISTIC (Default) GUARANTEED"
+    echo "  --container-enforce-execution-type=$APP_CONTAINER_ENFORCE_EXECUTION_TYPE : (Optional) To only accept containers of the execution type asked for (Default) true"
+    echo "  --opportunistic-max-kills=$APP_OPPORTUNISTIC_MAX_KILLS : (Optional) Number of kills of OPPORTUNISTIC containers of a command before it falls back to GUARANTEED ones, 0 to never (Default) 3"
+    echo "  --commands-batch-size=$APP_COMMANDS_BATCH_SIZE : (Optional) Maximum number of commands loaded at once by the master from the file of commands (Default) 10000"
+    echo "  --commands-dag=$APP_COMMANDS_DAG : (Optional) Run commands of the file as a pipeline, following their dependencies declared with @id and @after (Default) false"
+    echo "  --bundle-size=$APP_BUNDLE_SIZE : (Optional) Maximum number of commands run in the same container (Default) 1"
+    echo "  --bundle-target-duration=$APP_BUNDLE_TARGET_DURATION : (Optional) Target duration in ms of a container running a bundle of commands, 0 to always bundle --bundle-size commands (Default) 0"
+    echo "  --bundle-parallelism=$APP_BUNDLE_PARALLELISM : (Optional) Number of commands of a bundle run in parallel in its container (Default) 1"
+    echo "  --workers-number=$APP_WORKERS_NUMBER : (Optional) Number of long-lived worker containers pulling commands one after the other, 0 to launch one container per command (Default) 0"
+    echo "  --locality-delay=$APP_LOCALITY_DELAY : (Optional) Time in ms a command with declared inputs waits for a node holding its data, before accepting any node (Default) 3000"
+    echo "  --concurrency-initial=$APP_CONCURRENCY_INITIAL : (Optional) Number of containers held and asked for at start, adapted afterwards to room left in the queue (Default) 100"
+    echo "  --concurrency-max=$APP_CONCURRENCY_MAX : (Optional) Maximum number of containers held and asked for at the same time (Default) 10000"
+    echo "  --concurrency-latency-target=$APP_CONCURRENCY_LATENCY_TARGET : (Optional) Time in ms an ask can wait for a container before the queue is considered full (Default) 10000"
+    echo "  --speculation-threshold=$APP_SPECULATION_THRESHOLD : (Optional) Launch a duplicate of a command running longer than this times the average runtime of its peers, 0 to disable (Default) 0"
+    echo "  --retry-max-tries=$APP_RETRY_MAX_TRIES : (Optional) Maximum number of tries of a failed command, preemptions and node failures are not counted (Default) 3"
+    echo "  --retry-backoff=$APP_RETRY_BACKOFF : (Optional) Time in ms to wait before retrying a failed command, doubled at each try (Default) 1000"
+    echo "  --retry-max-backoff=$APP_RETRY_MAX_BACKOFF : (Optional) Maximum time in ms to wait before retrying a failed command (Default) 60000"
+    echo "  --retry-max-uncounted-retries=$APP_RETRY_MAX_UNCOUNTED_RETRIES : (Optional) Maximum number of retries of a command after preemptions and node failures, which do not count as tries (Default) 10"
+    echo "  --retry-node-max-failures=$APP_RETRY_NODE_MAX_FAILURES : (Optional) Number of failures on a node after which it is blacklisted, 0 to never blacklist (Default) 3"
+    echo "  --retry-node-blacklist-timeout=$APP_RETRY_NODE_BLACKLIST_TIMEOUT : (Optional) Time in ms after which a node is not blacklisted anymore and its failures are forgotten, 0 to never forget (Default) 600000"
+    echo "  --retry-policy=$APP_RETRY_POLICY : (Optional) Class deciding if and when failed commands are retried (Default) com.cloudera.frisch.yarnsubmit.master.DefaultRetryPolicy"
     echo "  --yarn-site=$YARN_SITE : (Optional) path to the yarn-site on each machine of the cluster (Default) /etc/hadoop/conf.cloudera.yarn/yarn-site.xml"
     echo "  --hdfs-site=$HDFS_SITE : (Optional) path to the hdfs-site on each machine of the cluster (Default) /etc/hadoop/conf.cloudera.hdfs/hdfs-site.xml"
     echo "  --core-site=$CORE_SITE : (Optional) path to the core-site on each machine of the cluster (Default) /etc/hadoop/conf.cloudera.yarn/core-site.xml"
@@ -68,6 +141,13 @@ function usage()
     echo "  --hadoop-home=$HADOOP_HOME : (Optional) hadoop home of the user (Default) "
     echo "  --java-home=$JAVA_HOME : (Optional) Path to Java, to use a non default one (Default) /usr/bin/java "
     echo "  --check-status-interval=$CHECK_STATUS_INTERVAL: (Optional) Time in ms between each check of application status from the client to the AM (Default) 1000"
+    echo "  --check-status-max-interval=$CHECK_STATUS_MAX_INTERVAL: (Optional) Maximum time in ms between two checks of application status, while it does not change (Default) 30000"
+    echo "  --detach=$DETACH: (Optional) Stop following the application once it is accepted, leaving it run on its own (Default) false"
+    echo "  --app-id-file=$APP_ID_FILE: (Optional) Local file where id of the application is written when detaching (Default) "
+    echo "  --reattach=$REATTACH: (Optional) Id of an application already submitted to follow, instead of submitting one (Default) "
+    echo "  --manifest=$MANIFEST: (Optional) File listing parameters files of several applications to submit at once, instead of one application (Default) "
+    echo "  --batch-parallelism=$BATCH_PARALLELISM: (Optional) Number of applications of a manifest submitted at the same time (Default) 8"
+    echo "  --am-heartbeat-interval=$AM_HEARTBEAT_INTERVAL: (Optional) Time in ms between each heartbeat from the AM to the RM (Default) 1000"
     echo "<JarPath> <Args> OR <filePath>"
     echo ""
 }
@@ -76,7 +156,7 @@ echo "Launching application using yarn-submit.sh"
 
 # Get Jar and jar args from command line
 JAR_AND_JAR_ARGS=$(echo $@ | sed 's/--[^ ]*//g')
-if [[ -z ${JAR_AND_JAR_ARGS} ]]
+if [[ -z ${JAR_AND_JAR_ARGS} ]] && [[ "$*" != *--reattach=* ]] && [[ "$*" != *--manifest=* ]]
 then
     echo "yarn-submit.sh requires at least a jar or a file (filled with different lines, each of it will be launched on a container) in argument"
     exit
@@ -114,6 +194,30 @@ while [ "$1" != "" ]; do
             HDFS_WORK_DIR=$VALUE
             echo "hdfs.work.directory=$VALUE" >> ${PARAMETERS_FILE}
             ;;
+        --hdfs-upload-threads)
+            HDFS_UPLOAD_THREADS=$VALUE
+            echo "hdfs.upload.threads=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --hdfs-upload-buffer-size)
+            HDFS_UPLOAD_BUFFER_SIZE=$VALUE
+            echo "hdfs.upload.buffer-size=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --hdfs-cache-enabled)
+            HDFS_CACHE_ENABLED=$VALUE
+            echo "hdfs.cache.enabled=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --hdfs-cache-dir)
+            HDFS_CACHE_DIR=$VALUE
+            echo "hdfs.cache.directory=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --hdfs-cache-public)
+            HDFS_CACHE_PUBLIC=$VALUE
+            echo "hdfs.cache.public=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --hdfs-shared-cache)
+            HDFS_SHARED_CACHE=$VALUE
+            echo "hdfs.cache.shared-cache=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
         --keytab)
             KERBEROS_KEYTAB=$VALUE
             echo "kerberos.keytab=$VALUE" >> ${PARAMETERS_FILE}
@@ -123,6 +227,10 @@ while [ "$1" != "" ]; do
             echo "kerberos=true" >> ${PARAMETERS_FILE}
             echo "kerberos.user=$VALUE" >> ${PARAMETERS_FILE}
             ;;
+        --token-renewal-interval)
+            TOKEN_RENEWAL_INTERVAL=$VALUE
+            echo "kerberos.token.renewal-interval=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
         --queue)
             APP_QUEUE=$VALUE
             echo "app.queue=$VALUE" >> ${PARAMETERS_FILE}
@@ -139,6 +247,26 @@ while [ "$1" != "" ]; do
             APP_AM_VCORES=$VALUE
             echo "app.am.vcores=$VALUE" >> ${PARAMETERS_FILE}
             ;;
+        --am-max-attempts)
+            APP_AM_MAX_ATTEMPTS=$VALUE
+            echo "app.am.max-attempts=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --am-http-port)
+            APP_AM_HTTP_PORT=$VALUE
+            echo "app.am.http-port=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --am-http-proxy-only)
+            APP_AM_HTTP_PROXY_ONLY=$VALUE
+            echo "app.am.http-proxy-only=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --metrics-publish)
+            APP_METRICS_PUBLISH=$VALUE
+            echo "app.metrics.publish=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --results-output-lines)
+            APP_RESULTS_OUTPUT_LINES=$VALUE
+            echo "app.results.output-lines=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
         --container-memory)
             APP_CONTAINER_MEMORY=$VALUE
             echo "app.container.memory=$VALUE" >> ${PARAMETERS_FILE}
@@ -151,6 +279,90 @@ while [ "$1" != "" ]; do
             APP_CONTAINER_NUMBER=$VALUE
             echo "app.container.number=$VALUE" >> ${PARAMETERS_FILE}
             ;;
+        --container-execution-type)
+            APP_CONTAINER_EXECUTION_TYPE=$VALUE
+            echo "app.container.execution-type=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --container-enforce-execution-type)
+            APP_CONTAINER_ENFORCE_EXECUTION_TYPE=$VALUE
+            echo "app.container.enforce-execution-type=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --opportunistic-max-kills)
+            APP_OPPORTUNISTIC_MAX_KILLS=$VALUE
+            echo "app.opportunistic.max-kills=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --commands-batch-size)
+            APP_COMMANDS_BATCH_SIZE=$VALUE
+            echo "app.commands.batch-size=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --commands-dag)
+            APP_COMMANDS_DAG=$VALUE
+            echo "app.commands.dag=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --bundle-size)
+            APP_BUNDLE_SIZE=$VALUE
+            echo "app.bundle.size=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --bundle-target-duration)
+            APP_BUNDLE_TARGET_DURATION=$VALUE
+            echo "app.bundle.target-duration=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --bundle-parallelism)
+            APP_BUNDLE_PARALLELISM=$VALUE
+            echo "app.bundle.parallelism=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --workers-number)
+            APP_WORKERS_NUMBER=$VALUE
+            echo "app.workers.number=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --locality-delay)
+            APP_LOCALITY_DELAY=$VALUE
+            echo "app.locality.delay=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --concurrency-initial)
+            APP_CONCURRENCY_INITIAL=$VALUE
+            echo "app.concurrency.initial=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --concurrency-max)
+            APP_CONCURRENCY_MAX=$VALUE
+            echo "app.concurrency.max=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --concurrency-latency-target)
+            APP_CONCURRENCY_LATENCY_TARGET=$VALUE
+            echo "app.concurrency.latency-target=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --speculation-threshold)
+            APP_SPECULATION_THRESHOLD=$VALUE
+            echo "app.speculation.threshold=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --retry-max-tries)
+            APP_RETRY_MAX_TRIES=$VALUE
+            echo "app.retry.max-tries=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --retry-backoff)
+            APP_RETRY_BACKOFF=$VALUE
+            echo "app.retry.backoff=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --retry-max-backoff)
+            APP_RETRY_MAX_BACKOFF=$VALUE
+            echo "app.retry.max-backoff=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --retry-max-uncounted-retries)
+            APP_RETRY_MAX_UNCOUNTED_RETRIES=$VALUE
+            echo "app.retry.max-uncounted-retries=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --retry-node-max-failures)
+            APP_RETRY_NODE_MAX_FAILURES=$VALUE
+            echo "app.retry.node-max-failures=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --retry-node-blacklist-timeout)
+            APP_RETRY_NODE_BLACKLIST_TIMEOUT=$VALUE
+            echo "app.retry.node-blacklist-timeout=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --retry-policy)
+            APP_RETRY_POLICY=$VALUE
+            echo "app.retry.policy=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
         --yarn-site)
             YARN_SITE=$VALUE
             echo "yarn.site=$VALUE" >> ${PARAMETERS_FILE}
@@ -175,6 +387,32 @@ while [ "$1" != "" ]; do
             CHECK_STATUS_INTERVAL=$VALUE
             echo "app.check-status-interval=$VALUE" >> ${PARAMETERS_FILE}
             ;;
+        --check-status-max-interval)
+            CHECK_STATUS_MAX_INTERVAL=$VALUE
+            echo "app.check-status-max-interval=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --detach)
+            DETACH=$VALUE
+            echo "app.detach=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --app-id-file)
+            APP_ID_FILE=$VALUE
+            echo "app.id-file=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --reattach)
+            REATTACH=$VALUE
+            ;;
+        --manifest)
+            MANIFEST=$VALUE
+            ;;
+        --batch-parallelism)
+            BATCH_PARALLELISM=$VALUE
+            echo "app.batch.parallelism=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
+        --am-heartbeat-interval)
+            AM_HEARTBEAT_INTERVAL=$VALUE
+            echo "app.am.heartbeat-interval=$VALUE" >> ${PARAMETERS_FILE}
+            ;;
         --java-home)
             JAVA_HOME=$VALUE
             echo "java.home=$VALUE" >> ${PARAMETERS_FILE}
@@ -197,7 +435,15 @@ cat $PARAMETERS_FILE
 
 echo "Launch of java command for yarn-submit.jar"
 
-$JAVA_HOME --add-opens java.base/jdk.internal.ref=ALL-UNNAMED -jar yarn-submit.jar -c $PARAMETERS_FILE
+if [ -n "$MANIFEST" ]
+then
+    $JAVA_HOME --add-opens java.base/jdk.internal.ref=ALL-UNNAMED -jar yarn-submit.jar -c $PARAMETERS_FILE -m $MANIFEST
+elif [ -z $REATTACH ]
+then
+    $JAVA_HOME --add-opens java.base/jdk.internal.ref=ALL-UNNAMED -jar yarn-submit.jar -c $PARAMETERS_FILE
+else
+    $JAVA_HOME --add-opens java.base/jdk.internal.ref=ALL-UNNAMED -jar yarn-submit.jar -c $PARAMETERS_FILE -r $REATTACH
+fi
 
 echo "Finished application using yarn-submit.sh"
 
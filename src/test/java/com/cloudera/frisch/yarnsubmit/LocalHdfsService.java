@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit;
+
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+
+/**
+ * HDFS service on the local file system, for tests of code reading and writing HDFS files
+ */
+public class LocalHdfsService {
+
+    private LocalHdfsService() { throw new IllegalStateException("Local HDFS Service class not instantiable"); }
+
+    public static HdfsService create() {
+        Configuration conf = new Configuration(false);
+        conf.set("fs.defaultFS", "file:///");
+        conf.set(HdfsClientConfigKeys.DFS_NAMESERVICES, "file:///");
+        return new HdfsService(conf);
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit;
+
+import com.cloudera.frisch.yarnsubmit.config.Parameters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Parameters for tests: defaults of each parameter, overridden by some of them
+ */
+public class TestParameters {
+
+    private TestParameters() { throw new IllegalStateException("Test Parameters class not instantiable"); }
+
+    /**
+     * @param properties lines of a parameters file, as key=value
+     */
+    public static void init(String... properties) {
+        try {
+            Path file = Files.createTempFile("parameters", ".properties");
+            Files.write(file, Arrays.asList(properties), StandardCharsets.UTF_8);
+            Parameters.initParameters(file.toString());
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.container;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class OutputTailTest {
+
+    private static String copy(OutputTail outputTail, String output) throws InterruptedException {
+        ByteArrayOutputStream copied = new ByteArrayOutputStream();
+        outputTail.copyInBackground(new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)), copied, "test").join();
+        return new String(copied.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void outputIsCopiedWholeAndOnlyLastLinesAreKept() throws InterruptedException {
+        OutputTail outputTail = new OutputTail(2);
+        String output = "first\nsecond\nthird\nfourth\n";
+
+        assertEquals(output, copy(outputTail, output));
+        assertEquals("third\nfourth", outputTail.getLines());
+    }
+
+    @Test
+    void lastLineWithoutLineBreakIsKept() throws InterruptedException {
+        OutputTail outputTail = new OutputTail(5);
+        copy(outputTail, "done\n50%");
+        assertEquals("done\n50%", outputTail.getLines());
+    }
+
+    @Test
+    void longLinesAreCut() throws InterruptedException {
+        OutputTail outputTail = new OutputTail(5);
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            longLine.append('x');
+        }
+        copy(outputTail, longLine + "\nend\n");
+        assertEquals(longLine.substring(0, 1024) + "\nend", outputTail.getLines());
+    }
+
+    @Test
+    void linesOfBothOutputsAreKept() throws InterruptedException {
+        OutputTail outputTail = new OutputTail(5);
+        copy(outputTail, "out\n");
+        copy(outputTail, "err\n");
+        assertEquals("out\nerr", outputTail.getLines());
+    }
+
+    @Test
+    void noOutputMeansNoLines() throws InterruptedException {
+        OutputTail outputTail = new OutputTail(5);
+        copy(outputTail, "");
+        assertNull(outputTail.getLines());
+    }
+}
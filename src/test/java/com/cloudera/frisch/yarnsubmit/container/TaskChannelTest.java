@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.container;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TaskChannelTest {
+
+    private ServerSocket serverSocket;
+
+    @BeforeEach
+    void openServer() throws IOException {
+        serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    void closeServer() throws IOException {
+        serverSocket.close();
+    }
+
+    private CompletableFuture<TaskChannel> acceptInBackground(String secret) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return TaskChannel.accept(serverSocket.accept(), secret);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private TaskChannel connect(String secret, long workerId) throws IOException {
+        return TaskChannel.connect(new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), secret, workerId);
+    }
+
+    @Test
+    void amAndWorkerKnowingTheSecretExchangeMessages() throws Exception {
+        String secret = TaskChannel.newSecret();
+        CompletableFuture<TaskChannel> accepted = acceptInBackground(secret);
+        try (TaskChannel worker = connect(secret, 42L);
+             TaskChannel am = accepted.get(10, TimeUnit.SECONDS)) {
+            assertEquals(42L, am.getWorkerId());
+            worker.send(TaskProtocol.NEXT);
+            assertEquals(TaskProtocol.NEXT, am.receive());
+            am.send(TaskProtocol.TASK + " ZWNobyDDqQ==");
+            assertEquals(TaskProtocol.TASK + " ZWNobyDDqQ==", worker.receive());
+            worker.send(TaskProtocol.RESULT + " 0 12");
+            worker.send(TaskProtocol.NEXT);
+            assertEquals(TaskProtocol.RESULT + " 0 12", am.receive());
+            assertEquals(TaskProtocol.NEXT, am.receive());
+        }
+    }
+
+    @Test
+    void workerNotKnowingTheSecretIsRejected() {
+        CompletableFuture<TaskChannel> accepted = acceptInBackground(TaskChannel.newSecret());
+        assertThrows(IOException.class, () -> connect(TaskChannel.newSecret(), 42L));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> accepted.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause().getCause());
+    }
+
+    @Test
+    void workerSendingTheSecretInClearIsRejected() throws Exception {
+        String secret = TaskChannel.newSecret();
+        CompletableFuture<TaskChannel> accepted = acceptInBackground(secret);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            TaskProtocol.writeMessage(new DataOutputStream(socket.getOutputStream()), TaskProtocol.HELLO + " 42 " + secret);
+            socket.shutdownOutput();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> accepted.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause().getCause());
+        }
+    }
+
+    @Test
+    void amNotKnowingTheSecretIsRejectedByWorker() {
+        CompletableFuture<TaskChannel> accepted = acceptInBackground(TaskChannel.newSecret());
+        IOException e = assertThrows(IOException.class, () -> connect(TaskChannel.newSecret(), 42L));
+        assertEquals("AM did not prove it knows the secret of the application", e.getMessage());
+        assertThrows(ExecutionException.class, () -> accepted.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void messageReplayedIsRejected() throws Exception {
+        String secret = TaskChannel.newSecret();
+        // Third frame of the worker (first one after HELLO and PROOF) is sent twice, as an attacker on the network could do
+        try (Relay relay = new Relay(frame -> frame == 2 ? 2 : 1, false)) {
+            CompletableFuture<TaskChannel> accepted = acceptInBackground(secret);
+            try (TaskChannel worker = TaskChannel.connect(relay.connect(), secret, 42L);
+                 TaskChannel am = accepted.get(10, TimeUnit.SECONDS)) {
+                worker.send(TaskProtocol.RESULT + " 0 12");
+                assertEquals(TaskProtocol.RESULT + " 0 12", am.receive());
+                assertThrows(IOException.class, am::receive);
+            }
+        }
+    }
+
+    @Test
+    void messageChangedIsRejected() throws Exception {
+        String secret = TaskChannel.newSecret();
+        try (Relay relay = new Relay(frame -> 1, true)) {
+            CompletableFuture<TaskChannel> accepted = acceptInBackground(secret);
+            try (TaskChannel worker = TaskChannel.connect(relay.connect(), secret, 42L);
+                 TaskChannel am = accepted.get(10, TimeUnit.SECONDS)) {
+                worker.send(TaskProtocol.RESULT + " 1 12");
+                assertThrows(IOException.class, am::receive);
+            }
+        }
+    }
+
+    /**
+     * Forwards frames between a worker and the AM, repeating or changing frames sent by the worker after its handshake
+     */
+    private class Relay implements AutoCloseable {
+        private final ServerSocket relaySocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        private final IntUnaryOperator copiesOfFrame;
+        private final boolean flipBit;
+
+        Relay(IntUnaryOperator copiesOfFrame, boolean flipBit) throws IOException {
+            this.copiesOfFrame = copiesOfFrame;
+            this.flipBit = flipBit;
+        }
+
+        Socket connect() throws IOException {
+            Thread thread = new Thread(() -> {
+                try (Socket fromWorker = relaySocket.accept();
+                     Socket toAm = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+                    Thread back = new Thread(() -> forward(toAm, fromWorker, frame -> 1, false));
+                    back.setDaemon(true);
+                    back.start();
+                    forward(fromWorker, toAm, copiesOfFrame, flipBit);
+                } catch (IOException e) {
+                    // Connection closed by the test
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            return new Socket(InetAddress.getLoopbackAddress(), relaySocket.getLocalPort());
+        }
+
+        private void forward(Socket from, Socket to, IntUnaryOperator copies, boolean flip) {
+            try {
+                DataInputStream in = new DataInputStream(from.getInputStream());
+                DataOutputStream out = new DataOutputStream(to.getOutputStream());
+                for (int frame = 0; ; frame++) {
+                    byte[] bytes = TaskProtocol.readFrame(in);
+                    if (flip && frame >= 2) {
+                        bytes[0] ^= 1;
+                    }
+                    for (int i = 0; i < copies.applyAsInt(frame); i++) {
+                        TaskProtocol.writeFrame(out, bytes);
+                    }
+                }
+            } catch (IOException e) {
+                // Connection closed by the test
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            relaySocket.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.container;
+
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import com.cloudera.frisch.yarnsubmit.object.CommandResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class WorkerAgentTest {
+
+    private ServerSocket serverSocket;
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init("app.results.output-lines=5");
+    }
+
+    @BeforeEach
+    void openServer() throws IOException {
+        serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    void closeServer() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Play the AM: give a command to the worker, then tell it to wait, then to stop
+     * @return messages received from the worker
+     */
+    private CompletableFuture<List<String>> amInBackground(String secret, String command) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<String> received = new ArrayList<>();
+            try (TaskChannel channel = TaskChannel.accept(serverSocket.accept(), secret)) {
+                received.add(channel.receive());
+                channel.send(TaskProtocol.TASK + " " + Base64.getEncoder().encodeToString(command.getBytes(StandardCharsets.UTF_8)));
+                received.add(channel.receive());
+                received.add(channel.receive());
+                channel.send(TaskProtocol.WAIT + " 10");
+                received.add(channel.receive());
+                channel.send(TaskProtocol.STOP);
+            } catch (IOException e) {
+                received.add(e.getMessage());
+            }
+            return received;
+        });
+    }
+
+    @Test
+    void workerRunsCommandsOfAmUntilToldToStop() throws Exception {
+        String secret = TaskChannel.newSecret();
+        CompletableFuture<List<String>> am = amInBackground(secret, "echo failing; exit 3");
+
+        assertEquals(1, WorkerAgent.run("localhost", serverSocket.getLocalPort(), secret, 42L));
+
+        List<String> received = am.get(10, TimeUnit.SECONDS);
+        assertEquals(TaskProtocol.NEXT, received.get(0));
+        String[] result = received.get(1).split(" ");
+        assertEquals(TaskProtocol.RESULT, result[0]);
+        assertEquals("3", result[1]);
+        assertEquals("failing", CommandResult.decodeOutput(result[3]));
+        assertEquals(TaskProtocol.NEXT, received.get(2));
+        assertEquals(TaskProtocol.NEXT, received.get(3));
+    }
+
+    @Test
+    void workerDoesNotRunCommandsOfAnAmNotKnowingTheSecret() {
+        amInBackground(TaskChannel.newSecret(), "touch should-not-exist");
+
+        assertThrows(IOException.class, () -> WorkerAgent.run("localhost", serverSocket.getLocalPort(), TaskChannel.newSecret(), 42L));
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import com.cloudera.frisch.yarnsubmit.object.ContainerRegistry;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AmStatusServerTest {
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init();
+    }
+
+    private static AmStatusServer serverWithFailedCommands(int failed) {
+        ContainerRegistry registry = new ContainerRegistry();
+        for (int i = 0; i < failed; i++) {
+            YarnContainer container = new YarnContainer("exit 1");
+            container.setIndex(i);
+            registry.addContainer(container);
+            registry.setContainerFinished(container, false);
+        }
+        return new AmStatusServer(new AmContext(null, null, registry, null, null, null, null, null, null, null, null, null, null));
+    }
+
+    @Test
+    void positionOfFailedCommandsIsReadFromQuery() {
+        assertEquals(0, AmStatusServer.getSince(null));
+        assertEquals(0, AmStatusServer.getSince("other=1"));
+        assertEquals(42, AmStatusServer.getSince("other=1&since=42"));
+        assertThrows(NumberFormatException.class, () -> AmStatusServer.getSince("since=abc"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void allFailedCommandsAreServedByPagesFromAPosition() {
+        AmStatusServer server = serverWithFailedCommands(2500);
+
+        Map<String, Object> failures = server.getFailures(0);
+        assertEquals(2500, failures.get("total"));
+        assertEquals(1000, failures.get("next"));
+        assertEquals(1000, ((List<Map<String, Object>>) failures.get("failedCommands")).size());
+
+        failures = server.getFailures(2000);
+        List<Map<String, Object>> page = (List<Map<String, Object>>) failures.get("failedCommands");
+        assertEquals(2500, failures.get("next"));
+        assertEquals(500, page.size());
+        assertEquals(2000, page.get(0).get("index"));
+
+        failures = server.getFailures(2500);
+        assertEquals(2500, failures.get("next"));
+        assertEquals(0, ((List<Map<String, Object>>) failures.get("failedCommands")).size());
+    }
+
+    @Test
+    void positionOfAPreviousAttemptIsBeyondTotal() {
+        Map<String, Object> failures = serverWithFailedCommands(3).getFailures(10);
+        assertEquals(3, failures.get("total"));
+        assertEquals(10, failures.get("next"));
+    }
+}
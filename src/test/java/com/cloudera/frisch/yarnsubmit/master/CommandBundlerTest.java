@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.LocalHdfsService;
+import com.cloudera.frisch.yarnsubmit.object.CommandResult;
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CommandBundlerTest {
+
+    private final HdfsService hdfsService = LocalHdfsService.create();
+
+    @Test
+    void resultsAreReadAndTheirFileRemoved(@TempDir Path directory) throws IOException {
+        CommandBundler commandBundler = new CommandBundler(hdfsService, directory + "/", 10, 0, 1);
+        hdfsService.writeFile(directory + "/12", Arrays.asList(
+                new CommandResult(0, 0, 100L, null).toLine(),
+                new CommandResult(1, 2, 200L, "error\nfailed").toLine()));
+
+        Map<Integer, CommandResult> results = commandBundler.readResults(12L);
+
+        assertEquals(2, results.size());
+        assertEquals(0, results.get(0).getExitCode());
+        assertNull(results.get(0).getOutput());
+        assertEquals(2, results.get(1).getExitCode());
+        assertEquals(200L, results.get(1).getDuration());
+        assertEquals("error\nfailed", results.get(1).getOutput());
+        assertFalse(Files.exists(directory.resolve("12")));
+    }
+
+    @Test
+    void malformedResultsAreSkipped(@TempDir Path directory) throws IOException {
+        CommandBundler commandBundler = new CommandBundler(hdfsService, directory + "/", 10, 0, 1);
+        hdfsService.writeFile(directory + "/12", Arrays.asList(
+                "0 0",
+                "1 x 100",
+                "2 1 100 not*base64",
+                new CommandResult(3, 0, 100L, null).toLine()));
+
+        Map<Integer, CommandResult> results = commandBundler.readResults(12L);
+
+        assertEquals(1, results.size());
+        assertTrue(results.containsKey(3));
+    }
+
+    @Test
+    void noResultsFileMeansNoResults(@TempDir Path directory) {
+        CommandBundler commandBundler = new CommandBundler(hdfsService, directory + "/", 10, 0, 1);
+        assertTrue(commandBundler.readResults(12L).isEmpty());
+    }
+
+    @Test
+    void bundleSizeIsAdaptedToDurationOfCommands(@TempDir Path directory) throws IOException {
+        // 2 commands run in parallel for 1s bundles
+        CommandBundler commandBundler = new CommandBundler(hdfsService, directory + "/", 10, 1000L, 2);
+        assertEquals(10, commandBundler.getBundleSize());
+        hdfsService.writeFile(directory + "/12", Arrays.asList(
+                new CommandResult(0, 0, 100L, null).toLine(),
+                new CommandResult(1, 0, 300L, null).toLine()));
+        commandBundler.readResults(12L);
+        assertEquals(10, commandBundler.getBundleSize());
+        assertEquals(1, commandBundler.getNumberOfContainersNeeded(10));
+
+        hdfsService.writeFile(directory + "/13", Arrays.asList(new CommandResult(0, 0, 1400L, null).toLine()));
+        commandBundler.readResults(13L);
+        // Average duration is 600ms
+        assertEquals(3, commandBundler.getBundleSize());
+        assertEquals(4, commandBundler.getNumberOfContainersNeeded(10));
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ConcurrencyControllerTest {
+
+    private static final long LATENCY_TARGET = 1000L;
+
+    @Test
+    void initialLimitIsBetweenOneAndMaximum() {
+        assertEquals(100, new ConcurrencyController(500, 100, LATENCY_TARGET).getLimit());
+        assertEquals(1, new ConcurrencyController(0, 100, LATENCY_TARGET).getLimit());
+    }
+
+    @Test
+    void limitAtMostDoublesWhenQueueHasRoom() {
+        ConcurrencyController controller = new ConcurrencyController(10, 1000, LATENCY_TARGET);
+        controller.adjust(1000, 5, 10L, 10, 1000);
+        assertEquals(20, controller.getLimit());
+    }
+
+    @Test
+    void limitGrowsByHeadroomOnly() {
+        ConcurrencyController controller = new ConcurrencyController(10, 1000, LATENCY_TARGET);
+        controller.adjust(3, 5, 10L, 10, 1000);
+        assertEquals(13, controller.getLimit());
+    }
+
+    @Test
+    void smallLimitGrowsByNumberOfNodes() {
+        ConcurrencyController controller = new ConcurrencyController(2, 1000, LATENCY_TARGET);
+        controller.adjust(1000, 50, 10L, 2, 1000);
+        assertEquals(52, controller.getLimit());
+    }
+
+    @Test
+    void limitNeverGrowsOverMaximum() {
+        ConcurrencyController controller = new ConcurrencyController(80, 100, LATENCY_TARGET);
+        controller.adjust(1000, 5, 10L, 80, 1000);
+        assertEquals(100, controller.getLimit());
+    }
+
+    @Test
+    void limitDoesNotGrowWithoutDemandNorWhenAsksWait() {
+        ConcurrencyController controller = new ConcurrencyController(10, 1000, LATENCY_TARGET);
+        controller.adjust(1000, 5, 10L, 10, 10);
+        assertEquals(10, controller.getLimit());
+        controller.adjust(1000, 5, 5000L, 10, 1000);
+        assertEquals(10, controller.getLimit());
+    }
+
+    @Test
+    void limitIsHalvedOnPreemption() {
+        ConcurrencyController controller = new ConcurrencyController(100, 1000, LATENCY_TARGET);
+        controller.containerPreempted();
+        controller.containerPreempted();
+        controller.adjust(1000, 5, 10L, 100, 1000);
+        assertEquals(50, controller.getLimit());
+        // Preemptions are only counted once
+        controller.adjust(0, 5, 10L, 50, 50);
+        assertEquals(50, controller.getLimit());
+    }
+
+    @Test
+    void limitShrinksSlowlyDownToContainersHeldWhenQueueIsFull() {
+        ConcurrencyController controller = new ConcurrencyController(100, 1000, LATENCY_TARGET);
+        controller.adjust(0, 5, 5000L, 10, 200);
+        assertEquals(90, controller.getLimit());
+        for (int i = 0; i < 100; i++) {
+            controller.adjust(0, 5, 5000L, 10, 200);
+        }
+        assertEquals(11, controller.getLimit());
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DefaultRetryPolicyTest {
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init();
+    }
+
+    private static YarnContainer triedCommand(int tries) {
+        YarnContainer container = new YarnContainer("false");
+        container.setTries(tries);
+        return container;
+    }
+
+    @Test
+    void backoffDoublesAtEachTryUpToItsMaximum() {
+        RetryPolicy retryPolicy = new DefaultRetryPolicy(10, 10, 1000L, 5000L);
+        assertEquals(1000L, retryPolicy.getRetryDelay(triedCommand(1), ExitStatusClass.COMMAND_FAILURE));
+        assertEquals(2000L, retryPolicy.getRetryDelay(triedCommand(2), ExitStatusClass.COMMAND_FAILURE));
+        assertEquals(4000L, retryPolicy.getRetryDelay(triedCommand(3), ExitStatusClass.OUT_OF_MEMORY));
+        assertEquals(5000L, retryPolicy.getRetryDelay(triedCommand(4), ExitStatusClass.COMMAND_FAILURE));
+        assertEquals(5000L, retryPolicy.getRetryDelay(triedCommand(9), ExitStatusClass.COMMAND_FAILURE));
+    }
+
+    @Test
+    void backoffDoesNotOverflowAfterManyTries() {
+        RetryPolicy retryPolicy = new DefaultRetryPolicy(1000, 10, 1000L, Long.MAX_VALUE);
+        assertEquals(1000L << 30, retryPolicy.getRetryDelay(triedCommand(500), ExitStatusClass.COMMAND_FAILURE));
+    }
+
+    @Test
+    void commandIsNotRetriedAfterItsMaximumTries() {
+        RetryPolicy retryPolicy = new DefaultRetryPolicy(3, 10, 1000L, 5000L);
+        assertEquals(2000L, retryPolicy.getRetryDelay(triedCommand(2), ExitStatusClass.COMMAND_FAILURE));
+        assertEquals(-1L, retryPolicy.getRetryDelay(triedCommand(3), ExitStatusClass.COMMAND_FAILURE));
+    }
+
+    private static YarnContainer lostCommand(int tries, int uncountedRetries) {
+        YarnContainer container = triedCommand(tries);
+        container.setUncountedRetries(uncountedRetries);
+        return container;
+    }
+
+    @Test
+    void failuresNotCountingAsTryBackOffOnTheirOwnCount() {
+        RetryPolicy retryPolicy = new DefaultRetryPolicy(3, 10, 1000L, 5000L);
+        assertEquals(1000L, retryPolicy.getRetryDelay(lostCommand(3, 1), ExitStatusClass.PREEMPTED));
+        assertEquals(2000L, retryPolicy.getRetryDelay(lostCommand(3, 2), ExitStatusClass.NODE_FAILURE));
+        assertEquals(5000L, retryPolicy.getRetryDelay(lostCommand(0, 8), ExitStatusClass.PREEMPTED));
+    }
+
+    @Test
+    void failuresNotCountingAsTryAreNotRetriedAfterTheirMaximum() {
+        RetryPolicy retryPolicy = new DefaultRetryPolicy(3, 2, 1000L, 5000L);
+        assertEquals(2000L, retryPolicy.getRetryDelay(lostCommand(0, 2), ExitStatusClass.NODE_FAILURE));
+        assertEquals(-1L, retryPolicy.getRetryDelay(lostCommand(0, 3), ExitStatusClass.NODE_FAILURE));
+        assertEquals(-1L, retryPolicy.getRetryDelay(lostCommand(0, 3), ExitStatusClass.PREEMPTED));
+    }
+
+    @Test
+    void containersKilledByAmAreRetriedRightAway() {
+        RetryPolicy retryPolicy = new DefaultRetryPolicy(3, 0, 1000L, 5000L);
+        assertEquals(0L, retryPolicy.getRetryDelay(lostCommand(1, 5), ExitStatusClass.KILLED_BY_AM));
+    }
+
+    @Test
+    void policyIsInstantiatedFromParameters() {
+        TestParameters.init("app.retry.policy=" + DefaultRetryPolicy.class.getName());
+        assertEquals(DefaultRetryPolicy.class, DefaultRetryPolicy.fromParameters().getClass());
+    }
+
+}
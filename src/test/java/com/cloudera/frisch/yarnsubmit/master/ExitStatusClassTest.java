@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import org.apache.hadoop.yarn.api.records.ContainerExitStatus;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExitStatusClassTest {
+
+    @Test
+    void exitStatusesAreClassified() {
+        assertEquals(ExitStatusClass.SUCCESS, ExitStatusClass.fromExitStatus(0));
+        assertEquals(ExitStatusClass.PREEMPTED, ExitStatusClass.fromExitStatus(ContainerExitStatus.PREEMPTED));
+        assertEquals(ExitStatusClass.PREEMPTED, ExitStatusClass.fromExitStatus(ContainerExitStatus.KILLED_BY_CONTAINER_SCHEDULER));
+        assertEquals(ExitStatusClass.KILLED_BY_AM, ExitStatusClass.fromExitStatus(ContainerExitStatus.KILLED_BY_APPMASTER));
+        assertEquals(ExitStatusClass.NODE_FAILURE, ExitStatusClass.fromExitStatus(ContainerExitStatus.DISKS_FAILED));
+        assertEquals(ExitStatusClass.NODE_FAILURE, ExitStatusClass.fromExitStatus(ContainerExitStatus.ABORTED));
+        assertEquals(ExitStatusClass.NODE_FAILURE, ExitStatusClass.fromExitStatus(ContainerExitStatus.KILLED_BY_RESOURCEMANAGER));
+        assertEquals(ExitStatusClass.OUT_OF_MEMORY, ExitStatusClass.fromExitStatus(ContainerExitStatus.KILLED_EXCEEDED_PMEM));
+        assertEquals(ExitStatusClass.OUT_OF_MEMORY, ExitStatusClass.fromExitStatus(ContainerExitStatus.KILLED_EXCEEDED_VMEM));
+        assertEquals(ExitStatusClass.COMMAND_FAILURE, ExitStatusClass.fromExitStatus(1));
+        assertEquals(ExitStatusClass.COMMAND_FAILURE, ExitStatusClass.fromExitStatus(ContainerExitStatus.INVALID));
+    }
+
+    @Test
+    void onlyFailuresOfCommandsCountAsTries() {
+        assertTrue(ExitStatusClass.COMMAND_FAILURE.countsAsTry());
+        assertTrue(ExitStatusClass.OUT_OF_MEMORY.countsAsTry());
+        assertFalse(ExitStatusClass.PREEMPTED.countsAsTry());
+        assertFalse(ExitStatusClass.KILLED_BY_AM.countsAsTry());
+        assertFalse(ExitStatusClass.NODE_FAILURE.countsAsTry());
+    }
+
+    @Test
+    void onlyNodeFailuresBlameNodeRightAway() {
+        assertTrue(ExitStatusClass.NODE_FAILURE.blamesNode());
+        assertFalse(ExitStatusClass.COMMAND_FAILURE.blamesNode());
+        assertFalse(ExitStatusClass.OUT_OF_MEMORY.blamesNode());
+        assertFalse(ExitStatusClass.PREEMPTED.blamesNode());
+        assertTrue(ExitStatusClass.COMMAND_FAILURE.blamesNodeIfSucceedsElsewhere());
+        assertFalse(ExitStatusClass.NODE_FAILURE.blamesNodeIfSucceedsElsewhere());
+        assertFalse(ExitStatusClass.OUT_OF_MEMORY.blamesNodeIfSucceedsElsewhere());
+    }
+
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.LocalHdfsService;
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import com.cloudera.frisch.yarnsubmit.object.DataLocality;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LocalityResolverTest {
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init();
+    }
+
+    private static DataLocality resolve(LocalityResolver localityResolver, YarnContainer container)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<DataLocality> resolved = new CompletableFuture<>();
+        localityResolver.resolve(container, (command, locality) -> {
+            assertSame(container, command);
+            resolved.complete(locality);
+        });
+        return resolved.get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void localityOfDataIsResolvedInBackground(@TempDir Path directory) throws Exception {
+        Files.write(directory.resolve("data"), "data".getBytes(StandardCharsets.UTF_8));
+        LocalityResolver localityResolver = new LocalityResolver(LocalHdfsService.create(), 3);
+        try {
+            DataLocality locality = resolve(localityResolver, YarnContainer.fromCommandLine("@inputs=" + directory + " cat data"));
+            assertFalse(locality.getNodes().isEmpty());
+        } finally {
+            localityResolver.close();
+        }
+    }
+
+    @Test
+    void missingDataHasEmptyLocality(@TempDir Path directory) throws Exception {
+        LocalityResolver localityResolver = new LocalityResolver(LocalHdfsService.create(), 3);
+        try {
+            assertTrue(resolve(localityResolver, YarnContainer.fromCommandLine("@inputs=" + directory.resolve("missing") + " cat data")).isEmpty());
+        } finally {
+            localityResolver.close();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NodeBlacklistTest {
+
+    @Test
+    void nodeIsBlacklistedAfterItsMaximumFailures() {
+        NodeBlacklist nodeBlacklist = new NodeBlacklist(2, 0L);
+        assertFalse(nodeBlacklist.recordFailure("node1", 10));
+        assertTrue(nodeBlacklist.recordFailure("node1", 10));
+        // Already blacklisted
+        assertFalse(nodeBlacklist.recordFailure("node1", 10));
+        assertEquals(1, nodeBlacklist.getNumberOfBlacklistedNodes());
+    }
+
+    @Test
+    void noMoreThanHalfOfClusterIsBlacklisted() {
+        NodeBlacklist nodeBlacklist = new NodeBlacklist(1, 0L);
+        assertTrue(nodeBlacklist.recordFailure("node1", 5));
+        assertTrue(nodeBlacklist.recordFailure("node2", 5));
+        assertFalse(nodeBlacklist.recordFailure("node3", 5));
+        assertEquals(2, nodeBlacklist.getNumberOfBlacklistedNodes());
+        // Cluster of one node is never blacklisted
+        assertFalse(new NodeBlacklist(1, 0L).recordFailure("node1", 1));
+    }
+
+    @Test
+    void noNodeIsBlacklistedWithoutMaximumFailures() {
+        NodeBlacklist nodeBlacklist = new NodeBlacklist(0, 0L);
+        assertFalse(nodeBlacklist.recordFailure("node1", 10));
+        assertFalse(nodeBlacklist.recordFailure(null, 10));
+        assertEquals(0, nodeBlacklist.getNumberOfBlacklistedNodes());
+    }
+
+    @Test
+    void failureOfCommandIsBlamedOnNodeOnlyIfCommandSucceedsElsewhere() {
+        NodeBlacklist nodeBlacklist = new NodeBlacklist(1, 0L);
+        nodeBlacklist.commandFailed(0, "node1");
+        nodeBlacklist.commandAbandoned(0);
+        nodeBlacklist.commandFailed(1, "node2");
+        assertEquals(Collections.emptyList(), nodeBlacklist.commandSucceeded(1, "node2", 10));
+        assertEquals(0, nodeBlacklist.getNumberOfBlacklistedNodes());
+
+        nodeBlacklist.commandFailed(2, "node3");
+        assertEquals(Collections.singletonList("node3"), nodeBlacklist.commandSucceeded(2, "node4", 10));
+        assertEquals(1, nodeBlacklist.getNumberOfBlacklistedNodes());
+    }
+
+    @Test
+    void blacklistedNodesAndFailuresExpire() throws InterruptedException {
+        NodeBlacklist nodeBlacklist = new NodeBlacklist(2, 100L);
+        nodeBlacklist.recordFailure("node1", 10);
+        nodeBlacklist.recordFailure("node1", 10);
+        nodeBlacklist.recordFailure("node2", 10);
+        assertEquals(Collections.emptyList(), nodeBlacklist.removeExpiredNodes());
+        Thread.sleep(200L);
+
+        assertEquals(Collections.singletonList("node1"), nodeBlacklist.removeExpiredNodes());
+        assertEquals(0, nodeBlacklist.getNumberOfBlacklistedNodes());
+        // Failures before expiry are forgotten
+        assertFalse(nodeBlacklist.recordFailure("node1", 10));
+        assertFalse(nodeBlacklist.recordFailure("node2", 10));
+        assertTrue(nodeBlacklist.recordFailure("node2", 10));
+    }
+
+    @Test
+    void blacklistedNodesNeverExpireWithoutTimeout() throws InterruptedException {
+        NodeBlacklist nodeBlacklist = new NodeBlacklist(1, 0L);
+        nodeBlacklist.recordFailure("node1", 10);
+        Thread.sleep(10L);
+        assertEquals(Collections.emptyList(), nodeBlacklist.removeExpiredNodes());
+        assertEquals(1, nodeBlacklist.getNumberOfBlacklistedNodes());
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.LocalHdfsService;
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import com.cloudera.frisch.yarnsubmit.object.RecoveredState;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskJournalTest {
+
+    private final HdfsService hdfsService = LocalHdfsService.create();
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init();
+    }
+
+    private static YarnContainer command(int index) {
+        YarnContainer container = new YarnContainer("echo " + index);
+        container.setIndex(index);
+        return container;
+    }
+
+    @Test
+    void noJournalMeansNothingToRecover(@TempDir Path directory) throws IOException {
+        TaskJournal journal = new TaskJournal(hdfsService, directory.resolve("journal") + "/");
+        assertTrue(journal.replay().isEmpty());
+    }
+
+    @Test
+    void journalOfAnAttemptIsReplayedByNextOne(@TempDir Path directory) throws IOException {
+        String journalDirectory = directory + "/";
+        TaskJournal journal = new TaskJournal(hdfsService, journalDirectory);
+        journal.open(1);
+        journal.commandsRunning(Arrays.asList(command(0), command(1), command(2)), 12L);
+        journal.commandsRunning(Collections.singletonList(command(3)), 13L);
+        journal.commandFinished(command(0), true);
+        journal.commandFinished(command(1), false);
+        journal.flush();
+        journal.close();
+
+        RecoveredState state = new TaskJournal(hdfsService, journalDirectory).replay();
+        assertEquals(Boolean.TRUE, state.getFinishedCommands().get(0));
+        assertEquals(Boolean.FALSE, state.getFinishedCommands().get(1));
+        assertEquals(2, state.getFinishedCommands().size());
+        assertEquals(Long.valueOf(12L), state.getRunningCommands().get(2));
+        assertEquals(Integer.valueOf(2), state.getPositionsInContainer().get(2));
+        assertEquals(Long.valueOf(13L), state.getRunningCommands().get(3));
+        assertEquals(2, state.getRunningCommands().size());
+    }
+
+    @Test
+    void journalsAreReplayedInOrderOfAttempts(@TempDir Path directory) throws IOException {
+        // Attempt 10 must be replayed after attempt 2, although it comes first in alphabetical order
+        Files.write(directory.resolve("attempt-2"), Arrays.asList("R 5 7", "F 7"), StandardCharsets.UTF_8);
+        Files.write(directory.resolve("attempt-10"), Arrays.asList("R 9 7", "S 7"), StandardCharsets.UTF_8);
+        Files.write(directory.resolve("attempt-1"), Collections.singletonList("R 3 7"), StandardCharsets.UTF_8);
+
+        RecoveredState state = new TaskJournal(hdfsService, directory + "/").replay();
+        assertEquals(Boolean.TRUE, state.getFinishedCommands().get(7));
+        assertTrue(state.getRunningCommands().isEmpty());
+    }
+
+    @Test
+    void commandRunAgainAfterFailingIsRunning(@TempDir Path directory) throws IOException {
+        Files.write(directory.resolve("attempt-1"), Arrays.asList("R 5 7", "F 7", "R 6 7"), StandardCharsets.UTF_8);
+
+        RecoveredState state = new TaskJournal(hdfsService, directory + "/").replay();
+        assertTrue(state.getFinishedCommands().isEmpty());
+        assertEquals(Long.valueOf(6L), state.getRunningCommands().get(7));
+    }
+
+    @Test
+    void incompleteAndUnknownLinesAreIgnored(@TempDir Path directory) throws IOException {
+        Files.write(directory.resolve("attempt-1"), Arrays.asList("R 5 1,2", "S 1", "X 2", "S two", "R 6"), StandardCharsets.UTF_8);
+
+        RecoveredState state = new TaskJournal(hdfsService, directory + "/").replay();
+        assertEquals(Collections.singletonMap(1, true), state.getFinishedCommands());
+        assertEquals(Collections.singletonMap(2, 5L), state.getRunningCommands());
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.LocalHdfsService;
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import com.cloudera.frisch.yarnsubmit.services.HdfsService;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskResultsTest {
+
+    private final HdfsService hdfsService = LocalHdfsService.create();
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init();
+    }
+
+    private static YarnContainer command(int index, boolean successful) {
+        YarnContainer container = new YarnContainer("echo " + index);
+        container.setIndex(index);
+        container.setSuccessful(successful);
+        container.setExitCode(successful ? 0 : 1);
+        return container;
+    }
+
+    @Test
+    void noResultsMeansNoFailedCommands(@TempDir Path directory) throws IOException {
+        assertTrue(TaskResults.readFailedCommands(hdfsService, directory.resolve("results") + "/").isEmpty());
+    }
+
+    @Test
+    void failedCommandsAreReadFromResultsOfAllAttemptsInOrder(@TempDir Path directory) throws IOException {
+        String resultsDirectory = directory + "/";
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            TaskResults results = new TaskResults(hdfsService, resultsDirectory);
+            results.open(attempt);
+            results.commandFinished(command(attempt * 2, true), "node1");
+            results.commandFinished(command(attempt * 2 + 1, false), "node1");
+            results.close();
+        }
+
+        List<Map<String, Object>> failedCommands = TaskResults.readFailedCommands(hdfsService, resultsDirectory);
+        assertEquals(10, failedCommands.size());
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            Map<String, Object> failedCommand = failedCommands.get(attempt - 1);
+            assertEquals(attempt * 2 + 1, ((Number) failedCommand.get("index")).intValue());
+            assertEquals(1, ((Number) failedCommand.get("exitCode")).intValue());
+        }
+    }
+
+    @Test
+    void commandSkippedIsWrittenWithItsReason(@TempDir Path directory) throws IOException {
+        String resultsDirectory = directory + "/";
+        TaskResults results = new TaskResults(hdfsService, resultsDirectory);
+        results.open(1);
+        YarnContainer skipped = command(4, false);
+        skipped.setSkippedReason("skipped: parent a failed");
+        results.commandFinished(command(3, false), "node1");
+        results.commandFinished(skipped, null);
+        results.close();
+
+        List<Map<String, Object>> failedCommands = TaskResults.readFailedCommands(hdfsService, resultsDirectory);
+        assertEquals(2, failedCommands.size());
+        assertNull(failedCommands.get(0).get("skipped"));
+        assertEquals("skipped: parent a failed", failedCommands.get(1).get("skipped"));
+    }
+
+    @Test
+    void lineCutByEndOfAttemptIsSkipped(@TempDir Path directory) throws IOException {
+        String resultsDirectory = directory + "/";
+        try (FSDataOutputStream out = hdfsService.getFileSystem().create(new org.apache.hadoop.fs.Path(resultsDirectory + "attempt-1.jsonl"))) {
+            out.write("{\"index\":0,\"successful\":false}\n{\"index\":1,\"successful\":fa".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<Map<String, Object>> failedCommands = TaskResults.readFailedCommands(hdfsService, resultsDirectory);
+        assertEquals(1, failedCommands.size());
+        assertEquals(0, ((Number) failedCommands.get(0).get("index")).intValue());
+    }
+}
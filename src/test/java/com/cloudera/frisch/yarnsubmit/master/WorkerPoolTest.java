@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.master;
+
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import com.cloudera.frisch.yarnsubmit.container.TaskChannel;
+import com.cloudera.frisch.yarnsubmit.container.TaskProtocol;
+import com.cloudera.frisch.yarnsubmit.object.ContainerRegistry;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkerPoolTest {
+
+    private final ContainerRegistry registry = new ContainerRegistry();
+    private WorkerPool workerPool;
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init();
+    }
+
+    @BeforeEach
+    void startPool() throws IOException {
+        workerPool = new WorkerPool(2, 10L);
+        workerPool.start(new AmContext(null, null, registry, null, null, workerPool, null, null, null, null, null, null, null), "localhost");
+    }
+
+    @AfterEach
+    void closePool() {
+        workerPool.close();
+    }
+
+    private TaskChannel connect(String secret, long workerId) throws IOException {
+        return TaskChannel.connect(new Socket("localhost", workerPool.getPort()), secret, workerId);
+    }
+
+    private String secret() {
+        return workerPool.getWorkerEnvironment().get(TaskChannel.SECRET_ENV);
+    }
+
+    @Test
+    void secretIsGivenThroughEnvironmentNotCommandLine() {
+        assertFalse(workerPool.createWorkerCommand(7L).contains(secret()));
+        assertTrue(workerPool.createWorkerCommand(7L).endsWith(" 7"));
+    }
+
+    @Test
+    void workerGetsCommandsToRun() throws IOException {
+        registry.addContainer(new YarnContainer("echo hello"));
+        workerPool.addWorker(7L);
+
+        try (TaskChannel worker = connect(secret(), 7L)) {
+            worker.send(TaskProtocol.NEXT);
+            String[] task = worker.receive().split(" ");
+            assertEquals(TaskProtocol.TASK, task[0]);
+            assertEquals("echo hello", new String(Base64.getDecoder().decode(task[1]), StandardCharsets.UTF_8));
+        }
+        assertEquals(1, registry.getRunningContainers().size());
+        assertEquals(0, workerPool.getNumberOfWorkersNeeded(0));
+    }
+
+    @Test
+    void workerNotKnowingTheSecretIsRejected() {
+        workerPool.addWorker(7L);
+        assertThrows(IOException.class, () -> connect(TaskChannel.newSecret(), 7L));
+    }
+
+    @Test
+    void unknownWorkerIsDisconnected() throws IOException {
+        registry.addContainer(new YarnContainer("echo hello"));
+
+        try (TaskChannel worker = connect(secret(), 8L)) {
+            worker.send(TaskProtocol.NEXT);
+            assertThrows(IOException.class, worker::receive);
+        }
+        assertEquals(0, registry.getRunningContainers().size());
+    }
+
+    @Test
+    void workersNeededAreCappedAndCountBusyOnesButNotStoppingOnes() {
+        assertEquals(2, workerPool.getNumberOfWorkersNeeded(5));
+        assertEquals(1, workerPool.getNumberOfWorkersNeeded(1));
+        workerPool.addWorker(1L);
+        workerPool.setWorkerBusy(1L, true);
+        assertEquals(1, workerPool.getNumberOfWorkersNeeded(1));
+        workerPool.addWorker(2L);
+        workerPool.stopWorker(2L);
+        assertEquals(1, workerPool.getNumberOfWorkersNeeded(1));
+        assertTrue(workerPool.removeWorker(2L));
+        assertFalse(workerPool.isWorker(2L));
+        assertFalse(workerPool.removeWorker(3L));
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CommandDagTest {
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init();
+    }
+
+    private static YarnContainer command(String line) {
+        return YarnContainer.fromCommandLine(line);
+    }
+
+    @Test
+    void commandsAreRankedByCriticalPath() {
+        YarnContainer a = command("@id=a echo a");
+        YarnContainer b = command("@id=b @after=a echo b");
+        YarnContainer c = command("@id=c @after=b echo c");
+        YarnContainer d = command("@id=d @after=a echo d");
+        CommandDag dag = new CommandDag(Arrays.asList(a, b, c, d));
+
+        assertEquals(4, dag.size());
+        assertEquals(3, a.getRank());
+        assertEquals(2, b.getRank());
+        assertEquals(1, c.getRank());
+        assertEquals(1, d.getRank());
+        assertEquals(Collections.singletonList(a), dag.getRoots());
+    }
+
+    @Test
+    void commandsWithoutIdAreNamedByPosition() {
+        YarnContainer first = command("echo first");
+        YarnContainer second = command("@after=#1 echo second");
+        new CommandDag(Arrays.asList(first, second));
+
+        assertEquals("#1", first.getId());
+        assertEquals(2, first.getRank());
+    }
+
+    @Test
+    void cycleIsRejected() {
+        List<YarnContainer> commands = Arrays.asList(
+                command("@id=a @after=c echo a"), command("@id=b @after=a echo b"), command("@id=c @after=b echo c"));
+        assertThrows(IllegalArgumentException.class, () -> new CommandDag(commands));
+    }
+
+    @Test
+    void unknownParentIsRejected() {
+        List<YarnContainer> commands = Collections.singletonList(command("@id=a @after=missing echo a"));
+        assertThrows(IllegalArgumentException.class, () -> new CommandDag(commands));
+    }
+
+    @Test
+    void duplicatedIdIsRejected() {
+        List<YarnContainer> commands = Arrays.asList(command("@id=a echo a"), command("@id=a echo b"));
+        assertThrows(IllegalArgumentException.class, () -> new CommandDag(commands));
+    }
+
+    @Test
+    void childIsReleasedOnceAllItsParentsSucceeded() {
+        YarnContainer a = command("@id=a echo a");
+        YarnContainer b = command("@id=b echo b");
+        YarnContainer c = command("@id=c @after=a,b echo c");
+        CommandDag dag = new CommandDag(Arrays.asList(a, b, c));
+
+        assertTrue(dag.commandSucceeded(a).isEmpty());
+        assertEquals(Collections.singletonList(c), dag.commandSucceeded(b));
+    }
+
+    @Test
+    void failureFailsAllCommandsDownstreamNotFinished() {
+        YarnContainer a = command("@id=a echo a");
+        YarnContainer b = command("@id=b @after=a echo b");
+        YarnContainer c = command("@id=c @after=b echo c");
+        YarnContainer d = command("@id=d @after=a echo d");
+        YarnContainer e = command("@id=e echo e");
+        CommandDag dag = new CommandDag(Arrays.asList(a, b, c, d, e));
+        d.setFinalState(YarnContainer.state.FINISHED);
+
+        assertEquals(Arrays.asList(b, c), dag.commandFailed(a));
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ContainerRegistryTest {
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init();
+    }
+
+    private static DataLocality locality(String node, String rack) {
+        return new DataLocality(Collections.singletonList(node), Collections.singletonList(rack));
+    }
+
+    @Test
+    void commandsAreRunInOrderOfRankThenQueuing() {
+        ContainerRegistry registry = new ContainerRegistry();
+        YarnContainer first = new YarnContainer("first");
+        YarnContainer ranked = new YarnContainer("ranked");
+        ranked.setRank(1);
+        YarnContainer last = new YarnContainer("last");
+        registry.addContainer(first);
+        registry.addContainer(ranked);
+        registry.addContainer(last);
+
+        ResourceProfile profile = ResourceProfile.getDefault();
+        assertSame(ranked, registry.pollContainerToRun(profile));
+        assertSame(first, registry.pollContainerToRun(profile));
+        assertSame(last, registry.pollContainerToRun(profile));
+        assertNull(registry.pollContainerToRun(profile));
+        assertEquals(0, registry.getNumberOfContainersToRun());
+    }
+
+    @Test
+    void commandCloseToContainerIsTakenFirst() {
+        ContainerRegistry registry = new ContainerRegistry();
+        YarnContainer noLocality = YarnContainer.fromCommandLine("@inputs=/data/x first");
+        YarnContainer onRack = YarnContainer.fromCommandLine("@inputs=/data/a second");
+        YarnContainer onNode = YarnContainer.fromCommandLine("@inputs=/data/b third");
+        registry.addContainer(noLocality);
+        registry.addContainer(onRack);
+        registry.addContainer(onNode);
+        registry.setLocality(onRack, locality("node2", "/rack1"));
+        registry.setLocality(onNode, locality("node1", "/rack1"));
+
+        ResourceProfile profile = ResourceProfile.getDefault();
+        assertSame(onNode, registry.pollContainerToRun(profile, "node1", "/rack1"));
+        assertSame(onRack, registry.pollContainerToRun(profile, "node1", "/rack1"));
+        assertSame(noLocality, registry.pollContainerToRun(profile, "node1", "/rack1"));
+        assertNull(registry.pollContainerToRun(profile, "node1", "/rack1"));
+    }
+
+    @Test
+    void commandTakenOutOfOrderIsNotCloseToContainersAnymore() {
+        ContainerRegistry registry = new ContainerRegistry();
+        YarnContainer onNode = YarnContainer.fromCommandLine("@inputs=/data/a first");
+        YarnContainer other = new YarnContainer("second");
+        registry.addContainer(onNode);
+        registry.addContainer(other);
+        registry.setLocality(onNode, locality("node1", "/rack1"));
+
+        assertSame(onNode, registry.takeContainerToRun(onNode));
+        assertNull(registry.takeContainerToRun(onNode));
+        assertSame(other, registry.pollContainerToRun(ResourceProfile.getDefault(), "node1", "/rack1"));
+        assertEquals(0, registry.getNumberOfContainersToRun());
+    }
+
+    @Test
+    void commandRetriedIsCloseToItsDataAgain() {
+        ContainerRegistry registry = new ContainerRegistry();
+        YarnContainer onNode = YarnContainer.fromCommandLine("@inputs=/data/a first");
+        YarnContainer other = new YarnContainer("second");
+        registry.addContainer(onNode);
+        registry.setLocality(onNode, locality("node1", "/rack1"));
+        registry.pollContainerToRun(ResourceProfile.getDefault());
+        registry.addContainer(other);
+        registry.setContainersRunning(Collections.singletonList(onNode), 12L);
+
+        registry.removeRunningContainer(12L);
+        registry.resetContainerToRun(onNode);
+
+        assertSame(onNode, registry.pollContainerToRun(ResourceProfile.getDefault(), "node1", "/rack1"));
+    }
+
+    @Test
+    void commandsWithInputsAreLocatedAgainOnceTheirLocalityIsKnown() {
+        ContainerRegistry registry = new ContainerRegistry();
+        YarnContainer first = YarnContainer.fromCommandLine("@inputs=/data/a first");
+        YarnContainer second = YarnContainer.fromCommandLine("@inputs=/data/b second");
+        registry.addContainer(first);
+        registry.addContainer(second);
+        registry.addContainer(new YarnContainer("no inputs"));
+        assertEquals(Arrays.asList(first, second), registry.pollContainersToLocate(10));
+
+        registry.setLocality(second, locality("node1", "/rack1"));
+        // Command not waiting to be launched is not located
+        YarnContainer taken = registry.pollContainerToRun(ResourceProfile.getDefault());
+        registry.setLocality(taken, locality("node2", "/rack1"));
+
+        assertEquals(Collections.singletonList(second), registry.pollContainersToLocate(10));
+    }
+
+    @Test
+    void commandsDependingOnAFailedCommandAreSkippedAndReturned() {
+        YarnContainer a = YarnContainer.fromCommandLine("@id=a echo a");
+        YarnContainer b = YarnContainer.fromCommandLine("@id=b @after=a echo b");
+        YarnContainer c = YarnContainer.fromCommandLine("@id=c @after=b echo c");
+        YarnContainer d = YarnContainer.fromCommandLine("@id=d echo d");
+        ContainerRegistry registry = new ContainerRegistry(new CommandDag(Arrays.asList(a, b, c, d)), new RecoveredState());
+
+        assertEquals(Collections.emptyList(), registry.setContainerFinished(d, true));
+        List<YarnContainer> skipped = registry.setContainerFinished(a, false);
+
+        assertEquals(Arrays.asList(b, c), skipped);
+        assertEquals("skipped: parent a failed", c.getSkippedReason());
+        assertNull(a.getSkippedReason());
+        assertEquals(Arrays.asList(a, b, c), registry.getFailedContainers());
+        assertEquals(4, registry.getNumberOfCompletedContainers());
+    }
+
+    @Test
+    void failedCommandsAreACopyNotChangedByLaterFailures() {
+        ContainerRegistry registry = new ContainerRegistry();
+        YarnContainer first = new YarnContainer("first");
+        YarnContainer second = new YarnContainer("second");
+        registry.addContainer(first);
+        registry.addContainer(second);
+        registry.setContainerFinished(first, false);
+
+        List<YarnContainer> failed = registry.getFailedContainers();
+        registry.setContainerFinished(second, false);
+
+        assertEquals(Collections.singletonList(first), failed);
+        assertEquals(Arrays.asList(first, second), registry.getFailedContainers());
+    }
+
+}
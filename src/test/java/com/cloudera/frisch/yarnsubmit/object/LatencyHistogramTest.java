@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramIsAllZeros() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(50));
+        for (Map.Entry<String, Long> entry : histogram.toMap().entrySet()) {
+            assertEquals(0L, entry.getValue(), entry.getKey());
+        }
+    }
+
+    @Test
+    void percentilesOfOneValueAreThatValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        assertEquals(100, histogram.getPercentile(0));
+        assertEquals(100, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(100));
+    }
+
+    @Test
+    void percentilesAreUpperBoundsOfTheirBucketCappedByExtremes() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getMean());
+        assertEquals(1, histogram.getPercentile(0));
+        // 500 is in bucket [256, 512)
+        assertEquals(511, histogram.getPercentile(50));
+        // 990 is in bucket [512, 1024), capped by maximum
+        assertEquals(1000, histogram.getPercentile(99));
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    void percentilesAreAtMostTwiceTheRealValue() {
+        Random random = new Random(42);
+        long[] values = new long[10000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1 + (long) Math.abs(random.nextGaussian() * 5000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{1, 10, 50, 90, 99, 99.9}) {
+            long real = values[(int) Math.ceil(values.length * percentile / 100d) - 1];
+            long estimated = histogram.getPercentile(percentile);
+            assertTrue(estimated >= real && estimated < 2 * real, "p" + percentile + ": " + estimated + " for " + real);
+        }
+    }
+
+    @Test
+    void negativeAndHugeValuesAreKept() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE / 2, histogram.getPercentile(100));
+        assertEquals(0L, histogram.toMap().get("min"));
+    }
+}
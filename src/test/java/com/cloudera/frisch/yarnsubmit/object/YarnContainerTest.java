@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.object;
+
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import org.apache.hadoop.yarn.api.records.ExecutionType;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class YarnContainerTest {
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init("app.container.memory=1024", "app.container.vcores=1", "app.priority=0");
+    }
+
+    @Test
+    void lineWithoutOptionIsTheCommand() {
+        YarnContainer container = YarnContainer.fromCommandLine("  echo hello  ");
+
+        assertEquals("echo hello", container.getCommand());
+        assertEquals(ResourceProfile.getDefault(), container.getProfile());
+        assertEquals(Collections.emptyList(), container.getInputPaths());
+        assertNull(container.getId());
+        assertEquals(Collections.emptyList(), container.getParents());
+    }
+
+    @Test
+    void optionsAreReadUntilTheCommand() {
+        YarnContainer container = YarnContainer.fromCommandLine(
+                "@inputs=/data/a,/data/b @memory=2048 @vcores=2 @priority=3 @execution=opportunistic @id=x @after=y,z run --opt @literal=1");
+
+        assertEquals("run --opt @literal=1", container.getCommand());
+        assertEquals(Arrays.asList("/data/a", "/data/b"), container.getInputPaths());
+        assertEquals(new ResourceProfile(2048, 2, 3, ExecutionType.OPPORTUNISTIC), container.getProfile());
+        assertEquals("x", container.getId());
+        assertEquals(Arrays.asList("y", "z"), container.getParents());
+    }
+
+    @Test
+    void invalidOrUnknownOptionsAreIgnored() {
+        YarnContainer container = YarnContainer.fromCommandLine("@memory=lots @execution=fast @color=blue echo hello");
+
+        assertEquals("echo hello", container.getCommand());
+        assertEquals(ResourceProfile.getDefault(), container.getProfile());
+    }
+
+    @Test
+    void wordStartingWithAtWithoutValueIsTheCommand() {
+        YarnContainer container = YarnContainer.fromCommandLine("@memory=512 @script.sh arg");
+
+        assertEquals("@script.sh arg", container.getCommand());
+        assertEquals(512, container.getProfile().getMemory());
+    }
+
+    @Test
+    void lineWithOnlyOptionsHasAnEmptyCommand() {
+        assertEquals("", YarnContainer.fromCommandLine("@id=a").getCommand());
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FailedCommandsCursorTest {
+
+    private static Map<String, Object> page(int attempt, int total, int since, int... indexes) {
+        List<Map<String, Object>> failedCommands = new ArrayList<>();
+        for (int index : indexes) {
+            failedCommands.add(Collections.singletonMap("index", index));
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("attempt", attempt);
+        page.put("total", total);
+        page.put("next", since + indexes.length);
+        page.put("failedCommands", failedCommands);
+        return page;
+    }
+
+    @Test
+    void pagesAreAskedForUntilAllFailedCommandsAreGot() {
+        FailedCommandsCursor cursor = new FailedCommandsCursor();
+        List<Map<String, Object>> failedCommands = new ArrayList<>();
+
+        assertTrue(cursor.accept(page(1, 3, 0, 10, 11), failedCommands));
+        assertEquals(2, cursor.getNext());
+        assertFalse(cursor.accept(page(1, 3, 2, 12), failedCommands));
+        assertEquals(3, cursor.getNext());
+        assertEquals(3, failedCommands.size());
+
+        // Only new failed commands are got at next check
+        failedCommands.clear();
+        assertFalse(cursor.accept(page(1, 3, 3), failedCommands));
+        assertFalse(cursor.accept(page(1, 4, 3, 13), failedCommands));
+        assertEquals(Collections.singletonList(Collections.singletonMap("index", 13)), failedCommands);
+        assertEquals(4, cursor.getNext());
+    }
+
+    @Test
+    void newAttemptOfAmIsAskedFromStart() {
+        FailedCommandsCursor cursor = new FailedCommandsCursor();
+        List<Map<String, Object>> failedCommands = new ArrayList<>();
+        assertFalse(cursor.accept(page(1, 2, 0, 10, 11), failedCommands));
+
+        // New attempt has more failed commands than position got from previous one: page from that position is dropped
+        failedCommands.clear();
+        assertTrue(cursor.accept(page(2, 3, 2, 14), failedCommands));
+        assertEquals(0, cursor.getNext());
+        assertTrue(failedCommands.isEmpty());
+        assertFalse(cursor.accept(page(2, 3, 0, 12, 13, 14), failedCommands));
+        assertEquals(3, failedCommands.size());
+        assertEquals(3, cursor.getNext());
+    }
+
+    @Test
+    void positionBeyondTotalIsAskedFromStart() {
+        FailedCommandsCursor cursor = new FailedCommandsCursor();
+        List<Map<String, Object>> failedCommands = new ArrayList<>();
+        assertFalse(cursor.accept(page(1, 5, 0, 1, 2, 3, 4, 5), failedCommands));
+
+        // Same attempt id seen with fewer failed commands (as a client starting with attempt 0)
+        failedCommands.clear();
+        assertTrue(cursor.accept(page(1, 1, 5), failedCommands));
+        assertEquals(0, cursor.getNext());
+        assertFalse(cursor.accept(page(1, 1, 0, 6), failedCommands));
+        assertEquals(1, failedCommands.size());
+    }
+
+    @Test
+    void firstPageOfFirstAttemptIsKept() {
+        FailedCommandsCursor cursor = new FailedCommandsCursor();
+        List<Map<String, Object>> failedCommands = new ArrayList<>();
+        assertFalse(cursor.accept(page(3, 1, 0, 7), failedCommands));
+        assertEquals(1, failedCommands.size());
+        assertEquals(1, cursor.getNext());
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.services;
+
+import com.cloudera.frisch.yarnsubmit.LocalHdfsService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HdfsServiceTest {
+
+    @Test
+    void resultsOfTasksKeepTheirOrder() throws IOException {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int index = i;
+            // Last tasks complete first
+            tasks.add(() -> {
+                Thread.sleep(10L * (10 - index));
+                return index;
+            });
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), HdfsService.runInParallel(tasks, 4));
+    }
+
+    @Test
+    void firstFailureCancelsOtherTasks() throws InterruptedException {
+        CountDownLatch slowTaskStarted = new CountDownLatch(1);
+        AtomicBoolean slowTaskInterrupted = new AtomicBoolean();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        // Slow task is first, so failure of the second one must not wait for it
+        tasks.add(() -> {
+            slowTaskStarted.countDown();
+            try {
+                Thread.sleep(60000L);
+            } catch (InterruptedException e) {
+                slowTaskInterrupted.set(true);
+                throw e;
+            }
+            return 0;
+        });
+        tasks.add(() -> {
+            slowTaskStarted.await();
+            throw new IOException("failure");
+        });
+
+        long start = System.currentTimeMillis();
+        IOException e = assertThrows(IOException.class, () -> HdfsService.runInParallel(tasks, 2));
+        assertEquals("failure", e.getMessage());
+        assertTrue(System.currentTimeMillis() - start < 30000L);
+        assertTrue(slowTaskInterrupted.get());
+    }
+
+    @Test
+    void failureOfATaskNotThrowingIOExceptionIsWrapped() {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        tasks.add(() -> { throw new IllegalStateException("failure"); });
+        IOException e = assertThrows(IOException.class, () -> HdfsService.runInParallel(tasks, 1));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void filesAreCopiedToDirectory(@TempDir Path directory) throws IOException {
+        HdfsService hdfsService = LocalHdfsService.create();
+        Path input = directory.resolve("input");
+        Files.createDirectories(input);
+        Path output = directory.resolve("output");
+        Files.createDirectories(output);
+        List<String> inputPaths = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Path file = input.resolve("file-" + i);
+            Files.write(file, ("content " + i).getBytes(StandardCharsets.UTF_8));
+            inputPaths.add(file.toString());
+        }
+
+        hdfsService.copyFilesToHDFS(inputPaths, output + "/", 3, 4096);
+
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(("content " + i).getBytes(StandardCharsets.UTF_8), Files.readAllBytes(output.resolve("file-" + i)));
+        }
+    }
+
+    @Test
+    void missingFileFailsCopyWithoutLeavingTarget(@TempDir Path directory) throws IOException {
+        HdfsService hdfsService = LocalHdfsService.create();
+        Path output = directory.resolve("output");
+        Files.createDirectories(output);
+
+        assertThrows(IOException.class, () ->
+                hdfsService.copyFilesToHDFS(Arrays.asList(directory.resolve("missing").toString()), output + "/", 1, 4096));
+        assertFalse(Files.exists(output.resolve("missing")));
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.services;
+
+import com.cloudera.frisch.yarnsubmit.LocalHdfsService;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StagingCacheServiceTest {
+
+    private final HdfsService hdfsService = LocalHdfsService.create();
+
+    private static String writeFile(Path directory, String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file.toString();
+    }
+
+    private FsPermission getPermission(String path) throws IOException {
+        FileSystem fileSystem = hdfsService.getFileSystem();
+        return fileSystem.getFileStatus(new org.apache.hadoop.fs.Path(path)).getPermission();
+    }
+
+    @Test
+    void unchangedFileIsStagedOnce(@TempDir Path directory) throws IOException {
+        StagingCacheService stagingCacheService = new StagingCacheService(hdfsService, directory.resolve("cache").toString(), false);
+        String file = writeFile(directory, "app.jar", "content");
+
+        String stagedFile = stagingCacheService.stageFiles(Collections.singletonList(file), null, 1, 4096).get(0);
+        long modificationTime = hdfsService.getFileSystem().getFileStatus(new org.apache.hadoop.fs.Path(stagedFile)).getModificationTime();
+        String stagedAgain = stagingCacheService.stageFiles(Collections.singletonList(file), null, 1, 4096).get(0);
+
+        assertEquals(stagedFile, stagedAgain);
+        assertTrue(stagedFile.endsWith("/app.jar"));
+        assertEquals(modificationTime, hdfsService.getFileSystem().getFileStatus(new org.apache.hadoop.fs.Path(stagedAgain)).getModificationTime());
+        assertArrayEquals("content".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(Path.of(new org.apache.hadoop.fs.Path(stagedFile).toUri().getPath())));
+    }
+
+    @Test
+    void changedFileIsStagedToAnotherPath(@TempDir Path directory) throws IOException {
+        StagingCacheService stagingCacheService = new StagingCacheService(hdfsService, directory.resolve("cache").toString(), false);
+        String file = writeFile(directory, "app.jar", "content");
+        String stagedFile = stagingCacheService.stageFiles(Collections.singletonList(file), null, 1, 4096).get(0);
+        writeFile(directory, "app.jar", "new content");
+        assertNotEquals(stagedFile, stagingCacheService.stageFiles(Collections.singletonList(file), null, 1, 4096).get(0));
+    }
+
+    @Test
+    void filesArePrivateUnlessCacheIsPublic(@TempDir Path directory) throws IOException {
+        String file = writeFile(directory, "app.jar", "content");
+        String otherFile = writeFile(directory, "other.jar", "other content");
+
+        String privateFile = new StagingCacheService(hdfsService, directory.resolve("private").toString(), false)
+                .stageFiles(Collections.singletonList(file), null, 1, 4096).get(0);
+        List<String> publicFiles = new StagingCacheService(hdfsService, directory.resolve("public").toString(), true)
+                .stageFiles(Arrays.asList(file, otherFile), null, 2, 4096);
+
+        assertEquals(new FsPermission((short) 0600), getPermission(privateFile));
+        assertEquals(new FsPermission((short) 0644), getPermission(publicFiles.get(0)));
+        assertEquals(new FsPermission((short) 0644), getPermission(publicFiles.get(1)));
+        assertTrue(publicFiles.get(1).endsWith("/other.jar"));
+    }
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.services;
+
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import com.cloudera.frisch.yarnsubmit.object.DataLocality;
+import com.cloudera.frisch.yarnsubmit.object.ResourceProfile;
+import com.cloudera.frisch.yarnsubmit.object.YarnContainer;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.NodeId;
+import org.apache.hadoop.yarn.api.records.Priority;
+import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.hadoop.yarn.client.api.AMRMClient;
+import org.apache.hadoop.yarn.client.api.async.AMRMClientAsync;
+import org.apache.hadoop.yarn.client.api.impl.AMRMClientImpl;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class YarnAmServiceTest {
+
+    /**
+     * Client to RM recording asks sent, cancelled and containers released, instead of sending them
+     */
+    private static class RecordingRmClient extends AMRMClientImpl<AMRMClient.ContainerRequest> {
+        final List<AMRMClient.ContainerRequest> asks = new ArrayList<>();
+        final List<ContainerId> released = new ArrayList<>();
+
+        @Override
+        public synchronized void addContainerRequest(AMRMClient.ContainerRequest request) {
+            asks.add(request);
+        }
+
+        @Override
+        public synchronized void removeContainerRequest(AMRMClient.ContainerRequest request) {
+            asks.remove(request);
+        }
+
+        @Override
+        public synchronized void releaseAssignedContainer(ContainerId containerId) {
+            released.add(containerId);
+        }
+    }
+
+    private RecordingRmClient rmClient;
+    private YarnAmService yarnAmService;
+    private long nextContainerId;
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init();
+    }
+
+    @BeforeEach
+    void createService() {
+        rmClient = new RecordingRmClient();
+        yarnAmService = new YarnAmService() {
+            @Override
+            public String getRackOfNode(String node) {
+                return node.startsWith("rack1") ? "/rack1" : "/rack2";
+            }
+        };
+        yarnAmService.rmClient = AMRMClientAsync.createAMRMClientAsync(rmClient, 1000, null);
+        nextContainerId = 1;
+    }
+
+    private Container allocate(String node, AMRMClient.ContainerRequest request) {
+        ApplicationAttemptId attemptId = ApplicationAttemptId.newInstance(ApplicationId.newInstance(1L, 1), 1);
+        Container container = Container.newInstance(ContainerId.newContainerId(attemptId, nextContainerId++),
+                NodeId.newInstance(node, 8041), node + ":8042", Resource.newInstance(1024, 1), Priority.newInstance(0), null);
+        container.setAllocationRequestId(request.getAllocationRequestId());
+        return container;
+    }
+
+    private YarnContainer askCloseTo(String node, String rack) {
+        YarnContainer container = new YarnContainer("cat data");
+        yarnAmService.askForContainerCloseTo(container,
+                new DataLocality(Collections.singletonList(node), Collections.singletonList(rack)), false);
+        return container;
+    }
+
+    @Test
+    void surplusAsksAreCancelledAndAllRemovedOnceNoCommandWaits() {
+        ResourceProfile profile = ResourceProfile.getDefault();
+        yarnAmService.reconcileAsks(profile, 3);
+        assertEquals(3, rmClient.asks.size());
+        assertEquals(3, yarnAmService.getNumberOfOutstandingAsks());
+
+        yarnAmService.reconcileAsks(profile, 1);
+        assertEquals(1, rmClient.asks.size());
+        assertEquals(1, yarnAmService.getNumberOfOutstandingAsks());
+
+        yarnAmService.reconcileAsks(Collections.emptyMap());
+        assertTrue(rmClient.asks.isEmpty());
+        assertEquals(0, yarnAmService.getNumberOfOutstandingAsks());
+    }
+
+    @Test
+    void allocationFulfillsAnAskWhichIsNotSentAgain() {
+        yarnAmService.reconcileAsks(ResourceProfile.getDefault(), 2);
+        AMRMClient.ContainerRequest request = rmClient.asks.get(0);
+
+        assertNull(yarnAmService.containerAllocated(allocate("node1", request)));
+        assertEquals(1, rmClient.asks.size());
+        assertEquals(1, yarnAmService.getNumberOfOutstandingAsks());
+        assertEquals(1, yarnAmService.getNumberOfHeldContainers());
+
+        // Queue drained meanwhile: the remaining ask is cancelled
+        yarnAmService.reconcileAsks(Collections.emptyMap());
+        assertTrue(rmClient.asks.isEmpty());
+        assertEquals(0, yarnAmService.getNumberOfOutstandingAsks());
+    }
+
+    @Test
+    void surplusAllocationIsReleased() {
+        yarnAmService.reconcileAsks(ResourceProfile.getDefault(), 1);
+        AMRMClient.ContainerRequest request = rmClient.asks.get(0);
+        yarnAmService.containerAllocated(allocate("node1", request));
+
+        // RM may allocate more containers than asked for, before it got cancelled asks
+        Container surplus = allocate("node2", request);
+        assertNull(yarnAmService.containerAllocated(surplus));
+        assertEquals(0, yarnAmService.getNumberOfOutstandingAsks());
+        assertEquals(2, yarnAmService.getNumberOfHeldContainers());
+
+        yarnAmService.releaseContainer(surplus.getId());
+        assertEquals(Collections.singletonList(surplus.getId()), rmClient.released);
+        assertEquals(1, yarnAmService.getNumberOfHeldContainers());
+        assertEquals(1, yarnAmService.getReleasedContainers());
+        assertEquals(2, yarnAmService.getAllocatedContainers());
+    }
+
+    @Test
+    void allocationGoesToCommandWithDataOnItsNodeThenOnItsRack() {
+        YarnContainer onRack2 = askCloseTo("rack2-node1", "/rack2");
+        YarnContainer onRack1 = askCloseTo("rack1-node1", "/rack1");
+        YarnContainer onNode = askCloseTo("rack1-node2", "/rack1");
+        AMRMClient.ContainerRequest request = rmClient.asks.get(0);
+        assertEquals(3, yarnAmService.getNumberOfLocalityAsks());
+
+        assertSame(onNode, yarnAmService.containerAllocated(allocate("rack1-node2", request)));
+        assertSame(onRack1, yarnAmService.containerAllocated(allocate("rack1-node3", request)));
+        assertSame(onRack2, yarnAmService.containerAllocated(allocate("rack1-node4", request)));
+        assertEquals(0, yarnAmService.getNumberOfLocalityAsks());
+        assertTrue(rmClient.asks.isEmpty());
+    }
+
+    @Test
+    void plainAskIsFulfilledBeforeAskOfACommandWithDataElsewhere() {
+        YarnContainer elsewhere = askCloseTo("rack2-node1", "/rack2");
+        yarnAmService.reconcileAsks(ResourceProfile.getDefault(), 1);
+        AMRMClient.ContainerRequest request = rmClient.asks.get(1);
+
+        assertNull(yarnAmService.containerAllocated(allocate("rack1-node1", request)));
+        // No plain ask left: the container goes to the command anyway rather than being wasted
+        assertSame(elsewhere, yarnAmService.containerAllocated(allocate("rack1-node2", request)));
+        assertEquals(0, yarnAmService.getNumberOfOutstandingAsks());
+    }
+
+}
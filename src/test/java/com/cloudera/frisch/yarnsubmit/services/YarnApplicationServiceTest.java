@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.frisch.yarnsubmit.services;
+
+import com.cloudera.frisch.yarnsubmit.TestParameters;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hadoop.yarn.api.records.YarnApplicationState;
+import org.apache.hadoop.yarn.util.Records;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class YarnApplicationServiceTest {
+
+    private static final ApplicationId APPLICATION_ID = ApplicationId.newInstance(1L, 1);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Integer> failedIndexes = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger attempt = new AtomicInteger(1);
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer am;
+
+    @BeforeAll
+    static void initParameters() {
+        TestParameters.init();
+    }
+
+    /**
+     * Serves failed commands as the AM does, by pages of 2
+     */
+    @BeforeEach
+    void startAm() throws IOException {
+        am = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        am.createContext("/failures", exchange -> {
+            requests.incrementAndGet();
+            int since = Integer.parseInt(exchange.getRequestURI().getQuery().split("&")[0].substring("since=".length()));
+            List<Map<String, Object>> page = new ArrayList<>();
+            synchronized (failedIndexes) {
+                for (int i = since; i < Math.min(failedIndexes.size(), since + 2); i++) {
+                    page.add(Collections.singletonMap("index", failedIndexes.get(i)));
+                }
+            }
+            Map<String, Object> failures = new LinkedHashMap<>();
+            failures.put("attempt", attempt.get());
+            failures.put("total", failedIndexes.size());
+            failures.put("next", since + page.size());
+            failures.put("failedCommands", page);
+            byte[] bytes = objectMapper.writeValueAsBytes(failures);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        am.start();
+    }
+
+    @AfterEach
+    void stopAm() {
+        am.stop(0);
+    }
+
+    private ApplicationReport report(YarnApplicationState state, int port) {
+        ApplicationReport report = Records.newRecord(ApplicationReport.class);
+        report.setApplicationId(APPLICATION_ID);
+        report.setYarnApplicationState(state);
+        report.setOriginalTrackingUrl("http://am-host:1234/");
+        report.setTrackingUrl("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port + "/");
+        return report;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> indexes(Map<ApplicationId, List<Map<String, Object>>> failedCommands) {
+        List<Object> indexes = new ArrayList<>();
+        failedCommands.getOrDefault(APPLICATION_ID, Collections.emptyList()).forEach(command -> indexes.add(command.get("index")));
+        return indexes;
+    }
+
+    @Test
+    void onlyNewFailedCommandsAreGotFromAmAtEachCheck() {
+        YarnApplicationService service = new YarnApplicationService();
+        List<ApplicationReport> running = Collections.singletonList(report(YarnApplicationState.RUNNING, am.getAddress().getPort()));
+        failedIndexes.addAll(Arrays.asList(10, 11, 12));
+
+        assertEquals(Arrays.asList(10, 11, 12), indexes(service.getFailedCommands(running)));
+        assertTrue(service.getFailedCommands(running).isEmpty());
+        failedIndexes.add(13);
+        assertEquals(Collections.singletonList(13), indexes(service.getFailedCommands(running)));
+
+        // A new attempt of the AM lists its own failed commands
+        attempt.set(2);
+        failedIndexes.clear();
+        failedIndexes.addAll(Arrays.asList(20, 21, 22, 23, 24));
+        assertEquals(Arrays.asList(20, 21, 22, 23, 24), indexes(service.getFailedCommands(running)));
+    }
+
+    @Test
+    void amOfApplicationNotRunningIsNotAsked() {
+        YarnApplicationService service = new YarnApplicationService();
+        failedIndexes.add(10);
+
+        assertTrue(service.getFailedCommands(Collections.singletonList(report(YarnApplicationState.ACCEPTED, am.getAddress().getPort()))).isEmpty());
+        assertTrue(service.getFailedCommands(Collections.singletonList(report(YarnApplicationState.FINISHED, am.getAddress().getPort()))).isEmpty());
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    void amNotReachableIsNotAskedAgainBeforeADelay() {
+        YarnApplicationService service = new YarnApplicationService();
+        int port = am.getAddress().getPort();
+        am.stop(0);
+        List<ApplicationReport> running = Collections.singletonList(report(YarnApplicationState.RUNNING, port));
+
+        assertTrue(service.getFailedCommands(running).isEmpty());
+        long start = System.currentTimeMillis();
+        assertTrue(service.getFailedCommands(running).isEmpty());
+        assertTrue(System.currentTimeMillis() - start < 1000L);
+    }
+}